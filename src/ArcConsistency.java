@@ -0,0 +1,141 @@
+/**
+ * ArcConsistency: preprocessing which reduces a puzzle before the search starts
+ * 	Enforces generalized arc consistency (GAC) over the category constraints, 
+ * 	using an AC-3 style queue of categories:
+ * 		- a word of a category is supported if every one of its letters is still
+ * 		  permitted at the corresponding index
+ * 		- a letter of an index is supported if, for every category connected to
+ * 		  the index, some supported word has that letter at the index's position
+ * 	Whenever the domain of an index shrinks, the other categories connected to
+ * 	that index are queued again. The fixpoint is returned as a ReducedProblem.
+ * 	If any category loses all of its words (or any index all of its letters)
+ * 	the puzzle has no solution, which is reported without searching.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArcConsistency {
+
+	//Holds the puzzle to reduce
+	private Puzzle puzzle;
+	//Holds the database of possible words for lookup by category
+	private WordDatabase db;
+
+	/**
+	 * Constructor
+	 * @param puzzle
+	 * @param db
+	 */
+	public ArcConsistency(Puzzle puzzle, WordDatabase db){
+		this.puzzle = puzzle;
+		this.db = db;
+	}
+
+	/**
+	 * Runs the GAC fixpoint over the categories of the puzzle
+	 * @return the reduced domains and word lists
+	 */
+	public ReducedProblem Reduce(){
+		String[] categories = this.puzzle.getCategories();
+		int[][] categoryIndices = this.puzzle.getCategoryIndexArrays();
+		int[][] indexCategories = this.puzzle.getIndexCategoryArrays();
+
+		int[] domains = new int[this.puzzle.getPuzzleSize()];
+		Arrays.fill(domains, LetterDomains.ALL_LETTERS);
+
+		//the supported words of every category, in database order, starting from the words of the slot's length
+		ArrayList<ArrayList<String>> words = new ArrayList<ArrayList<String>>();
+		for(int c = 0; c < categories.length; c++){
+			ArrayList<String> slotWords = new ArrayList<String>();
+			List<String> categoryWords = this.db.getWordMap().get(categories[c]);
+			if(categoryWords != null){
+				for(String w : categoryWords){
+					if(w.length() == categoryIndices[c].length)
+						slotWords.add(w);
+				}
+			}
+			words.add(slotWords);
+		}
+
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		boolean[] queued = new boolean[categories.length];
+		for(int c = 0; c < categories.length; c++){
+			queue.add(c);
+			queued[c] = true;
+		}
+
+		boolean solvable = true;
+		while(!queue.isEmpty() && solvable){
+			int c = queue.poll();
+			queued[c] = false;
+			int[] indices = categoryIndices[c];
+
+			//drop the words using a letter which is no longer permitted
+			int[] supported = new int[indices.length];
+			ArrayList<String> kept = new ArrayList<String>();
+			for(String w : words.get(c)){
+				if(IsSupported(w, indices, domains)){
+					kept.add(w);
+					for(int position = 0; position < indices.length; position++){
+						supported[position] |= LetterDomains.LetterBit(w.charAt(position));
+					}
+				}
+			}
+			words.set(c, kept);
+			if(kept.isEmpty()){
+				solvable = false;
+				break;
+			}
+
+			//drop the letters which no remaining word of the category supports
+			for(int position = 0; position < indices.length; position++){
+				int index = indices[position];
+				int reduced = domains[index] & supported[position];
+				if(reduced == domains[index])
+					continue;
+				domains[index] = reduced;
+				if(reduced == 0){
+					solvable = false;
+					break;
+				}
+				for(int other : indexCategories[index]){
+					if(other != c && !queued[other]){
+						queue.add(other);
+						queued[other] = true;
+					}
+				}
+			}
+		}
+
+		WordDatabase reducedDb = new WordDatabase();
+		for(int c = 0; c < categories.length; c++){
+			reducedDb.getWordMap().put(categories[c], words.get(c));
+		}
+		reducedDb.BuildIndex();
+		return new ReducedProblem(this.puzzle, reducedDb, domains, solvable);
+	}
+
+	/**
+	 * @param word
+	 * @param indices the indices of the category
+	 * @param domains
+	 * @return true if the word fits the category and every letter is permitted at its index
+	 */
+	private boolean IsSupported(String word, int[] indices, int[] domains){
+		if(word.length() != indices.length)
+			return false;
+		for(int position = 0; position < indices.length; position++){
+			int letter = word.charAt(position) - 'A';
+			if(letter < 0 || letter >= CategoryIndex.ALPHABET_SIZE)
+				return false;
+			if((domains[indices[position]] & (1 << letter)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+}
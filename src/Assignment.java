@@ -0,0 +1,172 @@
+/**
+ * Assignment: the letters currently assigned to the spaces of a puzzle
+ * 	Holds the letters in a primitive char array (0 = unassigned) together with
+ * 	an undo trail and a counter of unassigned spaces, so that the solvers can
+ * 	assign letters and backtrack without copying or boxing anything.
+ *
+ * 	Usage in a backtracking loop:
+ * 		int mark = assignment.Mark();
+ * 		assignment.Set(index, c);
+ * 		...
+ * 		assignment.UndoTo(mark);
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class Assignment {
+
+	//value used for a space without a letter
+	public static final char UNASSIGNED = 0;
+
+	//Holds the letter assigned to every space of the solution array
+	private char[] values;
+	//number of spaces still holding UNASSIGNED
+	private int unassigned;
+	//undo trail: the index and previous value of every change, in order
+	private int[] trailIndices;
+	private char[] trailValues;
+	private int trailSize;
+
+	/**
+	 * Constructor, creates a blank assignment
+	 * @param size number of spaces in the puzzle
+	 */
+	public Assignment(int size){
+		this.values = new char[size];
+		this.unassigned = size;
+		this.trailIndices = new int[Math.max(size, 1) * 2];
+		this.trailValues = new char[this.trailIndices.length];
+		this.trailSize = 0;
+	}
+
+	/**
+	 * Constructor, copies an assignment in the boxed format (null = unassigned)
+	 * @param assignment
+	 */
+	public Assignment(ArrayList<Character> assignment){
+		this(assignment.size());
+		for(int i = 0; i < assignment.size(); i++){
+			if(assignment.get(i) != null){
+				this.values[i] = assignment.get(i);
+				this.unassigned--;
+			}
+		}
+	}
+
+	/**
+	 * Constructor, copies the letters of another assignment (but not its trail)
+	 * @param assignment
+	 */
+	public Assignment(Assignment assignment){
+		this(assignment.size());
+		for(int i = 0; i < assignment.size(); i++){
+			this.values[i] = assignment.values[i];
+		}
+		this.unassigned = assignment.unassigned;
+	}
+
+	/**
+	 * Sets the letter at the given index, remembering the previous value on the trail
+	 * @param index
+	 * @param c the letter, or UNASSIGNED to clear the space
+	 */
+	public void Set(int index, char c){
+		char old = this.values[index];
+		if(old == c)
+			return;
+		if(this.trailSize == this.trailIndices.length){
+			this.trailIndices = Arrays.copyOf(this.trailIndices, this.trailSize * 2);
+			this.trailValues = Arrays.copyOf(this.trailValues, this.trailSize * 2);
+		}
+		this.trailIndices[this.trailSize] = index;
+		this.trailValues[this.trailSize] = old;
+		this.trailSize++;
+		Store(index, old, c);
+	}
+
+	/**
+	 * Writes the value and keeps the unassigned counter up to date
+	 */
+	private void Store(int index, char old, char c){
+		if(old == UNASSIGNED)
+			this.unassigned--;
+		if(c == UNASSIGNED)
+			this.unassigned++;
+		this.values[index] = c;
+	}
+
+	/**
+	 * @return a mark which can be passed to UndoTo to restore the current state
+	 */
+	public int Mark(){
+		return this.trailSize;
+	}
+
+	/**
+	 * Undoes every change made since the mark was taken
+	 * @param mark
+	 */
+	public void UndoTo(int mark){
+		while(this.trailSize > mark){
+			this.trailSize--;
+			int index = this.trailIndices[this.trailSize];
+			Store(index, this.values[index], this.trailValues[this.trailSize]);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the letter at the index, or UNASSIGNED
+	 */
+	public char get(int index){
+		return this.values[index];
+	}
+
+	/**
+	 * @param index
+	 * @return true if the index holds a letter
+	 */
+	public boolean IsAssigned(int index){
+		return this.values[index] != UNASSIGNED;
+	}
+
+	/**
+	 * @return true if every index holds a letter
+	 */
+	public boolean IsComplete(){
+		return this.unassigned == 0;
+	}
+
+	/**
+	 * @return the number of indices without a letter
+	 */
+	public int getUnassignedCount(){
+		return this.unassigned;
+	}
+
+	/**
+	 * @return the number of spaces in the assignment
+	 */
+	public int size(){
+		return this.values.length;
+	}
+
+	/**
+	 * @return a copy of the assignment in the boxed format (null = unassigned)
+	 */
+	public ArrayList<Character> ToCharacterList(){
+		ArrayList<Character> list = new ArrayList<Character>(this.values.length);
+		for(char c : this.values){
+			list.add(c == UNASSIGNED ? null : c);
+		}
+		return list;
+	}
+
+	@Override
+	public String toString(){
+		return this.ToCharacterList().toString();
+	}
+
+}
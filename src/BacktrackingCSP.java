@@ -0,0 +1,132 @@
+/**
+ * BacktrackingCSP: the search operations shared by LetterBasedCSP and WordBasedCSP
+ * 	Lets search engines (eg: ParallelSearch) drive either solver one decision at
+ * 	a time, while the solver keeps its own model of variables and values:
+ * 		LetterBasedCSP		variable = index, value = letter (0 = 'A')
+ * 		WordBasedCSP		variable = category ordinal, value = word id in the category
+ * 
+ * 	Usage, after Start(assignment) returned true:
+ * 		int variable = csp.SelectVariable();
+ * 		int count = csp.OrderValues(variable, values);
+ * 		for each value:
+ * 			long mark = csp.Mark();
+ * 			if(csp.Assign(variable, value))
+ * 				... csp.IsComplete() ? csp.RecordSolution() : dive deeper ...
+ * 			csp.UndoTo(mark);
+ * 	
+ * 	Implementations are not thread safe. Fork() creates an independent solver
+ * 	sharing the (read only) puzzle and word database, one per thread.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+
+public interface BacktrackingCSP {
+
+	/**
+	 * @return a new solver for the same puzzle, database and configuration, with 
+	 * 			its own search state and no results
+	 */
+	BacktrackingCSP Fork();
+
+	/**
+	 * Makes the assignment the current state of the search (it is modified in place)
+	 * @param assignment
+	 * @return false if the puzzle has no solution extending the assignment
+	 */
+	boolean Start(Assignment assignment);
+
+	/**
+	 * @return the next variable to assign, -1 if the assignment is complete
+	 */
+	int SelectVariable();
+
+	/**
+	 * @param variable
+	 * @param values buffer of at least getMaxValueCount() entries receiving the values to try, in order
+	 * @return the number of values to try
+	 */
+	int OrderValues(int variable, int[] values);
+
+	/**
+	 * @return the largest number of values OrderValues can return
+	 */
+	int getMaxValueCount();
+
+	/**
+	 * Assigns the value to the variable and propagates it
+	 * @param variable
+	 * @param value
+	 * @return false if a constraint is violated (the assignment must still be undone)
+	 */
+	boolean Assign(int variable, int value);
+
+	/**
+	 * @return a mark which can be passed to UndoTo to restore the current state
+	 */
+	long Mark();
+
+	/**
+	 * Undoes every assignment made since the mark was taken
+	 * @param mark
+	 */
+	void UndoTo(long mark);
+
+	/**
+	 * @return true if every index holds a letter
+	 */
+	boolean IsComplete();
+
+	/**
+	 * Passes the current (complete) assignment to the solution sink
+	 * @return false if it was a duplicate and was not passed on
+	 */
+	boolean RecordSolution();
+
+	/**
+	 * @return true if the search can reach the same complete assignment more than
+	 * 			once (RecordSolution drops the repeats within one solver)
+	 */
+	boolean ProducesDuplicates();
+
+	/**
+	 * Selects the sink receiving the solutions as they are found
+	 * @param sink the sink, or null to collect into getResults() (the default)
+	 */
+	void setSolutionSink(SolutionSink sink);
+
+	/**
+	 * @return true if the sink or the search limit asked to stop the search, the 
+	 * 			search then returns without exploring the rest of the tree
+	 */
+	boolean IsStopped();
+
+	/**
+	 * Selects the limits read at every node of SearchFromCurrentState (see SearchBudget)
+	 * @param limit the limits, shared with the forks, or null for none (the default)
+	 */
+	void setSearchLimit(SearchBudget.Limit limit);
+
+	/**
+	 * Answers the support queries of the search from a cache shared with the forks
+	 * @param cache the cache, or null to query the category indices (the default)
+	 */
+	void setSupportCache(SupportCache cache);
+
+	/**
+	 * Runs the solver's own depth first search below the current state,
+	 * passing the solutions to the sink until it asks to stop
+	 */
+	void SearchFromCurrentState();
+
+	/**
+	 * @return the solutions collected so far when no other sink was selected
+	 */
+	ArrayList<ArrayList<Character>> getResults();
+
+	/**
+	 * @return the counters of the work done by this solver (a fork starts with its own)
+	 */
+	SearchStats getStats();
+
+}
@@ -0,0 +1,439 @@
+/**
+ * BatchSolver: solves a stream of puzzles concurrently against one dictionary
+ * 	The dictionary is loaded and indexed once, then frozen (see
+ * 	WordDatabase.Freeze) and shared read only by every solver. Puzzles are read
+ * 	one at a time from a PuzzleStream and solved on a fixed pool of threads; at
+ * 	most maxInFlight puzzles are read but not yet solved, the reading thread
+ * 	waits for a solver to finish before reading more, so memory stays bounded
+ * 	however many puzzles the stream holds.
+ *
+ * 	As soon as a puzzle is solved its solutions are written to
+ * 	<output directory>/<puzzle name>_<LB|WB>_soln.txt, in the format of
+ * 	results/solutions, two lines per solution:
+ * 		(Soln #0: NNEMANDYE)
+ * 			adjective: NEE  emotion: MAD  interjection: MAN  ...
+ *
+ * 	Usage: BatchSolver [options] <dictionary> <puzzle file or directory> <output directory>
+ * 		-solver <lb|wb|auto>	solver to use (default wb), auto picking LB or WB for
+ * 							each puzzle (see Portfolio.PREDICTED)
+ * 		-threads <n>		number of solver threads (default: available processors)
+ * 		-inflight <n>		puzzles read ahead of the solvers (default: 4 per thread)
+ * 		-compiled			the dictionary was compiled by CompiledDictionary
+ * 		-cache <n>			answer puzzles of a structure solved before from a
+ * 							SolutionCache holding up to n solutions
+ * 		-cachedir <dir>		disk tier of the cache, kept across runs
+ * 		-decompose			solves the connected components of every puzzle
+ * 							separately (see Decomposition)
+ * 		-supportcache <n>	answers the support queries of every solver from
+ * 							one SupportCache holding up to n answers
+ * 		-timeout <ms>		stops the search of a puzzle after ms milliseconds
+ * 		-maxnodes <n>		stops the search of a puzzle after n nodes
+ * 		-maxsolutions <n>	stops the search of a puzzle after n solutions
+ * 							(the solutions found are written, the puzzle is
+ * 							counted as incomplete; see SearchBudget)
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchSolver {
+
+	/**
+	 * SolverFactory: creates the solver used for each puzzle
+	 */
+	public interface SolverFactory {
+
+		/**
+		 * @return a short name of the solver, used in the result file names
+		 */
+		String getName();
+
+		/**
+		 * @param p
+		 * @param db frozen database shared by every solver
+		 * @return a configured solver for the puzzle
+		 */
+		BacktrackingCSP Create(Puzzle p, WordDatabase db);
+	}
+
+	//LetterBasedCSP with forward checking and MRV ordering
+	public static final SolverFactory LETTER_BASED = new SolverFactory(){
+		public String getName(){
+			return "LB";
+		}
+
+		public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+			LetterBasedCSP csp = new LetterBasedCSP(p, db);
+			csp.setPropagationMode(PropagationMode.FORWARD_CHECKING);
+			csp.setVariableOrdering(VariableOrdering.MRV);
+			return csp;
+		}
+	};
+
+	//WordBasedCSP with canonical search and MRV ordering
+	public static final SolverFactory WORD_BASED = new SolverFactory(){
+		public String getName(){
+			return "WB";
+		}
+
+		public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+			WordBasedCSP csp = new WordBasedCSP(p, db);
+			csp.setCanonicalSearch(true);
+			csp.setVariableOrdering(VariableOrdering.MRV);
+			return csp;
+		}
+	};
+
+	/**
+	 * @param factory
+	 * @param cache shared by every solver created
+	 * @return a factory creating the solvers of the given one, answering their
+	 * support queries from the cache
+	 */
+	public static SolverFactory WithSupportCache(final SolverFactory factory, final SupportCache cache){
+		return new SolverFactory(){
+			public String getName(){
+				return factory.getName();
+			}
+
+			public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+				BacktrackingCSP csp = factory.Create(p, db);
+				csp.setSupportCache(cache);
+				return csp;
+			}
+		};
+	}
+
+	//Holds the frozen database shared by the solvers
+	private WordDatabase db;
+	private SolverFactory factory;
+	private int threads;
+	private int maxInFlight;
+	//Holds the cache of solutions by puzzle structure, null if there is none
+	private SolutionCache cache;
+	//true if every puzzle is split into its connected components
+	private boolean decompose;
+	//Holds the limits of the search of every puzzle, null if there are none
+	private SearchBudget budget;
+	//number of puzzles solved, stopped by the budget, failed and solutions found by the last Solve
+	private AtomicLong solved;
+	private AtomicLong incomplete;
+	private AtomicLong failed;
+	private AtomicLong solutions;
+
+	/**
+	 * Constructor
+	 * @param db the dictionary, frozen if it is not yet
+	 * @param factory creates the solver of each puzzle
+	 * @param threads number of solver threads
+	 * @param maxInFlight number of puzzles read ahead of the solvers
+	 */
+	public BatchSolver(WordDatabase db, SolverFactory factory, int threads, int maxInFlight){
+		this.db = db.Freeze();
+		this.factory = factory;
+		this.threads = threads;
+		this.maxInFlight = Math.max(maxInFlight, threads);
+		this.solved = new AtomicLong();
+		this.incomplete = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.solutions = new AtomicLong();
+	}
+
+	/**
+	 * Answers the puzzles of a structure solved before from the cache
+	 * @param cache a cache over the same dictionary, null to always search
+	 */
+	public void setSolutionCache(SolutionCache cache){
+		this.cache = cache;
+	}
+
+	/**
+	 * Solves the connected components of every puzzle separately (see Decomposition).
+	 * The components of a puzzle are solved on its solver thread, one after the other.
+	 * @param decompose
+	 */
+	public void setDecompose(boolean decompose){
+		this.decompose = decompose;
+	}
+
+	/**
+	 * Limits the search of every puzzle. A puzzle with a budget is always searched
+	 * directly, neither from the cache nor by components, and the solutions found 
+	 * before a limit is reached are written.
+	 * @param budget the limits, applied to each puzzle separately, null for none
+	 */
+	public void setSearchBudget(SearchBudget budget){
+		this.budget = budget;
+	}
+
+	/**
+	 * Solves every puzzle of the stream, writing the solutions of each one as it is solved
+	 * @param puzzles
+	 * @param outputDirectory
+	 * @throws InterruptedException
+	 */
+	public void Solve(PuzzleStream puzzles, final String outputDirectory) throws InterruptedException{
+		this.solved.set(0);
+		this.incomplete.set(0);
+		this.failed.set(0);
+		this.solutions.set(0);
+		new File(outputDirectory).mkdirs();
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		final Semaphore inFlight = new Semaphore(this.maxInFlight);
+		try {
+			while(puzzles.hasNext()){
+				//backpressure: wait for a free slot before reading the next puzzle
+				inFlight.acquire();
+				final PuzzleStream.Entry entry = puzzles.next();
+				pool.execute(new Runnable(){
+					@Override
+					public void run(){
+						try {
+							SolveOne(entry, outputDirectory);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Solves one puzzle and writes its solutions
+	 * @param entry
+	 * @param outputDirectory
+	 */
+	private void SolveOne(PuzzleStream.Entry entry, String outputDirectory){
+		File output = new File(outputDirectory, entry.name + "_" + this.factory.getName() + "_soln.txt");
+		try {
+			if(this.budget != null){
+				BacktrackingCSP csp = this.factory.Create(entry.puzzle, this.db);
+				SearchOutcome outcome = this.budget.Solve(csp, new Assignment(entry.puzzle.getPuzzleSize()));
+				WriteSolutions(entry.puzzle, outcome.getSolutions(), output);
+				if(outcome.IsComplete()){
+					this.solved.incrementAndGet();
+				} else {
+					this.incomplete.incrementAndGet();
+					System.out.println("Puzzle: \"" + entry.name + "\"\t " + outcome);
+				}
+				this.solutions.addAndGet(outcome.getSolutions().size());
+				return;
+			}
+			if(this.cache == null && this.decompose){
+				Decomposition.Product product = new Decomposition(entry.puzzle).Solve(this.factory, this.db, 1);
+				WriteSolutions(entry.puzzle, product, output);
+				this.solved.incrementAndGet();
+				this.solutions.addAndGet(product.Count().longValue());
+				return;
+			}
+			ArrayList<ArrayList<Character>> results;
+			if(this.cache != null){
+				results = this.cache.Solve(entry.puzzle, this.factory);
+			} else {
+				BacktrackingCSP csp = this.factory.Create(entry.puzzle, this.db);
+				if(csp.Start(new Assignment(entry.puzzle.getPuzzleSize())))
+					csp.SearchFromCurrentState();
+				results = csp.getResults();
+			}
+			WriteSolutions(entry.puzzle, results, output);
+			this.solved.incrementAndGet();
+			this.solutions.addAndGet(results.size());
+		} catch (IOException e) {
+			this.failed.incrementAndGet();
+			System.out.println("Filename: \"" + output + "\"\t could not be written.");
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			//a malformed puzzle (eg: a category missing from the dictionary) fails alone
+			this.failed.incrementAndGet();
+			System.out.println("Puzzle: \"" + entry.name + "\"\t could not be solved.");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			this.failed.incrementAndGet();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes solutions in the format of results/solutions
+	 * @param p
+	 * @param results
+	 * @param output
+	 * @throws IOException
+	 */
+	public static void WriteSolutions(Puzzle p, Iterable<? extends List<Character>> results, File output) throws IOException{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(output)));
+		int solnCount = 0;
+		for(List<Character> soln : results){
+			PrintSolution(out, p, solnCount, soln);
+			solnCount++;
+		}
+		out.close();
+		if(out.checkError())
+			throw new IOException("Filename: \"" + output + "\" could not be written");
+	}
+
+	/**
+	 * Prints the solution in the format of results/solutions: its letters on a 
+	 * first line, the word of every category on a second, tab indented line
+	 * @param out
+	 * @param p
+	 * @param solnCount number of the solution
+	 * @param soln
+	 */
+	public static void PrintSolution(PrintWriter out, Puzzle p, long solnCount, List<Character> soln){
+		StringBuilder line = new StringBuilder("(Soln #" + solnCount + ": ");
+		for(char c : soln){
+			line.append(c);
+		}
+		line.append(")");
+		out.println(line);
+		
+		line = new StringBuilder("\t");
+		String separator = "";
+		for(String category : p.getCategoryIndexMap().keySet()){
+			line.append(separator + category + ": ");
+			for(int index : p.getCategoryIndexMap().get(category)){
+				line.append(soln.get(index));
+			}
+			separator = "  ";
+		}
+		out.println(line);
+	}
+
+	/**
+	 * @return the number of puzzles solved by the last Solve
+	 */
+	public long getSolvedCount(){
+		return this.solved.get();
+	}
+
+	/**
+	 * @return the number of puzzles whose search was stopped by the budget in the last Solve
+	 */
+	public long getIncompleteCount(){
+		return this.incomplete.get();
+	}
+
+	/**
+	 * @return the number of puzzles which could not be solved or written by the last Solve
+	 */
+	public long getFailedCount(){
+		return this.failed.get();
+	}
+
+	/**
+	 * @return the number of solutions found by the last Solve
+	 */
+	public long getSolutionCount(){
+		return this.solutions.get();
+	}
+
+	public static void main(String[] args) {
+		SolverFactory factory = WORD_BASED;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int inFlight = -1;
+		boolean compiled = false;
+		long cacheSize = 0;
+		String cacheDirectory = null;
+		boolean decompose = false;
+		SearchBudget budget = null;
+		int supportCacheSize = 0;
+		ArrayList<String> paths = new ArrayList<String>();
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("-solver"))
+				factory = args[++a].equalsIgnoreCase("lb") ? LETTER_BASED
+						: args[a].equalsIgnoreCase("auto") ? Portfolio.PREDICTED : WORD_BASED;
+			else if(args[a].equals("-threads"))
+				threads = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-inflight"))
+				inFlight = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-compiled"))
+				compiled = true;
+			else if(args[a].equals("-cache"))
+				cacheSize = Long.parseLong(args[++a]);
+			else if(args[a].equals("-cachedir"))
+				cacheDirectory = args[++a];
+			else if(args[a].equals("-decompose"))
+				decompose = true;
+			else if(args[a].equals("-supportcache"))
+				supportCacheSize = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-timeout") || args[a].equals("-maxnodes") || args[a].equals("-maxsolutions")){
+				if(budget == null)
+					budget = new SearchBudget();
+				long limit = Long.parseLong(args[a + 1]);
+				if(args[a].equals("-timeout"))
+					budget.setTimeLimit(limit);
+				else if(args[a].equals("-maxnodes"))
+					budget.setMaxNodes(limit);
+				else
+					budget.setMaxSolutions(limit);
+				a++;
+			}
+			else
+				paths.add(args[a]);
+		}
+		if(paths.size() != 3){
+			System.out.println("Usage: BatchSolver [-solver lb|wb|auto] [-threads n] [-inflight n] [-compiled] [-cache n] [-cachedir dir] [-decompose] [-supportcache n]"
+					+ " [-timeout ms] [-maxnodes n] [-maxsolutions n]"
+					+ " <dictionary> <puzzle file or directory> <output directory>");
+			return;
+		}
+
+		long start = System.nanoTime();
+		WordDatabase db = new WordDatabase();
+		WordFileReader fr = new WordFileReader(db);
+		if(compiled)
+			fr.readCompiledDatabaseFile(paths.get(0));
+		else
+			fr.readDatabaseFile(paths.get(0));
+		SupportCache supportCache = null;
+		if(supportCacheSize > 0){
+			supportCache = new SupportCache(supportCacheSize);
+			factory = WithSupportCache(factory, supportCache);
+		}
+		BatchSolver batch = new BatchSolver(db, factory, threads, (inFlight < 0) ? 4 * threads : inFlight);
+		batch.setDecompose(decompose);
+		batch.setSearchBudget(budget);
+		SolutionCache cache = null;
+		if(cacheSize > 0 || cacheDirectory != null){
+			cache = new SolutionCache(batch.db, cacheSize);
+			cache.setDiskDirectory(cacheDirectory);
+			batch.setSolutionCache(cache);
+		}
+		try {
+			PuzzleStream puzzles = new PuzzleStream(paths.get(1));
+			try {
+				batch.Solve(puzzles, paths.get(2));
+			} finally {
+				puzzles.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Puzzles: \"" + paths.get(1) + "\"\t could not be read.");
+			e.printStackTrace();
+		} catch (UncheckedIOException e) {
+			System.out.println("Puzzles: \"" + paths.get(1) + "\"\t could not be read.");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.println("Solved " + batch.getSolvedCount() + " puzzles (" + batch.getIncompleteCount() + " incomplete, "
+				+ batch.getFailedCount() + " failed, "
+				+ batch.getSolutionCount() + " solutions) in " + (System.nanoTime() - start) / 1000000 + " ms");
+		if(cache != null)
+			System.out.println(cache);
+		if(supportCache != null)
+			System.out.println(supportCache);
+	}
+
+}
@@ -0,0 +1,376 @@
+/**
+ * Benchmarks: a small benchmark harness for the readers and the solvers
+ * 	Every case is run for a number of warmup iterations, whose results are
+ * 	dropped, then for a number of measured iterations of a fixed duration.
+ * 	The report gives the throughput (operations per second, with the standard
+ * 	deviation over the measured iterations) and the bytes allocated per
+ * 	operation by the benchmark thread.
+ *
+ * 	Cases:
+ * 		parse/database				WordFileReader.readDatabaseFile (including the index build)
+ * 		parse/puzzleN				WordFileReader.readPuzzleFile
+ * 		index/database				WordDatabase.BuildIndex
+ * 		check/LB/puzzleN			LetterBasedCSP consistency checks of every letter of the first index
+ * 		check/WB/puzzleN			WordBasedCSP consistency checks of every word of the first category
+ * 		solve/LB/puzzleN			LetterBasedCSP solve, solver construction included
+ * 		solve/WB/puzzleN			WordBasedCSP solve, solver construction included
+ * 		solve/LB-CT/puzzleN			LetterBasedCSP solve in COMPACT_TABLE mode
+ * 		solve/WB-CT/puzzleN			WordBasedCSP solve in COMPACT_TABLE mode
+ * 		solve/LB-CBJ/puzzleN			LetterBasedCSP solve with conflict-directed backjumping
+ * 		solve/WB-SC/puzzleN			WordBasedCSP solve with a SupportCache kept across runs
+ * 		count/DP/puzzleN			SolutionCounter count over a tree decomposition
+ * 	Puzzle files given on the command line (eg: written by PuzzleGenerator) get
+ * 	the same parse, check and solve cases as words/puzzle1-5.txt.
+ *
+ * 	Usage: Benchmarks [options] [puzzle files]
+ * 		-w <n>			warmup iterations (default 3)
+ * 		-i <n>			measured iterations (default 5)
+ * 		-t <ms>			duration of an iteration (default 500)
+ * 		-d <file>		word database (default ./words/wordlist.txt)
+ * 		-f <text>		only runs the cases whose name contains the text
+ * 		-o <file>		writes the results as csv, eg: results/benchmarks/<change>.csv
+ * 		-b <file>		compares the throughput to a csv written by an earlier run
+ * 	Run with a fixed heap (eg: -Xms1g -Xmx1g) when comparing runs.
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Benchmarks {
+
+	/**
+	 * Case: one operation of a benchmark
+	 */
+	public interface Case {
+		/**
+		 * @return any value depending on the work done, so it cannot be optimized away
+		 */
+		long Run();
+	}
+
+	/**
+	 * Result: the measurements of one case
+	 */
+	public static class Result {
+		public final String name;
+		public final double opsPerSecond;
+		public final double error;
+		//-1 if the JVM does not report allocations
+		public final double bytesPerOp;
+
+		public Result(String name, double opsPerSecond, double error, double bytesPerOp){
+			this.name = name;
+			this.opsPerSecond = opsPerSecond;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+		}
+	}
+
+	//receives the values returned by the cases
+	private static volatile long blackhole;
+
+	private int warmupIterations;
+	private int measureIterations;
+	private long iterationNanos;
+	private String filter;
+	//Holds the results of the cases run so far
+	private ArrayList<Result> results;
+
+	/**
+	 * Constructor
+	 * @param warmupIterations
+	 * @param measureIterations
+	 * @param iterationMillis duration of an iteration
+	 * @param filter only the cases whose name contains it are run, null for all
+	 */
+	public Benchmarks(int warmupIterations, int measureIterations, long iterationMillis, String filter){
+		this.warmupIterations = warmupIterations;
+		this.measureIterations = measureIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+		this.filter = filter;
+		this.results = new ArrayList<Result>();
+	}
+
+	/**
+	 * Measures a case and prints its result
+	 * @param name
+	 * @param c
+	 * @return the result, null if the case is filtered out
+	 */
+	public Result Measure(String name, Case c){
+		if(this.filter != null && !name.contains(this.filter))
+			return null;
+		for(int i = 0; i < this.warmupIterations; i++){
+			Iteration(c);
+		}
+		double[] throughput = new double[this.measureIterations];
+		long ops = 0;
+		long allocatedBefore = AllocatedBytes();
+		for(int i = 0; i < this.measureIterations; i++){
+			long start = System.nanoTime();
+			long count = Iteration(c);
+			throughput[i] = count * 1e9 / (System.nanoTime() - start);
+			ops += count;
+		}
+		long allocatedAfter = AllocatedBytes();
+		double mean = 0;
+		for(double t : throughput){
+			mean += t / throughput.length;
+		}
+		double variance = 0;
+		for(double t : throughput){
+			variance += (t - mean) * (t - mean) / Math.max(1, throughput.length - 1);
+		}
+		double bytesPerOp = (allocatedBefore < 0 || ops == 0) ? -1 : (double) (allocatedAfter - allocatedBefore) / ops;
+		Result result = new Result(name, mean, Math.sqrt(variance), bytesPerOp);
+		this.results.add(result);
+		System.out.println(Format(result, null));
+		return result;
+	}
+
+	/**
+	 * Runs the case until the iteration duration has passed
+	 * @param c
+	 * @return the number of operations run
+	 */
+	private long Iteration(Case c){
+		long end = System.nanoTime() + this.iterationNanos;
+		long count = 0;
+		long sum = 0;
+		do {
+			sum += c.Run();
+			count++;
+		} while(System.nanoTime() < end);
+		blackhole += sum;
+		return count;
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, -1 if not supported
+	 */
+	private static long AllocatedBytes(){
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+		if(!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @param result
+	 * @param baseline throughput of an earlier run, null if none
+	 * @return one line of the report
+	 */
+	private static String Format(Result result, Double baseline){
+		String line = String.format("%-40s %14.1f ops/s  +- %10.1f  %12s B/op", result.name, result.opsPerSecond,
+				result.error, (result.bytesPerOp < 0) ? "n/a" : String.format("%.0f", result.bytesPerOp));
+		if(baseline != null)
+			line += String.format("  %+7.1f%%", 100 * (result.opsPerSecond / baseline - 1));
+		return line;
+	}
+
+	/**
+	 * Writes the results as csv: name, ops per second, error, bytes per op
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void WriteResults(String filename) throws IOException{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+		out.println("name,ops_per_second,error,bytes_per_op");
+		for(Result r : this.results){
+			out.println(r.name + "," + r.opsPerSecond + "," + r.error + "," + r.bytesPerOp);
+		}
+		out.close();
+	}
+
+	/**
+	 * Prints the results next to their change from the throughput of an earlier run
+	 * @param filename csv written by WriteResults
+	 * @throws IOException
+	 */
+	public void CompareTo(String filename) throws IOException{
+		Map<String, Double> baseline = new HashMap<String, Double>();
+		BufferedReader in = new BufferedReader(new FileReader(filename));
+		String line = in.readLine();
+		while((line = in.readLine()) != null){
+			String[] fields = line.split(",");
+			baseline.put(fields[0], Double.parseDouble(fields[1]));
+		}
+		in.close();
+		System.out.println("Compared to: " + filename);
+		for(Result r : this.results){
+			System.out.println(Format(r, baseline.get(r.name)));
+		}
+	}
+
+	/**
+	 * Runs the parse, index, check and solve cases
+	 * @param dbFile
+	 * @param puzzleFiles
+	 */
+	public void RunAll(final String dbFile, ArrayList<String> puzzleFiles){
+		Measure("parse/database", new Case(){
+			public long Run(){
+				WordDatabase db = new WordDatabase();
+				new WordFileReader(db).readDatabaseFile(dbFile);
+				return db.getWordMap().size();
+			}
+		});
+		final WordDatabase db = new WordDatabase();
+		new WordFileReader(db).readDatabaseFile(dbFile);
+		Measure("index/database", new Case(){
+			public long Run(){
+				db.BuildIndex();
+				return db.getIndexNanos();
+			}
+		});
+
+		for(final String pFile : puzzleFiles){
+			final String name = new File(pFile).getName().replaceFirst("\\.txt$", "");
+			final WordFileReader reader = new WordFileReader(db);
+			Measure("parse/" + name, new Case(){
+				public long Run(){
+					return reader.readPuzzleFile(pFile).getPuzzleSize();
+				}
+			});
+			final Puzzle p = reader.readPuzzleFile(pFile);
+			Measure("check/LB/" + name, new CheckCase(new LetterBasedCSP(p, db), p));
+			Measure("check/WB/" + name, new CheckCase(new WordBasedCSP(p, db), p));
+			Measure("solve/LB/" + name, new Case(){
+				public long Run(){
+					LetterBasedCSP csp = new LetterBasedCSP(p, db);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()));
+					return csp.getResults().size();
+				}
+			});
+			Measure("solve/WB/" + name, new Case(){
+				public long Run(){
+					WordBasedCSP csp = new WordBasedCSP(p, db);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()), 0);
+					return csp.getResults().size();
+				}
+			});
+			Measure("solve/LB-CT/" + name, new Case(){
+				public long Run(){
+					LetterBasedCSP csp = new LetterBasedCSP(p, db);
+					csp.setPropagationMode(PropagationMode.COMPACT_TABLE);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()));
+					return csp.getResults().size();
+				}
+			});
+			Measure("solve/WB-CT/" + name, new Case(){
+				public long Run(){
+					WordBasedCSP csp = new WordBasedCSP(p, db);
+					csp.setPropagationMode(PropagationMode.COMPACT_TABLE);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()), 0);
+					return csp.getResults().size();
+				}
+			});
+			Measure("solve/LB-CBJ/" + name, new Case(){
+				public long Run(){
+					LetterBasedCSP csp = new LetterBasedCSP(p, db);
+					csp.setBackjumping(true);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()));
+					return csp.getResults().size();
+				}
+			});
+			final SupportCache supportCache = new SupportCache();
+			Measure("solve/WB-SC/" + name, new Case(){
+				public long Run(){
+					WordBasedCSP csp = new WordBasedCSP(p, db);
+					csp.setSupportCache(supportCache);
+					csp.RecursiveBacktracking(new Assignment(p.getPuzzleSize()), 0);
+					return csp.getResults().size();
+				}
+			});
+			Measure("count/DP/" + name, new Case(){
+				public long Run(){
+					return new SolutionCounter(p, db).Count().longValue();
+				}
+			});
+		}
+	}
+
+	/**
+	 * CheckCase: assigns (and undoes) every value of the first variable of a
+	 * solver, each assignment being followed by the solver's consistency check
+	 */
+	private static class CheckCase implements Case {
+
+		private BacktrackingCSP csp;
+		private int variable;
+		private int[] values;
+		private int count;
+
+		public CheckCase(BacktrackingCSP csp, Puzzle p){
+			this.csp = csp;
+			this.csp.Start(new Assignment(p.getPuzzleSize()));
+			this.variable = csp.SelectVariable();
+			this.values = new int[csp.getMaxValueCount()];
+			this.count = (this.variable < 0) ? 0 : csp.OrderValues(this.variable, this.values);
+		}
+
+		@Override
+		public long Run(){
+			long consistent = 0;
+			for(int v = 0; v < this.count; v++){
+				long mark = this.csp.Mark();
+				if(this.csp.Assign(this.variable, this.values[v]))
+					consistent++;
+				this.csp.UndoTo(mark);
+			}
+			return consistent;
+		}
+	}
+
+	public static void main(String[] args) {
+		int warmup = 3;
+		int iterations = 5;
+		long millis = 500;
+		String dbFile = "./words/wordlist.txt";
+		String filter = null;
+		String output = null;
+		String baseline = null;
+		ArrayList<String> puzzleFiles = new ArrayList<String>();
+		for (int i = 1; i <= 5; i++){
+			puzzleFiles.add("./words/puzzle" + i + ".txt");
+		}
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("-w"))
+				warmup = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-i"))
+				iterations = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-t"))
+				millis = Long.parseLong(args[++a]);
+			else if(args[a].equals("-d"))
+				dbFile = args[++a];
+			else if(args[a].equals("-f"))
+				filter = args[++a];
+			else if(args[a].equals("-o"))
+				output = args[++a];
+			else if(args[a].equals("-b"))
+				baseline = args[++a];
+			else
+				puzzleFiles.add(args[a]);
+		}
+
+		Benchmarks benchmarks = new Benchmarks(warmup, iterations, millis, filter);
+		benchmarks.RunAll(dbFile, puzzleFiles);
+		try {
+			if(output != null)
+				benchmarks.WriteResults(output);
+			if(baseline != null)
+				benchmarks.CompareTo(baseline);
+		} catch (IOException e) {
+			System.out.println("Benchmark results could not be written or compared.");
+			e.printStackTrace();
+		}
+	}
+
+}
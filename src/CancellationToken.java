@@ -0,0 +1,27 @@
+/**
+ * CancellationToken: asks searches to stop from another thread
+ * 	A search given the token (see SearchBudget.setCancellationToken) reads it
+ * 	while it runs and returns with the solutions found so far once it was
+ * 	cancelled. One token can be shared by any number of searches.
+ *
+ * @author dcyoung3
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Asks every search given the token to stop
+	 */
+	public void Cancel(){
+		this.cancelled = true;
+	}
+
+	/**
+	 * @return true once Cancel was called
+	 */
+	public boolean IsCancelled(){
+		return this.cancelled;
+	}
+
+}
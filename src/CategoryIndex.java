@@ -0,0 +1,343 @@
+/**
+ * CategoryIndex: positional bitset index over the words of a single category
+ * 	Every word of the category is given an id (its position in the category list).
+ * 	For every (position, letter) pair the index holds a bitset of the ids of the
+ * 	words with that letter at that position, and for every word length a bitset
+ * 	of the ids of the words with that length.
+ *
+ * 	A partial word (pattern) is given as a char array where assigned positions
+ * 	hold an uppercase letter and unassigned positions hold 0. The words matching
+ * 	the pattern are the AND of the bitsets for the assigned positions, so support
+ * 	checks need no regular expressions and no string building.
+ * 	
+ * 	A slot of the puzzle only ever holds words of its own length, so the solvers
+ * 	search the index returned by getLengthIndex, which only holds the words of
+ * 	that length: a category of words of 2 to 15 letters is then not scanned in
+ * 	full for every check of a 5 letter slot.
+ * 	
+ * 	The bitsets are read through LetterMask and LengthMask, which 
+ * 	MappedCategoryIndex overrides to read an index mapped from a compiled 
+ * 	dictionary (see CompiledDictionary) in place; its length indices are
+ * 	mapped from the file as well instead of being built by BuildLengthIndex.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class CategoryIndex {
+
+	//number of letters in the (uppercase) alphabet
+	public static final int ALPHABET_SIZE = 26;
+
+	//Holds the words of the category, the index of a word in this list is its id
+	private List<String> words;
+	//number of 64 bit blocks needed to hold one bit per word
+	protected int blocks;
+	//length of the longest word in the category
+	protected int maxLength;
+	//bitsets of word ids, flattened as [position][letter][block]
+	private long[] letterMasks;
+	//bitsets of word ids, flattened as [length][block]
+	private long[] lengthMasks;
+	//bitset of the ids of words which already appear earlier in the list
+	private long[] repeated;
+	//number of words of every length, leaving out the words outside the alphabet
+	private int[] lengthCounts;
+	//Holds the index over the words of each length, built on first use (see getLengthIndex)
+	private CategoryIndex[] lengthIndices;
+
+	/**
+	 * Constructor, builds the index for the given list of words
+	 * @param words
+	 */
+	public CategoryIndex(List<String> words){
+		this.words = words;
+		this.blocks = (words.size() + 63) / 64;
+		this.maxLength = 0;
+		for(String w : words){
+			this.maxLength = Math.max(this.maxLength, w.length());
+		}
+		this.letterMasks = new long[this.maxLength * ALPHABET_SIZE * this.blocks];
+		this.lengthMasks = new long[(this.maxLength + 1) * this.blocks];
+		this.repeated = new long[this.blocks];
+		this.lengthCounts = new int[this.maxLength + 1];
+		HashSet<String> seen = new HashSet<String>();
+
+		for(int id = 0; id < words.size(); id++){
+			String w = words.get(id);
+			int block = id >>> 6;
+			long bit = 1L << (id & 63);
+			if(!seen.add(w))
+				this.repeated[block] |= bit;
+			boolean indexable = true;
+			for(int p = 0; p < w.length(); p++){
+				int letter = w.charAt(p) - 'A';
+				if(letter < 0 || letter >= ALPHABET_SIZE){
+					//words outside the uppercase alphabet can never be matched by a pattern
+					indexable = false;
+					break;
+				}
+			}
+			if(!indexable)
+				continue;
+			for(int p = 0; p < w.length(); p++){
+				int letter = w.charAt(p) - 'A';
+				this.letterMasks[MaskOffset(p, letter)+block] |= bit;
+			}
+			this.lengthMasks[w.length() * this.blocks + block] |= bit;
+			this.lengthCounts[w.length()]++;
+		}
+	}
+
+	/**
+	 * Constructor for an index whose bitsets are held elsewhere (see MappedCategoryIndex)
+	 * @param words
+	 * @param maxLength length of the longest word
+	 */
+	protected CategoryIndex(List<String> words, int maxLength){
+		this.words = words;
+		this.blocks = (words.size() + 63) / 64;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * @param offset offset in the bitsets flattened as [position][letter][block]
+	 * @return the block of word ids at the offset
+	 */
+	protected long LetterMask(int offset){
+		return this.letterMasks[offset];
+	}
+
+	/**
+	 * @param offset offset in the bitsets flattened as [length][block]
+	 * @return the block of word ids at the offset
+	 */
+	protected long LengthMask(int offset){
+		return this.lengthMasks[offset];
+	}
+
+	/**
+	 * @param block
+	 * @return the block of the bitset of repeated word ids
+	 */
+	protected long RepeatedMask(int block){
+		return this.repeated[block];
+	}
+
+	/**
+	 * @param position
+	 * @param letter 0 based letter (ie: 'A' = 0)
+	 * @return offset of the first block of the bitset for (position, letter)
+	 */
+	protected int MaskOffset(int position, int letter){
+		return (position * ALPHABET_SIZE + letter) * this.blocks;
+	}
+
+	/**
+	 * Checks whether at least one word of the category matches the pattern.
+	 * Assigned positions hold an uppercase letter, unassigned positions hold 0.
+	 * @param pattern
+	 * @return true if some word has the pattern's length and letters
+	 */
+	public boolean HasMatchingWord(char[] pattern){
+		if(pattern.length > this.maxLength)
+			return false;
+		int lengthOffset = pattern.length * this.blocks;
+		for(int b = 0; b < this.blocks; b++){
+			long m = LengthMask(lengthOffset+b);
+			for(int p = 0; p < pattern.length && m != 0; p++){
+				if(pattern[p] == 0)
+					continue;
+				int letter = pattern[p] - 'A';
+				if(letter < 0 || letter >= ALPHABET_SIZE)
+					return false;
+				m &= LetterMask(MaskOffset(p, letter)+b);
+			}
+			if(m != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the words of the category matching the pattern
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return the number of matching words
+	 */
+	public int CountMatchingWords(char[] pattern){
+		if(pattern.length > this.maxLength)
+			return 0;
+		int lengthOffset = pattern.length * this.blocks;
+		int count = 0;
+		for(int b = 0; b < this.blocks; b++){
+			long m = LengthMask(lengthOffset+b);
+			for(int p = 0; p < pattern.length && m != 0; p++){
+				if(pattern[p] == 0)
+					continue;
+				int letter = pattern[p] - 'A';
+				if(letter < 0 || letter >= ALPHABET_SIZE)
+					return 0;
+				m &= LetterMask(MaskOffset(p, letter)+b);
+			}
+			count += Long.bitCount(m);
+		}
+		return count;
+	}
+
+	/**
+	 * Collects the ids of the words of the category matching the pattern
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @param words bitset of getBlockCount() blocks, overwritten with the matching ids
+	 * @return the number of matching words
+	 */
+	public int MatchingWords(char[] pattern, long[] words){
+		int count = 0;
+		for(int b = 0; b < this.blocks; b++){
+			long m = (pattern.length > this.maxLength) ? 0 : LengthMask(pattern.length * this.blocks + b);
+			for(int p = 0; p < pattern.length && m != 0; p++){
+				if(pattern[p] == 0)
+					continue;
+				int letter = pattern[p] - 'A';
+				m &= (letter < 0 || letter >= ALPHABET_SIZE) ? 0 : LetterMask(MaskOffset(p, letter)+b);
+			}
+			words[b] = m;
+			count += Long.bitCount(m);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the words of a set (see MatchingWords) which also match the pattern
+	 * @param words bitset of word ids
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return the number of words in the set matching the pattern
+	 */
+	public int CountMatchingWords(long[] words, char[] pattern){
+		int count = 0;
+		for(int b = 0; b < this.blocks; b++){
+			long m = words[b];
+			for(int p = 0; p < pattern.length && m != 0; p++){
+				if(pattern[p] == 0)
+					continue;
+				int letter = pattern[p] - 'A';
+				m &= (letter < 0 || letter >= ALPHABET_SIZE || p >= this.maxLength) ? 0 : LetterMask(MaskOffset(p, letter)+b);
+			}
+			count += Long.bitCount(m);
+		}
+		return count;
+	}
+
+	/**
+	 * Collects the letters which the words matching the pattern have at the given
+	 * position. Used by forward checking to prune the domain of an unassigned index.
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @param position an unassigned position of the pattern
+	 * @return a 26 bit mask of letters (bit 0 = 'A'), 0 if no word matches
+	 */
+	public int SupportedLetters(char[] pattern, int position){
+		if(pattern.length > this.maxLength)
+			return 0;
+		int lengthOffset = pattern.length * this.blocks;
+		int supported = 0;
+		for(int b = 0; b < this.blocks && supported != LetterDomains.ALL_LETTERS; b++){
+			long m = LengthMask(lengthOffset+b);
+			for(int p = 0; p < pattern.length && m != 0; p++){
+				if(pattern[p] == 0 || p == position)
+					continue;
+				int letter = pattern[p] - 'A';
+				if(letter < 0 || letter >= ALPHABET_SIZE)
+					return 0;
+				m &= LetterMask(MaskOffset(p, letter)+b);
+			}
+			if(m == 0)
+				continue;
+			for(int letter = 0; letter < ALPHABET_SIZE; letter++){
+				if((supported & (1 << letter)) == 0 && (LetterMask(MaskOffset(position, letter)+b) & m) != 0){
+					supported |= 1 << letter;
+				}
+			}
+		}
+		return supported;
+	}
+
+	/**
+	 * Returns the index over the words of the category with the given length, in 
+	 * category order. Word ids of the returned index are positions in that
+	 * partition. If every word has the length, the index itself is returned.
+	 * Safe to call from several threads sharing the index.
+	 * @param length
+	 * @return the index of the words of the length, empty if there are none
+	 */
+	public synchronized CategoryIndex getLengthIndex(int length){
+		if(length > this.maxLength || length < 0)
+			return new CategoryIndex(Collections.<String>emptyList());
+		if(this.lengthIndices == null)
+			this.lengthIndices = new CategoryIndex[this.maxLength + 1];
+		if(this.lengthIndices[length] == null)
+			this.lengthIndices[length] = BuildLengthIndex(length);
+		return this.lengthIndices[length];
+	}
+
+	/**
+	 * Builds the index over the words of the category with the given length
+	 * (see getLengthIndex). Words outside the alphabet are left out, since no
+	 * pattern matches them.
+	 * @param length at most getMaxLength()
+	 * @return the index of the words of the length, this if every word has it and
+	 * is in the alphabet
+	 */
+	protected CategoryIndex BuildLengthIndex(int length){
+		if(this.lengthCounts[length] == this.words.size())
+			return this;
+		ArrayList<String> partition = new ArrayList<String>();
+		for(int b = 0; b < this.blocks; b++){
+			long m = LengthMask(length * this.blocks + b);
+			while(m != 0){
+				partition.add(this.words.get((b << 6) + Long.numberOfTrailingZeros(m)));
+				m &= m - 1;
+			}
+		}
+		return new CategoryIndex(partition);
+	}
+
+	/**
+	 * @return the number of 64 bit blocks of a word id bitset
+	 */
+	public int getBlockCount(){
+		return this.blocks;
+	}
+
+	/**
+	 * @return the length of the longest word in the category
+	 */
+	public int getMaxLength(){
+		return this.maxLength;
+	}
+
+	/**
+	 * @return the number of words in the category
+	 */
+	public int size(){
+		return this.words.size();
+	}
+
+	/**
+	 * @param id
+	 * @return true if the same word appears with a lower id
+	 */
+	public boolean IsRepeatedWord(int id){
+		return (RepeatedMask(id >>> 6) & (1L << (id & 63))) != 0;
+	}
+
+	/**
+	 * @param id
+	 * @return the word with the given id
+	 */
+	public String getWord(int id){
+		return this.words.get(id);
+	}
+
+}
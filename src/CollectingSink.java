@@ -0,0 +1,38 @@
+/**
+ * CollectingSink: a SolutionSink storing a copy of every solution in a list
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+
+public class CollectingSink implements SolutionSink {
+
+	//Holds the solutions received so far
+	private ArrayList<ArrayList<Character>> results;
+
+	/**
+	 * Constructor, collects into a new list
+	 */
+	public CollectingSink(){
+		this(new ArrayList<ArrayList<Character>>());
+	}
+
+	/**
+	 * Constructor, collects into the given list
+	 * @param results
+	 */
+	public CollectingSink(ArrayList<ArrayList<Character>> results){
+		this.results = results;
+	}
+
+	@Override
+	public boolean Accept(Assignment solution){
+		this.results.add(solution.ToCharacterList());
+		return true;
+	}
+
+	public ArrayList<ArrayList<Character>> getResults(){
+		return this.results;
+	}
+
+}
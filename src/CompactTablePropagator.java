@@ -0,0 +1,468 @@
+/**
+ * CompactTablePropagator: enforces generalized arc consistency on the category
+ * 	constraints of a puzzle with the Compact-Table algorithm
+ *
+ * 	Every category is a table constraint: its allowed tuples are the words of its
+ * 	length over its indices. For every category the propagator keeps the set of
+ * 	words still valid (every letter permitted at its index) as a reversible sparse
+ * 	bitset: the blocks of word ids plus the list of the blocks which are not yet
+ * 	empty, of which only the first limit entries are live, so the work done on a
+ * 	table shrinks with it. The support masks of a (position, letter) pair are the
+ * 	letter bitsets of the category's CategoryIndex.
+ *
+ * 	When the letter domain of an index shrinks, every category connected to it
+ * 	updates its table by ANDing it with the union of the support masks of the
+ * 	letters left (or the complement of the union of the removed ones, whichever
+ * 	is smaller), then removes from the domains of its indices every letter no
+ * 	valid word supports anymore, looking first at the block where a support was
+ * 	last found (the residue). Categories are queued until nothing changes.
+ *
+ * 	The letter domains, the table blocks and limits and the domain each table was
+ * 	last updated with are held in one array of longs, every change of which is
+ * 	recorded on an undo trail, so Mark/UndoTo restore the state on backtrack as
+ * 	with Assignment. The list of live blocks itself is never restored: a block
+ * 	only leaves the live part of the list by swapping with the last live block,
+ * 	so restoring the limit restores the live part as a set.
+ *
+ * @author dcyoung3
+ */
+import java.util.Arrays;
+
+public class CompactTablePropagator {
+
+	//Holds the indices belonging to each category ordinal
+	private int[][] categoryIndices;
+	//Holds the category ordinals connected to each index
+	private int[][] indexCategories;
+	//Holds the word index of each category ordinal (the words of its length)
+	private CategoryIndex[] categoryWords;
+
+	//Holds the reversible state: domains, then per category the last seen domains, the limit and the blocks
+	private long[] state;
+	//offset in the state of the last seen domain of position 0 of each category
+	private int[] seenBase;
+	//offset in the state of the limit of each category, the blocks follow it
+	private int[] limitSlot;
+	//undo trail: the slot and previous value of every change, in order
+	private int[] trailSlots;
+	private long[] trailValues;
+	private int trailSize;
+
+	//Holds the ids of the blocks of each table, the live ones first
+	private int[][] blockLists;
+	//Holds the block of the last support found for each category, position and letter
+	private int[][][] residues;
+	//Holds a reusable mask of getBlockCount() blocks for each category
+	private long[][] masks;
+	//Holds the queue of categories whose indices' domains changed
+	private int[] queue;
+	private boolean[] queued;
+	private int queueHead;
+	private int queueSize;
+	//ordinal of the category which caused the last failure, -1 if none
+	private int failedCategory;
+
+	/**
+	 * Constructor
+	 * @param puzzleSize
+	 * @param categoryIndices the indices belonging to each category ordinal
+	 * @param indexCategories the category ordinals connected to each index
+	 * @param categoryWords the word index of each category ordinal, holding only the words of its length
+	 */
+	public CompactTablePropagator(int puzzleSize, int[][] categoryIndices, int[][] indexCategories, CategoryIndex[] categoryWords){
+		this.categoryIndices = categoryIndices;
+		this.indexCategories = indexCategories;
+		this.categoryWords = categoryWords;
+		int categories = categoryIndices.length;
+		this.seenBase = new int[categories];
+		this.limitSlot = new int[categories];
+		this.blockLists = new int[categories][];
+		this.residues = new int[categories][][];
+		this.masks = new long[categories][];
+		int slots = puzzleSize;
+		for(int c = 0; c < categories; c++){
+			int blocks = (categoryWords[c] == null) ? 0 : categoryWords[c].getBlockCount();
+			this.seenBase[c] = slots;
+			slots += categoryIndices[c].length;
+			this.limitSlot[c] = slots;
+			slots += 1 + blocks;
+			this.blockLists[c] = new int[blocks];
+			this.residues[c] = new int[categoryIndices[c].length][CategoryIndex.ALPHABET_SIZE];
+			this.masks[c] = new long[blocks];
+		}
+		this.state = new long[slots];
+		this.trailSlots = new int[Math.max(slots, 1)];
+		this.trailValues = new long[this.trailSlots.length];
+		this.queue = new int[categories];
+		this.queued = new boolean[categories];
+		this.failedCategory = -1;
+	}
+
+	/**
+	 * Resets every table to the words of its category and the domains to the
+	 * given ones, restricts the assigned indices to their letters and propagates
+	 * @param initialDomains letter domains to start from, null for the whole alphabet
+	 * @param assignment
+	 * @return false if some category has no word left
+	 */
+	public boolean Start(int[] initialDomains, Assignment assignment){
+		this.trailSize = 0;
+		this.failedCategory = -1;
+		ClearQueue();
+		for(int i = 0; i < assignment.size(); i++){
+			int domain = (initialDomains == null) ? LetterDomains.ALL_LETTERS : initialDomains[i];
+			if(assignment.IsAssigned(i))
+				domain &= LetterDomains.LetterBit(assignment.get(i));
+			this.state[i] = domain;
+		}
+		for(int c = 0; c < this.categoryIndices.length; c++){
+			CategoryIndex words = this.categoryWords[c];
+			if(words == null){
+				this.failedCategory = c;
+				return false;
+			}
+			int length = this.categoryIndices[c].length;
+			for(int p = 0; p < length; p++){
+				//every word of the table holds letters of the alphabet only
+				this.state[this.seenBase[c] + p] = LetterDomains.ALL_LETTERS;
+				Arrays.fill(this.residues[c][p], 0);
+			}
+			int live = 0;
+			int blocks = words.getBlockCount();
+			for(int b = 0; b < blocks; b++){
+				//repeated words add no tuple to the table
+				long m = (length > words.getMaxLength()) ? 0 : words.LengthMask(length * blocks + b) & ~words.RepeatedMask(b);
+				this.state[this.limitSlot[c] + 1 + b] = m;
+				if(m != 0)
+					this.blockLists[c][live++] = b;
+			}
+			this.state[this.limitSlot[c]] = live;
+			//no word of the category has the length of its slot
+			if(live == 0)
+				return Fail(c);
+			for(int b = 0; b < blocks; b++){
+				if(this.state[this.limitSlot[c] + 1 + b] == 0)
+					this.blockLists[c][live++] = b;
+			}
+			Enqueue(c);
+		}
+		return Fixpoint();
+	}
+
+	/**
+	 * Restricts the index to the letter and propagates
+	 * @param index
+	 * @param c an uppercase letter
+	 * @return false if some category has no word left
+	 */
+	public boolean Assign(int index, char c){
+		if(!Restrict(index, LetterDomains.LetterBit(c)))
+			return Fail(this.indexCategories[index].length == 0 ? -1 : this.indexCategories[index][0]);
+		EnqueueCategoriesOf(index, -1);
+		return Fixpoint();
+	}
+
+	/**
+	 * Restricts every index of the category to the letter of the word at its
+	 * position and propagates
+	 * @param category ordinal of the category
+	 * @param id id of a word of the category's index
+	 * @return false if some category has no word left
+	 */
+	public boolean AssignWord(int category, int id){
+		String word = this.categoryWords[category].getWord(id);
+		int[] indices = this.categoryIndices[category];
+		for(int p = 0; p < indices.length; p++){
+			if(!Restrict(indices[p], LetterDomains.LetterBit(word.charAt(p))))
+				return Fail(category);
+			EnqueueCategoriesOf(indices[p], -1);
+		}
+		return Fixpoint();
+	}
+
+	/**
+	 * Processes the queued categories until no domain changes
+	 * @return false if some category has no word left
+	 */
+	private boolean Fixpoint(){
+		while(this.queueSize > 0){
+			int c = this.queue[this.queueHead];
+			this.queueHead = (this.queueHead + 1) % this.queue.length;
+			this.queueSize--;
+			this.queued[c] = false;
+			if(!UpdateTable(c) || !FilterDomains(c))
+				return Fail(c);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes from the table of the category the words using a letter which was
+	 * removed from the domain of its index since the table was last updated
+	 * @param c ordinal of the category
+	 * @return false if the table became empty
+	 */
+	private boolean UpdateTable(int c){
+		int[] indices = this.categoryIndices[c];
+		for(int p = 0; p < indices.length; p++){
+			int domain = (int) this.state[indices[p]];
+			int seen = (int) this.state[this.seenBase[c] + p];
+			if(domain == seen)
+				continue;
+			int removed = seen & ~domain;
+			ClearMask(c);
+			if(Integer.bitCount(removed) < Integer.bitCount(domain)){
+				for(int letters = removed; letters != 0; letters &= letters - 1){
+					AddToMask(c, p, Integer.numberOfTrailingZeros(letters));
+				}
+				IntersectWithMask(c, true);
+			} else {
+				for(int letters = domain; letters != 0; letters &= letters - 1){
+					AddToMask(c, p, Integer.numberOfTrailingZeros(letters));
+				}
+				IntersectWithMask(c, false);
+			}
+			Save(this.seenBase[c] + p, domain);
+			if(this.state[this.limitSlot[c]] == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes from the domains of the indices of the category the letters which
+	 * no word of its table supports, queueing the other categories of the indices
+	 * @param c ordinal of the category
+	 * @return false if a domain became empty
+	 */
+	private boolean FilterDomains(int c){
+		int[] indices = this.categoryIndices[c];
+		CategoryIndex words = this.categoryWords[c];
+		int limit = (int) this.state[this.limitSlot[c]];
+		//an empty table supports no letter (and may have no block to read a residue from)
+		if(limit == 0)
+			return false;
+		int base = this.limitSlot[c] + 1;
+		for(int p = 0; p < indices.length; p++){
+			int domain = (int) this.state[indices[p]];
+			//every word of the table has a letter of the domain, so a single letter is supported
+			if(Integer.bitCount(domain) <= 1)
+				continue;
+			int supported = domain;
+			for(int letters = domain; letters != 0; letters &= letters - 1){
+				int letter = Integer.numberOfTrailingZeros(letters);
+				int offset = words.MaskOffset(p, letter);
+				int residue = this.residues[c][p][letter];
+				if((this.state[base + residue] & words.LetterMask(offset + residue)) != 0)
+					continue;
+				int found = -1;
+				for(int i = 0; i < limit; i++){
+					int b = this.blockLists[c][i];
+					if((this.state[base + b] & words.LetterMask(offset + b)) != 0){
+						found = b;
+						break;
+					}
+				}
+				if(found >= 0)
+					this.residues[c][p][letter] = found;
+				else
+					supported &= ~(1 << letter);
+			}
+			if(supported != domain){
+				if(!Restrict(indices[p], supported))
+					return false;
+				//the table holds no word using the removed letters
+				Save(this.seenBase[c] + p, supported);
+				EnqueueCategoriesOf(indices[p], c);
+			}
+		}
+		return true;
+	}
+
+	private void ClearMask(int c){
+		long[] mask = this.masks[c];
+		int limit = (int) this.state[this.limitSlot[c]];
+		for(int i = 0; i < limit; i++){
+			mask[this.blockLists[c][i]] = 0;
+		}
+	}
+
+	/**
+	 * ORs the support mask of the letter at the position into the mask of the category
+	 */
+	private void AddToMask(int c, int p, int letter){
+		long[] mask = this.masks[c];
+		CategoryIndex words = this.categoryWords[c];
+		int offset = words.MaskOffset(p, letter);
+		int limit = (int) this.state[this.limitSlot[c]];
+		for(int i = 0; i < limit; i++){
+			int b = this.blockLists[c][i];
+			mask[b] |= words.LetterMask(offset + b);
+		}
+	}
+
+	/**
+	 * ANDs the table of the category with its mask (or the complement of its mask),
+	 * moving the blocks which became empty out of the live part of the list
+	 * @param c ordinal of the category
+	 * @param complement
+	 */
+	private void IntersectWithMask(int c, boolean complement){
+		long[] mask = this.masks[c];
+		int[] list = this.blockLists[c];
+		int base = this.limitSlot[c] + 1;
+		int limit = (int) this.state[this.limitSlot[c]];
+		for(int i = limit - 1; i >= 0; i--){
+			int b = list[i];
+			long old = this.state[base + b];
+			long w = old & (complement ? ~mask[b] : mask[b]);
+			if(w == old)
+				continue;
+			Save(base + b, w);
+			if(w == 0){
+				limit--;
+				list[i] = list[limit];
+				list[limit] = b;
+			}
+		}
+		if(limit != this.state[this.limitSlot[c]])
+			Save(this.limitSlot[c], limit);
+	}
+
+	/**
+	 * Restricts the domain of the index to the allowed letters
+	 * @return false if the domain became empty
+	 */
+	private boolean Restrict(int index, int allowed){
+		long old = this.state[index];
+		long restricted = old & allowed;
+		if(restricted != old)
+			Save(index, restricted);
+		return restricted != 0;
+	}
+
+	/**
+	 * Sets a slot of the state, recording its previous value on the trail
+	 */
+	private void Save(int slot, long value){
+		if(this.trailSize == this.trailSlots.length){
+			this.trailSlots = Arrays.copyOf(this.trailSlots, this.trailSize * 2);
+			this.trailValues = Arrays.copyOf(this.trailValues, this.trailSize * 2);
+		}
+		this.trailSlots[this.trailSize] = slot;
+		this.trailValues[this.trailSize] = this.state[slot];
+		this.trailSize++;
+		this.state[slot] = value;
+	}
+
+	private void Enqueue(int c){
+		if(this.queued[c])
+			return;
+		this.queue[(this.queueHead + this.queueSize) % this.queue.length] = c;
+		this.queueSize++;
+		this.queued[c] = true;
+	}
+
+	/**
+	 * Queues the categories connected to the index, except the given one
+	 */
+	private void EnqueueCategoriesOf(int index, int except){
+		for(int c : this.indexCategories[index]){
+			if(c != except)
+				Enqueue(c);
+		}
+	}
+
+	private void ClearQueue(){
+		while(this.queueSize > 0){
+			this.queued[this.queue[this.queueHead]] = false;
+			this.queueHead = (this.queueHead + 1) % this.queue.length;
+			this.queueSize--;
+		}
+	}
+
+	/**
+	 * Empties the queue and records the category which failed
+	 * @return false
+	 */
+	private boolean Fail(int category){
+		ClearQueue();
+		this.failedCategory = category;
+		return false;
+	}
+
+	/**
+	 * @return a mark which can be passed to UndoTo to restore the current state
+	 */
+	public int Mark(){
+		return this.trailSize;
+	}
+
+	/**
+	 * Undoes every change made since the mark was taken
+	 * @param mark
+	 */
+	public void UndoTo(int mark){
+		while(this.trailSize > mark){
+			this.trailSize--;
+			this.state[this.trailSlots[this.trailSize]] = this.trailValues[this.trailSize];
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the letter mask of the index
+	 */
+	public int getDomain(int index){
+		return (int) this.state[index];
+	}
+
+	/**
+	 * @return the ordinal of the category whose table or domain became empty in the last failure
+	 */
+	public int getFailedCategory(){
+		return this.failedCategory;
+	}
+
+	/**
+	 * @param category ordinal of the category
+	 * @return the number of words left in the table of the category
+	 */
+	public int Size(int category){
+		int base = this.limitSlot[category] + 1;
+		int limit = (int) this.state[this.limitSlot[category]];
+		int count = 0;
+		for(int i = 0; i < limit; i++){
+			count += Long.bitCount(this.state[base + this.blockLists[category][i]]);
+		}
+		return count;
+	}
+
+	/**
+	 * @param category ordinal of the category
+	 * @param id
+	 * @return true if the word is left in the table of the category
+	 */
+	public boolean Contains(int category, int id){
+		return (this.state[this.limitSlot[category] + 1 + (id >>> 6)] & (1L << (id & 63))) != 0;
+	}
+
+	/**
+	 * Collects the ids of the words left in the table of the category, in increasing order
+	 * @param category ordinal of the category
+	 * @param values buffer receiving the word ids
+	 * @return the number of word ids
+	 */
+	public int CollectWords(int category, int[] values){
+		int base = this.limitSlot[category] + 1;
+		int blocks = this.blockLists[category].length;
+		int count = 0;
+		for(int b = 0; b < blocks; b++){
+			for(long m = this.state[base + b]; m != 0; m &= m - 1){
+				values[count++] = (b << 6) + Long.numberOfTrailingZeros(m);
+			}
+		}
+		return count;
+	}
+
+}
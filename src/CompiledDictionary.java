@@ -0,0 +1,378 @@
+/**
+ * CompiledDictionary: compiles a word database into a binary file which is
+ * 	loaded by mapping it into memory, so starting a solver on a large dictionary
+ * 	pages the file in instead of parsing the text, and processes on the same
+ * 	host share the pages of the file.
+ *
+ * 	Layout (little endian, every section starts at a multiple of 8 bytes):
+ * 		header		int magic, int version, int category count, int string count,
+ * 					long position of the string offsets, long position of the string bytes
+ * 		directory	per category: long name string id, an index entry (long word
+ * 					count, long position of the word ids, long longest word length,
+ * 					long positions of the letter, length and repeated bitsets),
+ * 					long position of its length table
+ * 		strings		int offset of every string plus the end of the last one,
+ * 					then the UTF-8 bytes; every distinct word and category name once
+ * 		categories	per category: int string id of every word, then the bitsets
+ * 					of its CategoryIndex (letter [position][letter][block],
+ * 					length [length][block], repeated [block]); then its length
+ * 					table, an index entry for every length from 0 to the longest
+ * 					(word count -1 where the category is its own length index, see
+ * 					CategoryIndex.getLengthIndex), followed by those length indices
+ * 					laid out as the category's
+ * 	The length indices are mapped with the category, so a solver searching the
+ * 	words of one length never copies them to the heap.
+ * 	A single mapping is limited to 2GB, larger dictionaries cannot be compiled.
+ *
+ * 	Usage: CompiledDictionary <word list> <compiled file>
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class CompiledDictionary {
+
+	public static final int MAGIC = 0x57504443;
+	public static final int VERSION = 2;
+
+	private static final int HEADER_BYTES = 32;
+	private static final int DIRECTORY_LONGS = 8;
+	private static final int INDEX_LONGS = 6;
+
+	/**
+	 * Compiles the database (its categories are indexed if they are not yet)
+	 * @param db
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void Compile(WordDatabase db, String filename) throws IOException{
+		if(!db.IsIndexed())
+			db.BuildIndex();
+		ArrayList<String> categories = new ArrayList<String>(new TreeSet<String>(db.getWordMap().keySet()));
+
+		//give every distinct string an id
+		Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+		for(String category : categories){
+			StringId(ids, category);
+			for(String w : db.getWordMap().get(category)){
+				StringId(ids, w);
+			}
+		}
+		ArrayList<byte[]> strings = new ArrayList<byte[]>(ids.size());
+		long stringBytes = 0;
+		for(String s : ids.keySet()){
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			strings.add(utf8);
+			stringBytes += utf8.length;
+		}
+
+		//lay the sections out
+		long offsetsPos = HEADER_BYTES + 8L * DIRECTORY_LONGS * categories.size();
+		long bytesPos = Align(offsetsPos + 4L * (strings.size() + 1));
+		long position = Align(bytesPos + stringBytes);
+		long[][] directory = new long[categories.size()][DIRECTORY_LONGS];
+		long[][][] lengthTables = new long[categories.size()][][];
+		for(int c = 0; c < categories.size(); c++){
+			CategoryIndex index = db.getCategoryIndex(categories.get(c));
+			long[] entry = directory[c];
+			entry[0] = ids.get(categories.get(c));
+			position = LayOutIndex(index, position, entry, 1);
+			entry[7] = Align(position);
+			position = entry[7] + 8L * INDEX_LONGS * (index.getMaxLength() + 1);
+			lengthTables[c] = new long[index.getMaxLength() + 1][INDEX_LONGS];
+			for(int length = 0; length <= index.getMaxLength(); length++){
+				CategoryIndex lengthIndex = index.getLengthIndex(length);
+				if(lengthIndex == index)
+					lengthTables[c][length][0] = -1;
+				else
+					position = LayOutIndex(lengthIndex, position, lengthTables[c][length], 0);
+			}
+		}
+		if(position > Integer.MAX_VALUE)
+			throw new IOException("The compiled dictionary would exceed 2GB");
+
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			SectionWriter out = new SectionWriter(channel);
+			out.PutInt(MAGIC);
+			out.PutInt(VERSION);
+			out.PutInt(categories.size());
+			out.PutInt(strings.size());
+			out.PutLong(offsetsPos);
+			out.PutLong(bytesPos);
+			for(long[] entry : directory){
+				for(long value : entry){
+					out.PutLong(value);
+				}
+			}
+			int offset = 0;
+			for(byte[] utf8 : strings){
+				out.PutInt(offset);
+				offset += utf8.length;
+			}
+			out.PutInt(offset);
+			out.AlignTo(bytesPos);
+			for(byte[] utf8 : strings){
+				out.PutBytes(utf8);
+			}
+			for(int c = 0; c < categories.size(); c++){
+				CategoryIndex index = db.getCategoryIndex(categories.get(c));
+				WriteIndex(out, index, directory[c], 1, ids);
+				out.AlignTo(directory[c][7]);
+				for(long[] lengthEntry : lengthTables[c]){
+					for(long value : lengthEntry){
+						out.PutLong(value);
+					}
+				}
+				for(int length = 0; length <= index.getMaxLength(); length++){
+					if(lengthTables[c][length][0] != -1)
+						WriteIndex(out, index.getLengthIndex(length), lengthTables[c][length], 0, ids);
+				}
+			}
+			out.Flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Fills an index entry: word count, position of the word ids, longest word
+	 * length, positions of the letter, length and repeated bitsets
+	 * @param index
+	 * @param position where the index starts
+	 * @param entry
+	 * @param from offset of the index entry in the entry
+	 * @return the position following the index
+	 */
+	private static long LayOutIndex(CategoryIndex index, long position, long[] entry, int from){
+		entry[from] = index.size();
+		entry[from + 1] = position;
+		entry[from + 2] = index.getMaxLength();
+		entry[from + 3] = Align(position + 4L * index.size());
+		entry[from + 4] = entry[from + 3] + 8L * index.getMaxLength() * CategoryIndex.ALPHABET_SIZE * index.getBlockCount();
+		entry[from + 5] = entry[from + 4] + 8L * (index.getMaxLength() + 1) * index.getBlockCount();
+		return entry[from + 5] + 8L * index.getBlockCount();
+	}
+
+	/**
+	 * Writes the word ids and the bitsets of an index where its entry lays them out
+	 * @param out
+	 * @param index
+	 * @param entry
+	 * @param from offset of the index entry in the entry
+	 * @param ids string id of every word
+	 * @throws IOException
+	 */
+	private static void WriteIndex(SectionWriter out, CategoryIndex index, long[] entry, int from,
+			Map<String, Integer> ids) throws IOException{
+		out.AlignTo(entry[from + 1]);
+		for(int id = 0; id < index.size(); id++){
+			out.PutInt(ids.get(index.getWord(id)));
+		}
+		out.AlignTo(entry[from + 3]);
+		for(int i = 0; i < (entry[from + 4] - entry[from + 3]) / 8; i++){
+			out.PutLong(index.LetterMask(i));
+		}
+		for(int i = 0; i < (entry[from + 5] - entry[from + 4]) / 8; i++){
+			out.PutLong(index.LengthMask(i));
+		}
+		for(int b = 0; b < index.getBlockCount(); b++){
+			out.PutLong(index.RepeatedMask(b));
+		}
+	}
+
+	private static void StringId(Map<String, Integer> ids, String s){
+		if(!ids.containsKey(s))
+			ids.put(s, ids.size());
+	}
+
+	private static long Align(long position){
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Loads a compiled dictionary into an empty database. The words and the
+	 * indices are read in place from the mapping; only the words the solvers
+	 * read are ever decoded.
+	 * @param filename
+	 * @param db receives the categories, already indexed
+	 * @throws IOException if the file is not a compiled dictionary
+	 */
+	public static void Load(String filename, WordDatabase db) throws IOException{
+		MappedByteBuffer mapped;
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("The compiled dictionary exceeds 2GB");
+			//the mapping stays valid once the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+		ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if(buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Filename: \"" + filename + "\" is not a compiled dictionary");
+		int categoryCount = buffer.getInt(8);
+		int stringCount = buffer.getInt(12);
+		int offsetsPos = (int) buffer.getLong(16);
+		int bytesPos = (int) buffer.getLong(24);
+		MappedWordList.StringTable table = new MappedWordList.StringTable(
+				Section(buffer, offsetsPos, 4L * (stringCount + 1)).asIntBuffer(),
+				Section(buffer, bytesPos, buffer.limit() - bytesPos));
+
+		for(int c = 0; c < categoryCount; c++){
+			long[] entry = new long[DIRECTORY_LONGS];
+			for(int k = 0; k < DIRECTORY_LONGS; k++){
+				entry[k] = buffer.getLong(HEADER_BYTES + 8 * (c * DIRECTORY_LONGS + k));
+			}
+			MappedCategoryIndex[] lengthIndices = new MappedCategoryIndex[(int) entry[3] + 1];
+			for(int length = 0; length < lengthIndices.length; length++){
+				long[] lengthEntry = new long[INDEX_LONGS];
+				for(int k = 0; k < INDEX_LONGS; k++){
+					lengthEntry[k] = buffer.getLong((int) entry[7] + 8 * (length * INDEX_LONGS + k));
+				}
+				//null where the category is its own length index
+				if(lengthEntry[0] != -1)
+					lengthIndices[length] = MapIndex(buffer, MapWords(buffer, table, lengthEntry, 0), lengthEntry, 0, null);
+			}
+			List<String> list = MapWords(buffer, table, entry, 1);
+			db.AddIndexedCategory(table.get((int) entry[0]), list, MapIndex(buffer, list, entry, 1, lengthIndices));
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @param table
+	 * @param entry
+	 * @param from offset of the index entry in the entry
+	 * @return the words of the index its entry lays out, read in place
+	 */
+	private static List<String> MapWords(ByteBuffer buffer, MappedWordList.StringTable table, long[] entry, int from){
+		return new MappedWordList(table, Section(buffer, entry[from + 1], 4L * entry[from]).asIntBuffer());
+	}
+
+	/**
+	 * @param buffer
+	 * @param list the words of the index (see MapWords)
+	 * @param entry
+	 * @param from offset of the index entry in the entry
+	 * @param lengthIndices the mapped length indices of the index, null for a length index
+	 * @return the index read in place from the bytes its entry lays out
+	 */
+	private static MappedCategoryIndex MapIndex(ByteBuffer buffer, List<String> list, long[] entry,
+			int from, MappedCategoryIndex[] lengthIndices){
+		int blocks = (list.size() + 63) / 64;
+		LongBuffer letterMasks = Section(buffer, entry[from + 3], entry[from + 4] - entry[from + 3]).asLongBuffer();
+		LongBuffer lengthMasks = Section(buffer, entry[from + 4], entry[from + 5] - entry[from + 4]).asLongBuffer();
+		LongBuffer repeated = Section(buffer, entry[from + 5], 8L * blocks).asLongBuffer();
+		return new MappedCategoryIndex(list, (int) entry[from + 2], letterMasks, lengthMasks, repeated, lengthIndices);
+	}
+
+	/**
+	 * @param buffer
+	 * @param position
+	 * @param length
+	 * @return a little endian view of the bytes [position, position + length) of the buffer
+	 */
+	private static ByteBuffer Section(ByteBuffer buffer, long position, long length){
+		ByteBuffer section = buffer.duplicate();
+		section.position((int) position);
+		section.limit((int) (position + length));
+		return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * SectionWriter: writes little endian values to a channel through a buffer
+	 */
+	private static class SectionWriter {
+
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		//number of bytes written so far
+		private long position;
+
+		public SectionWriter(FileChannel channel){
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = 0;
+		}
+
+		public void PutInt(int value) throws IOException{
+			Reserve(4);
+			this.buffer.putInt(value);
+		}
+
+		public void PutLong(long value) throws IOException{
+			Reserve(8);
+			this.buffer.putLong(value);
+		}
+
+		public void PutBytes(byte[] bytes) throws IOException{
+			for(byte b : bytes){
+				Reserve(1);
+				this.buffer.put(b);
+			}
+		}
+
+		/**
+		 * Pads with zeros up to the position
+		 * @param target
+		 * @throws IOException
+		 */
+		public void AlignTo(long target) throws IOException{
+			while(this.position < target){
+				Reserve(1);
+				this.buffer.put((byte) 0);
+			}
+		}
+
+		private void Reserve(int bytes) throws IOException{
+			if(this.buffer.remaining() < bytes)
+				Flush();
+			this.position += bytes;
+		}
+
+		public void Flush() throws IOException{
+			this.buffer.flip();
+			while(this.buffer.hasRemaining()){
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * Compiles a word list (in the format read by WordFileReader.readDatabaseFile)
+	 * @param args word list, compiled file
+	 */
+	public static void main(String[] args) {
+		if(args.length < 2){
+			System.out.println("Usage: CompiledDictionary <word list> <compiled file>");
+			return;
+		}
+		WordDatabase db = new WordDatabase();
+		new WordFileReader(db).readDatabaseFile(args[0]);
+		try {
+			Compile(db, args[1]);
+			System.out.println("Compiled " + db.getWordMap().size() + " categories into \"" + args[1] + "\"");
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + args[1] + "\"\t could not be written.");
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * CountingSink: a SolutionSink which only counts the solutions, without storing
+ * 	any of them. With a limit it stops the search once that many were counted.
+ *
+ * @author dcyoung3
+ */
+public class CountingSink implements SolutionSink {
+
+	//number of solutions after which the search is stopped
+	private long limit;
+	//number of solutions received so far
+	private long count;
+
+	/**
+	 * Constructor, counts every solution
+	 */
+	public CountingSink(){
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor
+	 * @param limit number of solutions after which the search is stopped
+	 */
+	public CountingSink(long limit){
+		this.limit = limit;
+		this.count = 0;
+	}
+
+	@Override
+	public boolean Accept(Assignment solution){
+		this.count++;
+		return this.count < this.limit;
+	}
+
+	public long getCount(){
+		return this.count;
+	}
+
+}
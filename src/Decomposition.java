@@ -0,0 +1,367 @@
+/**
+ * Decomposition: splits a puzzle into the connected components of its
+ * 	constraint graph and solves them independently
+ *
+ * 	Two indices are connected if some category holds both (see
+ * 	Puzzle.getIndexCategoryMap). The categories of different components share no
+ * 	index, so the solutions of the puzzle are exactly the combinations of one
+ * 	solution of every component: searching the components one by one costs the
+ * 	sum of their search spaces instead of their product.
+ *
+ * 	Every component is solved as a puzzle of its own (getComponent), numbered
+ * 	0 to its size - 1 in the order of the original indices, on a pool of threads.
+ * 	An index no category holds is a component of its own taking any letter, as
+ * 	in LetterBasedCSP. The solutions of the puzzle are then composed lazily
+ * 	(see Product), or only counted as the product of the counts of the
+ * 	components (Count), without ever being held in memory together.
+ *
+ * @author dcyoung3
+ */
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Decomposition {
+
+	//Holds the puzzle to decompose
+	private Puzzle puzzle;
+	//Holds the original indices of every component, in increasing order
+	private int[][] componentIndices;
+	//Holds the puzzle of every component, null for an index without category
+	private Puzzle[] components;
+
+	/**
+	 * Constructor, finds the connected components of the puzzle
+	 * @param puzzle
+	 */
+	public Decomposition(Puzzle puzzle){
+		this.puzzle = puzzle;
+		int size = puzzle.getPuzzleSize();
+
+		//union-find over the indices, joining the indices of every category
+		int[] parent = new int[size];
+		for(int i = 0; i < size; i++){
+			parent[i] = i;
+		}
+		for(ArrayList<Integer> indices : puzzle.getCategoryIndexMap().values()){
+			for(int k = 1; k < indices.size(); k++){
+				int a = Find(parent, indices.get(0));
+				int b = Find(parent, indices.get(k));
+				if(a != b)
+					parent[Math.max(a, b)] = Math.min(a, b);
+			}
+		}
+
+		//number the components in order of their lowest index
+		int[] component = new int[size];
+		ArrayList<ArrayList<Integer>> members = new ArrayList<ArrayList<Integer>>();
+		for(int i = 0; i < size; i++){
+			int root = Find(parent, i);
+			if(root == i){
+				component[i] = members.size();
+				members.add(new ArrayList<Integer>());
+			} else {
+				component[i] = component[root];
+			}
+			members.get(component[i]).add(i);
+		}
+		this.componentIndices = new int[members.size()][];
+		for(int k = 0; k < members.size(); k++){
+			this.componentIndices[k] = new int[members.get(k).size()];
+			for(int j = 0; j < members.get(k).size(); j++){
+				this.componentIndices[k][j] = members.get(k).get(j);
+			}
+		}
+
+		//renumber the indices of every component
+		this.components = new Puzzle[members.size()];
+		for(String category : puzzle.getCategoryIndexMap().keySet()){
+			ArrayList<Integer> indices = puzzle.getCategoryIndexMap().get(category);
+			if(indices.isEmpty())
+				continue;
+			int k = component[indices.get(0)];
+			if(this.components[k] == null)
+				this.components[k] = new Puzzle(this.componentIndices[k].length);
+			ArrayList<Integer> local = new ArrayList<Integer>(indices.size());
+			for(int index : indices){
+				local.add(Collections.binarySearch(members.get(k), index));
+			}
+			this.components[k].getCategoryIndexMap().put(category, local);
+		}
+		for(Puzzle p : this.components){
+			if(p != null)
+				p.GenerateInvertedMap();
+		}
+	}
+
+	private static int Find(int[] parent, int i){
+		while(parent[i] != i){
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * @return the number of connected components
+	 */
+	public int getComponentCount(){
+		return this.components.length;
+	}
+
+	/**
+	 * @param k
+	 * @return the puzzle of the component, null if it is a single index without category
+	 */
+	public Puzzle getComponent(int k){
+		return this.components[k];
+	}
+
+	/**
+	 * @param k
+	 * @return the original index of every index of the component
+	 */
+	public int[] getComponentIndices(int k){
+		return this.componentIndices[k];
+	}
+
+	/**
+	 * Solves every component, on up to the given number of threads
+	 * @param factory creates the solver of each component
+	 * @param db the dictionary, frozen if it is not yet (the solvers share it)
+	 * @param threads
+	 * @return the solutions of the puzzle, composed from those of the components
+	 * @throws InterruptedException
+	 */
+	public Product Solve(final BatchSolver.SolverFactory factory, WordDatabase db, int threads) throws InterruptedException{
+		final WordDatabase shared = db.Freeze();
+		ArrayList<Callable<List<char[]>>> tasks = new ArrayList<Callable<List<char[]>>>();
+		for(int k = 0; k < this.components.length; k++){
+			final Puzzle p = this.components[k];
+			tasks.add(new Callable<List<char[]>>(){
+				@Override
+				public List<char[]> call(){
+					return (p == null) ? AnyLetter() : SolveComponent(factory.Create(p, shared), p);
+				}
+			});
+		}
+		ArrayList<List<char[]>> solutions = new ArrayList<List<char[]>>();
+		for(Future<List<char[]>> f : RunAll(tasks, threads)){
+			solutions.add(Get(f));
+		}
+		return new Product(solutions);
+	}
+
+	/**
+	 * Counts the solutions of the puzzle as the product of the numbers of
+	 * solutions of the components, which are counted without being stored
+	 * @param factory creates the solver of each component
+	 * @param db the dictionary, frozen if it is not yet (the solvers share it)
+	 * @param threads
+	 * @return the number of solutions of the puzzle
+	 * @throws InterruptedException
+	 */
+	public BigInteger Count(final BatchSolver.SolverFactory factory, WordDatabase db, int threads) throws InterruptedException{
+		final WordDatabase shared = db.Freeze();
+		ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for(int k = 0; k < this.components.length; k++){
+			final Puzzle p = this.components[k];
+			tasks.add(new Callable<Long>(){
+				@Override
+				public Long call(){
+					if(p == null)
+						return (long) CategoryIndex.ALPHABET_SIZE;
+					BacktrackingCSP csp = factory.Create(p, shared);
+					CountingSink sink = new CountingSink();
+					csp.setSolutionSink(sink);
+					if(csp.Start(new Assignment(p.getPuzzleSize())))
+						csp.SearchFromCurrentState();
+					return sink.getCount();
+				}
+			});
+		}
+		BigInteger count = BigInteger.ONE;
+		for(Future<Long> f : RunAll(tasks, threads)){
+			count = count.multiply(BigInteger.valueOf(Get(f)));
+		}
+		return count;
+	}
+
+	/**
+	 * Runs the tasks on a pool of up to the given number of threads
+	 */
+	private static <T> List<Future<T>> RunAll(List<Callable<T>> tasks, int threads) throws InterruptedException{
+		ExecutorService pool = (threads <= 1 || tasks.size() <= 1)
+				? Executors.newSingleThreadExecutor() : Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+		try {
+			return pool.invokeAll(tasks);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static <T> T Get(Future<T> f) throws InterruptedException{
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			//a malformed component fails the whole puzzle, as a single solve would
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the solutions of a single index without category, any letter
+	 */
+	private static List<char[]> AnyLetter(){
+		ArrayList<char[]> letters = new ArrayList<char[]>();
+		for(int letter = 0; letter < CategoryIndex.ALPHABET_SIZE; letter++){
+			letters.add(new char[] { LetterDomains.LetterChar(letter) });
+		}
+		return letters;
+	}
+
+	/**
+	 * Solves a component, storing its solutions as char arrays
+	 */
+	private static List<char[]> SolveComponent(BacktrackingCSP csp, Puzzle p){
+		final ArrayList<char[]> solutions = new ArrayList<char[]>();
+		csp.setSolutionSink(new SolutionSink(){
+			@Override
+			public boolean Accept(Assignment solution){
+				char[] letters = new char[solution.size()];
+				for(int i = 0; i < letters.length; i++){
+					letters[i] = solution.get(i);
+				}
+				solutions.add(letters);
+				return true;
+			}
+		});
+		if(csp.Start(new Assignment(p.getPuzzleSize())))
+			csp.SearchFromCurrentState();
+		return solutions;
+	}
+
+	/**
+	 * Product: the solutions of the puzzle, as every combination of one solution
+	 * 	of each component. Iterating builds one solution at a time, the last
+	 * 	component varying fastest; moving to the next combination undoes and
+	 * 	rewrites only the components which changed.
+	 */
+	public class Product implements Iterable<ArrayList<Character>> {
+
+		//Holds the solutions of every component, in the component's numbering
+		private List<List<char[]>> solutions;
+
+		private Product(List<List<char[]>> solutions){
+			this.solutions = solutions;
+		}
+
+		/**
+		 * @return the number of solutions of the puzzle, the product of those of the components
+		 */
+		public BigInteger Count(){
+			BigInteger count = BigInteger.ONE;
+			for(List<char[]> s : this.solutions){
+				count = count.multiply(BigInteger.valueOf(s.size()));
+			}
+			return count;
+		}
+
+		/**
+		 * @param k
+		 * @return the solutions of the component, in its numbering (see getComponentIndices)
+		 */
+		public List<char[]> getComponentSolutions(int k){
+			return this.solutions.get(k);
+		}
+
+		/**
+		 * Passes every solution of the puzzle to the sink, until it asks to stop
+		 * @param sink
+		 */
+		public void Enumerate(SolutionSink sink){
+			Assignment assignment = new Assignment(puzzle.getPuzzleSize());
+			int[] choice = new int[this.solutions.size()];
+			int[] marks = new int[this.solutions.size()];
+			if(!Set(assignment, choice, marks, 0))
+				return;
+			do {
+				if(!sink.Accept(assignment))
+					return;
+			} while(Advance(assignment, choice, marks));
+		}
+
+		@Override
+		public Iterator<ArrayList<Character>> iterator(){
+			final Assignment assignment = new Assignment(puzzle.getPuzzleSize());
+			final int[] choice = new int[this.solutions.size()];
+			final int[] marks = new int[this.solutions.size()];
+			final boolean any = Set(assignment, choice, marks, 0);
+			return new Iterator<ArrayList<Character>>(){
+				private boolean hasNext = any;
+
+				@Override
+				public boolean hasNext(){
+					return this.hasNext;
+				}
+
+				@Override
+				public ArrayList<Character> next(){
+					if(!this.hasNext)
+						throw new NoSuchElementException();
+					ArrayList<Character> solution = assignment.ToCharacterList();
+					this.hasNext = Advance(assignment, choice, marks);
+					return solution;
+				}
+			};
+		}
+
+		/**
+		 * Writes the chosen solutions of the components from the given one on,
+		 * undoing first what was written for them before
+		 * @param marks the mark of the assignment before each component was written
+		 * @return false if some component has no solution
+		 */
+		private boolean Set(Assignment assignment, int[] choice, int[] marks, int from){
+			if(from < choice.length)
+				assignment.UndoTo(marks[from]);
+			for(int k = from; k < choice.length; k++){
+				marks[k] = assignment.Mark();
+				List<char[]> s = this.solutions.get(k);
+				if(s.isEmpty())
+					return false;
+				char[] letters = s.get(choice[k]);
+				int[] indices = componentIndices[k];
+				for(int j = 0; j < indices.length; j++){
+					assignment.Set(indices[j], letters[j]);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Moves to the next combination, like an odometer
+		 * @return false once every combination was visited
+		 */
+		private boolean Advance(Assignment assignment, int[] choice, int[] marks){
+			for(int k = choice.length - 1; k >= 0; k--){
+				choice[k]++;
+				if(choice[k] < this.solutions.get(k).size())
+					return Set(assignment, choice, marks, k);
+				choice[k] = 0;
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/**
+ * FirstSolutionsSink: a SolutionSink storing the first N solutions, which stops
+ * 	the search as soon as it has them. N = 1 gives a first solution query.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+
+public class FirstSolutionsSink implements SolutionSink {
+
+	//number of solutions wanted
+	private int limit;
+	//Holds the solutions received so far
+	private ArrayList<ArrayList<Character>> results;
+
+	/**
+	 * Constructor
+	 * @param limit number of solutions wanted (at least 1)
+	 */
+	public FirstSolutionsSink(int limit){
+		this.limit = Math.max(limit, 1);
+		this.results = new ArrayList<ArrayList<Character>>();
+	}
+
+	@Override
+	public boolean Accept(Assignment solution){
+		if(this.results.size() < this.limit)
+			this.results.add(solution.ToCharacterList());
+		return this.results.size() < this.limit;
+	}
+
+	/**
+	 * @return the first solution, or null if none was found
+	 */
+	public ArrayList<Character> getFirst(){
+		return this.results.isEmpty() ? null : this.results.get(0);
+	}
+
+	public ArrayList<ArrayList<Character>> getResults(){
+		return this.results;
+	}
+
+}
@@ -0,0 +1,559 @@
+/**
+ * IterativeSearch: runs the depth first search of a solver on an explicit stack,
+ * 	so that it can be paused, written to a checkpoint file and resumed later
+ *
+ * 	The solver is driven one decision at a time (see BacktrackingCSP), like
+ * 	ParallelSearch does. Every frame of the stack holds a variable, the values
+ * 	to try for it in order, how many of them were tried, and the mark to undo
+ * 	the value being tried; the assignment itself is only held by the solver, so
+ * 	the search neither recurses nor copies assignments, whatever the depth. The
+ * 	values of the frames are packed one after the other, each frame only taking
+ * 	the values OrderValues returned for it.
+ *
+ * 	Run(maxNodes, maxMillis) searches until every node was visited, the sink
+ * 	asked to stop, or the budget is spent. It pauses between two decisions: the
+ * 	frames below the top hold the value they tried last, the top frame none. A
+ * 	paused search continues where it stopped on the next Run, or from a
+ * 	checkpoint (WriteCheckpoint / Resume) in another process: Resume restarts a
+ * 	solver on the initial assignment and replays the value of every frame below
+ * 	the top, the values of the frames being read rather than computed again, so
+ * 	the rest of the tree is the one the paused search had left. (The weights of
+ * 	the DOM_WDEG ordering are not kept: a resumed search visits the same nodes
+ * 	below the frames, but may order the nodes it selects afterwards differently.)
+ *
+ * 	A checkpoint holds, for every frame, the value it tried last and the values
+ * 	it has not tried yet. No solution is passed to the sink twice: a resumed
+ * 	search only visits the nodes left, and the solutions of a solver which can
+ * 	reach the same complete assignment more than once (see 
+ * 	BacktrackingCSP.ProducesDuplicates) are kept in the checkpoint to drop the
+ * 	repeats, so the checkpoints of such a solver grow with every solution found.
+ *
+ * 	main runs a long enumeration in slices, appending the solutions to a file
+ * 	and writing a checkpoint after every slice. Restarted after being killed, it
+ * 	resumes from the last checkpoint and first cuts the output back to the
+ * 	solutions that checkpoint had counted.
+ *
+ * @author dcyoung3
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class IterativeSearch {
+
+	/**
+	 * State: how a Run returned
+	 */
+	public enum State {
+		//the budget was spent, Run continues the search
+		PAUSED,
+		//every node was visited
+		FINISHED,
+		//the sink asked to stop
+		STOPPED
+	}
+
+	private static final String HEADER = "IterativeSearch checkpoint 1";
+	//nodes visited between two reads of the clock
+	private static final int CLOCK_INTERVAL = 1024;
+
+	//Holds the solver searched
+	private BacktrackingCSP csp;
+	//Holds the assignment the search started from, for the checkpoints
+	private Assignment initial;
+	//Holds a string identifying the puzzle and dictionary, checked by Resume
+	private String fingerprint;
+	private int maxValues;
+	//number of frames on the stack
+	private int depth;
+	//Holds the variable, the number of values, the number tried, the offset of the
+	//values in values and the mark taken before the value being tried of every frame
+	private int[] variables;
+	private int[] counts;
+	private int[] next;
+	private int[] offsets;
+	private long[] marks;
+	//Holds the values of every frame, one frame after the other
+	private int[] values;
+	//Holds the values returned by OrderValues before they are copied to their frame
+	private int[] buffer;
+	private long nodes;
+	private long solutionCount;
+	//Holds the sink receiving the solutions, by default collecting into results
+	private SolutionSink sink;
+	private ArrayList<ArrayList<Character>> results;
+	//Holds the solutions passed on, null unless the solver produces duplicates
+	private HashSet<PackedAssignment> emitted;
+
+	/**
+	 * Constructor
+	 * @param csp configured solver, which the search takes over
+	 */
+	public IterativeSearch(BacktrackingCSP csp){
+		this.csp = csp;
+		this.fingerprint = "";
+		this.maxValues = csp.getMaxValueCount();
+		this.variables = new int[16];
+		this.counts = new int[16];
+		this.next = new int[16];
+		this.offsets = new int[16];
+		this.marks = new long[16];
+		this.values = new int[Math.min(16 * this.maxValues, 1024)];
+		this.buffer = new int[this.maxValues];
+		this.results = new ArrayList<ArrayList<Character>>();
+		this.sink = new CollectingSink(this.results);
+		this.emitted = csp.ProducesDuplicates() ? new HashSet<PackedAssignment>() : null;
+		csp.setSolutionSink(new SolutionSink(){
+			@Override
+			public boolean Accept(Assignment solution){
+				if(emitted != null && !emitted.add(new PackedAssignment(solution)))
+					return true;
+				solutionCount++;
+				return sink.Accept(solution);
+			}
+		});
+	}
+
+	/**
+	 * Selects the sink receiving the solutions as they are found
+	 * @param sink the sink, or null to collect into getResults() (the default)
+	 */
+	public void setSolutionSink(SolutionSink sink){
+		this.sink = (sink == null) ? new CollectingSink(this.results) : sink;
+	}
+
+	/**
+	 * Sets the string written to checkpoints, which Resume requires to match
+	 * (eg: the puzzle and the version of the dictionary)
+	 * @param fingerprint a single line
+	 */
+	public void setFingerprint(String fingerprint){
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Starts a search from the assignment, which is modified in place
+	 * @param assignment
+	 * @return false if the puzzle has no solution extending the assignment
+	 */
+	public boolean Start(Assignment assignment){
+		this.initial = new Assignment(assignment);
+		this.depth = 0;
+		this.nodes = 0;
+		this.solutionCount = 0;
+		if(this.emitted != null)
+			this.emitted.clear();
+		if(!this.csp.Start(assignment))
+			return false;
+		if(this.csp.IsComplete())
+			this.csp.RecordSolution();
+		else
+			Push();
+		return true;
+	}
+
+	/**
+	 * Pushes a frame for the next variable, with the values to try
+	 */
+	private void Push(){
+		if(this.depth == this.variables.length)
+			Grow();
+		int d = this.depth++;
+		this.variables[d] = this.csp.SelectVariable();
+		this.csp.getStats().Node(d);
+		this.nodes++;
+		this.counts[d] = this.csp.OrderValues(this.variables[d], this.buffer);
+		Reserve(d);
+		System.arraycopy(this.buffer, 0, this.values, this.offsets[d], this.counts[d]);
+		this.next[d] = 0;
+	}
+
+	/**
+	 * Places the values of the frame after those of the frame below, making room
+	 * for its count of values
+	 * @param d frame whose count is set
+	 */
+	private void Reserve(int d){
+		this.offsets[d] = (d == 0) ? 0 : this.offsets[d - 1] + this.counts[d - 1];
+		int end = this.offsets[d] + this.counts[d];
+		if(end > this.values.length)
+			this.values = Arrays.copyOf(this.values, Math.max(end, 2 * this.values.length));
+	}
+
+	/**
+	 * Searches until every node was visited, the sink asked to stop or the budget is spent
+	 * @param maxNodes nodes to visit before pausing, 0 for no limit
+	 * @param maxMillis time to search before pausing, 0 for no limit
+	 * @return how the search returned
+	 */
+	public State Run(long maxNodes, long maxMillis){
+		long start = System.nanoTime();
+		long deadline = (maxMillis > 0) ? start + maxMillis * 1000000 : Long.MAX_VALUE;
+		long nodeLimit = (maxNodes > 0) ? this.nodes + maxNodes : Long.MAX_VALUE;
+		int sinceClock = 0;
+		SearchStats stats = this.csp.getStats();
+		try {
+			while(this.depth > 0){
+				if(this.csp.IsStopped())
+					return State.STOPPED;
+				if(this.nodes >= nodeLimit)
+					return State.PAUSED;
+				if(++sinceClock == CLOCK_INTERVAL){
+					sinceClock = 0;
+					if(System.nanoTime() >= deadline)
+						return State.PAUSED;
+				}
+				int d = this.depth - 1;
+				if(this.next[d] == this.counts[d]){
+					//every value was tried, undo the value of the frame below
+					stats.Backtrack();
+					this.depth--;
+					if(this.depth > 0)
+						this.csp.UndoTo(this.marks[this.depth - 1]);
+					continue;
+				}
+				int value = this.values[this.offsets[d] + this.next[d]++];
+				this.marks[d] = this.csp.Mark();
+				boolean consistent = this.csp.Assign(this.variables[d], value);
+				stats.Check(d, consistent);
+				if(consistent && !this.csp.IsComplete()){
+					Push();
+					continue;
+				}
+				if(consistent)
+					this.csp.RecordSolution();
+				this.csp.UndoTo(this.marks[d]);
+			}
+			return this.csp.IsStopped() ? State.STOPPED : State.FINISHED;
+		} finally {
+			stats.AddPhaseTime(SearchStats.Phase.SEARCH, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return true once every node was visited
+	 */
+	public boolean IsFinished(){
+		return this.depth == 0;
+	}
+
+	/**
+	 * @return the number of nodes visited, since the start of the search if it was resumed
+	 */
+	public long getNodes(){
+		return this.nodes;
+	}
+
+	/**
+	 * @return the number of solutions passed to the sink, since the start of the search if it was resumed
+	 */
+	public long getSolutionCount(){
+		return this.solutionCount;
+	}
+
+	/**
+	 * @return the number of frames on the stack
+	 */
+	public int getDepth(){
+		return this.depth;
+	}
+
+	/**
+	 * @return the solutions collected by this process when no other sink was selected
+	 */
+	public ArrayList<ArrayList<Character>> getResults(){
+		return this.results;
+	}
+
+	/**
+	 * Writes the state of the (paused) search, through a temporary file so that
+	 * the previous checkpoint stays whole until it is replaced. A frame is written
+	 * as its variable, the number of values tried (1 for the value it tried last,
+	 * 0 if it tried none), the number of values written and the values, from the
+	 * one tried last to the last one; the solutions passed on are written when the
+	 * solver produces duplicates.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void WriteCheckpoint(File file) throws IOException{
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile("checkpoint", ".tmp", directory);
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)));
+		out.println(HEADER);
+		out.println("solver " + this.csp.getClass().getSimpleName());
+		out.println("fingerprint " + this.fingerprint);
+		out.println("initial " + Letters(this.initial));
+		out.println("nodes " + this.nodes);
+		out.println("solutions " + this.solutionCount);
+		out.println("frames " + this.depth);
+		for(int d = 0; d < this.depth; d++){
+			//the values tried before the last one are done with
+			int first = Math.max(this.next[d] - 1, 0);
+			StringBuilder line = new StringBuilder();
+			line.append(this.variables[d]).append(' ').append(this.next[d] - first).append(' ').append(this.counts[d] - first);
+			for(int v = first; v < this.counts[d]; v++){
+				line.append(' ').append(this.values[this.offsets[d] + v]);
+			}
+			out.println(line);
+		}
+		out.println("emitted " + ((this.emitted == null) ? 0 : this.emitted.size()));
+		if(this.emitted != null){
+			for(PackedAssignment solution : this.emitted){
+				out.println(solution);
+			}
+		}
+		out.close();
+		if(out.checkError() || !Replace(temp, file)){
+			temp.delete();
+			throw new IOException("Filename: \"" + file + "\" could not be written");
+		}
+	}
+
+	private static boolean Replace(File temp, File file){
+		if(temp.renameTo(file))
+			return true;
+		//some platforms do not rename over an existing file
+		return file.delete() && temp.renameTo(file);
+	}
+
+	/**
+	 * @return the letters of the assignment, '.' for an unassigned index
+	 */
+	private static String Letters(Assignment assignment){
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < assignment.size(); i++){
+			char c = assignment.get(i);
+			s.append((c == Assignment.UNASSIGNED) ? '.' : c);
+		}
+		return s.toString();
+	}
+
+	private static Assignment FromLetters(String letters){
+		Assignment assignment = new Assignment(letters.length());
+		for(int i = 0; i < letters.length(); i++){
+			if(letters.charAt(i) != '.')
+				assignment.Set(i, letters.charAt(i));
+		}
+		return assignment;
+	}
+
+	/**
+	 * Resumes a search from a checkpoint
+	 * @param csp solver configured as the one which wrote the checkpoint, for the same
+	 * puzzle and dictionary, which the search takes over
+	 * @param file
+	 * @param fingerprint must be the fingerprint of the search which wrote the checkpoint
+	 * @return the search, paused where the checkpoint was written
+	 * @throws IOException if the checkpoint cannot be read, or was not written by
+	 * such a search
+	 */
+	public static IterativeSearch Resume(BacktrackingCSP csp, File file, String fingerprint) throws IOException{
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			if(!HEADER.equals(in.readLine()))
+				throw new IOException("Filename: \"" + file + "\" is not a checkpoint");
+			if(!csp.getClass().getSimpleName().equals(Field(in, "solver")))
+				throw new IOException("Filename: \"" + file + "\" was written by another solver");
+			if(!fingerprint.equals(Field(in, "fingerprint")))
+				throw new IOException("Filename: \"" + file + "\" was written for another puzzle or dictionary");
+			IterativeSearch search = new IterativeSearch(csp);
+			search.fingerprint = fingerprint;
+			search.initial = FromLetters(Field(in, "initial"));
+			long nodes = Long.parseLong(Field(in, "nodes"));
+			long solutionCount = Long.parseLong(Field(in, "solutions"));
+			int frames = Integer.parseInt(Field(in, "frames"));
+			if(!csp.Start(new Assignment(search.initial)))
+				throw new IOException("Filename: \"" + file + "\" starts from an assignment without solution");
+			for(int d = 0; d < frames; d++){
+				String[] fields = Line(in).split(" ");
+				if(search.depth == search.variables.length)
+					search.Grow();
+				search.variables[d] = Integer.parseInt(fields[0]);
+				search.next[d] = Integer.parseInt(fields[1]);
+				search.counts[d] = Integer.parseInt(fields[2]);
+				if(search.counts[d] > search.maxValues || search.next[d] > search.counts[d] || fields.length != 3 + search.counts[d])
+					throw new IOException("Filename: \"" + file + "\" has a malformed frame");
+				search.Reserve(d);
+				for(int v = 0; v < search.counts[d]; v++){
+					search.values[search.offsets[d] + v] = Integer.parseInt(fields[3 + v]);
+				}
+				search.depth++;
+				//replay the value tried by every frame below the top
+				if(d < frames - 1){
+					search.marks[d] = csp.Mark();
+					if(search.next[d] < 1 || !csp.Assign(search.variables[d], search.values[search.offsets[d] + search.next[d] - 1]))
+						throw new IOException("Filename: \"" + file + "\" does not match the puzzle");
+				}
+			}
+			int emitted = Integer.parseInt(Field(in, "emitted"));
+			for(int s = 0; s < emitted; s++){
+				if(search.emitted != null)
+					search.emitted.add(new PackedAssignment(FromLetters(Line(in))));
+			}
+			search.nodes = nodes;
+			search.solutionCount = solutionCount;
+			return search;
+		} catch (NumberFormatException e) {
+			throw new IOException("Filename: \"" + file + "\" is malformed", e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void Grow(){
+		int capacity = 2 * this.variables.length;
+		this.variables = Arrays.copyOf(this.variables, capacity);
+		this.counts = Arrays.copyOf(this.counts, capacity);
+		this.next = Arrays.copyOf(this.next, capacity);
+		this.offsets = Arrays.copyOf(this.offsets, capacity);
+		this.marks = Arrays.copyOf(this.marks, capacity);
+	}
+
+	private static String Line(BufferedReader in) throws IOException{
+		String line = in.readLine();
+		if(line == null)
+			throw new IOException("Unexpected end of checkpoint");
+		return line;
+	}
+
+	/**
+	 * @return the value of the next line, which must be the named field
+	 */
+	private static String Field(BufferedReader in, String name) throws IOException{
+		String line = Line(in);
+		if(!line.startsWith(name + " ") && !line.equals(name))
+			throw new IOException("Checkpoint field \"" + name + "\" expected, found \"" + line + "\"");
+		return line.substring(Math.min(line.length(), name.length() + 1));
+	}
+
+	/**
+	 * @return a fingerprint of the puzzle, the dictionary and the solver name
+	 */
+	public static String Fingerprint(Puzzle p, WordDatabase db, String solver){
+		StringBuilder s = new StringBuilder(solver + " " + SolutionCache.DictionaryVersion(db) + " " + p.getPuzzleSize());
+		for(Map.Entry<String, ArrayList<Integer>> e : new TreeMap<String, ArrayList<Integer>>(p.getCategoryIndexMap()).entrySet()){
+			s.append(' ').append(e.getKey()).append(':');
+			for(int index : e.getValue()){
+				s.append(index).append(',');
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Cuts the output back to its first solutions, each starting with a 
+	 * "(Soln #" line (see BatchSolver.PrintSolution)
+	 * @param output
+	 * @param solutions
+	 * @throws IOException if the output holds fewer solutions
+	 */
+	private static void Truncate(File output, long solutions) throws IOException{
+		long length = 0;
+		long seen = 0;
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(output));
+		try {
+			boolean lineStart = true;
+			int b;
+			while((b = in.read()) != -1){
+				if(lineStart && b == '('){
+					//the solution after the last one kept
+					if(seen == solutions)
+						break;
+					seen++;
+				}
+				length++;
+				lineStart = (b == '\n');
+			}
+		} finally {
+			in.close();
+		}
+		if(seen < solutions)
+			throw new IOException("Filename: \"" + output + "\" holds fewer solutions than the checkpoint");
+		RandomAccessFile file = new RandomAccessFile(output, "rw");
+		try {
+			file.setLength(length);
+		} finally {
+			file.close();
+		}
+	}
+
+	public static void main(String[] args) {
+		BatchSolver.SolverFactory factory = BatchSolver.WORD_BASED;
+		long sliceNodes = 0;
+		long sliceSeconds = 60;
+		ArrayList<String> paths = new ArrayList<String>();
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("-solver"))
+				factory = args[++a].equalsIgnoreCase("lb") ? BatchSolver.LETTER_BASED : BatchSolver.WORD_BASED;
+			else if(args[a].equals("-nodes"))
+				sliceNodes = Long.parseLong(args[++a]);
+			else if(args[a].equals("-seconds"))
+				sliceSeconds = Long.parseLong(args[++a]);
+			else
+				paths.add(args[a]);
+		}
+		if(paths.size() != 4){
+			System.out.println("Usage: IterativeSearch [-solver lb|wb] [-nodes n] [-seconds s]"
+					+ " <dictionary> <puzzle> <output file> <checkpoint file>");
+			return;
+		}
+
+		WordDatabase db = new WordDatabase();
+		WordFileReader fr = new WordFileReader(db);
+		fr.readDatabaseFile(paths.get(0));
+		final Puzzle p = fr.readPuzzleFile(paths.get(1));
+		File output = new File(paths.get(2));
+		File checkpoint = new File(paths.get(3));
+		String fingerprint = Fingerprint(p, db, factory.getName());
+		try {
+			final IterativeSearch search;
+			if(checkpoint.exists()){
+				search = Resume(factory.Create(p, db), checkpoint, fingerprint);
+				Truncate(output, search.getSolutionCount());
+				System.out.println("Resumed at " + search.getNodes() + " nodes, " + search.getSolutionCount() + " solutions");
+			} else {
+				search = new IterativeSearch(factory.Create(p, db));
+				search.setFingerprint(fingerprint);
+				search.Start(new Assignment(p.getPuzzleSize()));
+			}
+			final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(output, true), StandardCharsets.UTF_8)));
+			search.setSolutionSink(new SolutionSink(){
+				@Override
+				public boolean Accept(Assignment solution){
+					BatchSolver.PrintSolution(out, p, search.getSolutionCount() - 1, solution.ToCharacterList());
+					return true;
+				}
+			});
+			State state = State.PAUSED;
+			while(state == State.PAUSED){
+				state = search.Run(sliceNodes, sliceSeconds * 1000);
+				//the solutions go out before the checkpoint counting them
+				out.flush();
+				if(out.checkError())
+					throw new IOException("Filename: \"" + output + "\" could not be written");
+				search.WriteCheckpoint(checkpoint);
+				System.out.println(state + " at " + search.getNodes() + " nodes, " + search.getSolutionCount() + " solutions");
+			}
+			out.close();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -10,23 +10,95 @@
  * 		Domain D 		= 	permit-able letters for a given variable
  * 		Constraints C 	= 	a letter must be able to form a word from a connected 
  * 							category given previous specified letters
+ * 
+ * 	In FORWARD_CHECKING mode (see PropagationMode) every index also keeps a 26 bit
+ * 	letter domain. After each assignment the domains of the unassigned indices
+ * 	sharing a category with the assigned index are pruned to the letters that can
+ * 	still form a word, and the dive halts as soon as one of them becomes empty.
+ * 	In COMPACT_TABLE mode the domains are kept arc consistent with every category
+ * 	by a CompactTablePropagator instead.
+ * 
+ * 	With backjumping (see setBackjumping) a dead end does not simply go back to
+ * 	the previous index: every level of the search keeps a conflict set, the
+ * 	earlier levels whose letters caused its values to fail (the assigned indices
+ * 	of the category which rejected a value, or with forward checking of the
+ * 	categories of the index whose domain was wiped out). Once every value of an
+ * 	index failed, the search jumps back to the deepest level of its conflict set,
+ * 	handing it the rest of the set, and the letters of the set are stored as a
+ * 	nogood (see NogoodStore) which rejects them at once if they come together
+ * 	again. A level below which a solution was found goes back chronologically.
+ * 	COMPACT_TABLE mode gives no explanation of its pruning, so every failure
+ * 	there is blamed on all the earlier levels.
  *  
  * @author dcyoung3, nprince2, cwan3
  */
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.regex.Pattern;
 
-public class LetterBasedCSP {
+public class LetterBasedCSP implements BacktrackingCSP {
+	
+	//returned by Backjump when a solution was found below, which forbids jumping
+	private static final int SOLVED = Integer.MAX_VALUE;
 	
 	//Holds the puzzle defining the current CSP
 	private Puzzle puzzle;
 	//Holds the database of possible words for lookup by category
 	private WordDatabase db;
+	//Holds the categories of the puzzle, the solver refers to them by ordinal
+	private String[] categories;
+	//Holds the indices belonging to each category ordinal
+	private int[][] categoryIndices;
+	//Holds the category ordinals connected to each index
+	private int[][] indexCategories;
+	//Holds the word index of each category ordinal
+	private CategoryIndex[] categoryWords;
+	//Holds a reusable partial word buffer for each category, so checks do not build strings
+	private char[][] patternBuffers;
 	//Holds the final set of solutions. Each solution is an array of characters
 	private ArrayList<ArrayList<Character>> results;
-	//Holds a naive domain, where every letter from the capital alphabet is tried
-	private ArrayList<Character> alphabet;
+	//Holds the sink receiving the solutions, by default collecting into results
+	private SolutionSink sink;
+	//true once the sink or the search limit asked to stop the search
+	private boolean stopped;
+	//Holds the limits of the current search, null if there are none
+	private SearchBudget.Limit limit;
+	//Holds the propagation done after each assignment
+	private PropagationMode propagationMode;
+	//Holds the letter domain of every index, maintained in FORWARD_CHECKING mode
+	private LetterDomains domains;
+	//Holds the Compact-Table propagator and its letter domains, maintained in COMPACT_TABLE mode
+	private CompactTablePropagator compactTable;
+	//Holds the cache answering the support checks, null if there is none
+	private SupportCache supportCache;
+	//Holds the letter domains to start from, null for the whole alphabet
+	private int[] initialDomains;
+	//false if preprocessing proved that the puzzle has no solution
+	private boolean solvable;
+	//Holds the strategy used to select the next index
+	private VariableOrdering variableOrdering;
+	//Holds the learned weight of each category ordinal (DOM_WDEG), incremented on every dead end it causes
+	private int[] categoryWeights;
+	//Holds the assignment being searched, set by Start
+	private Assignment current;
+	//Holds the counters of the work done by the search
+	private SearchStats stats;
+	//true to search with conflict-directed backjumping and nogood learning
+	private boolean backjumping;
+	//Holds the largest number of nogoods kept, 0 to learn none
+	private int nogoodCapacity;
+	//Holds the nogoods learned by the current search, null if none are learned
+	private NogoodStore nogoods;
+	//Holds the level at which every index was assigned by the search, -1 for none
+	private int[] levels;
+	//Holds the index assigned at every level
+	private int[] levelIndices;
+	//Holds the conflict set of every level: the earlier levels blamed for its failures
+	private BitSet[] conflicts;
+	//Holds the category and the index whose check failed last
+	private int failedCategory;
+	private int failedIndex;
 	
 	/**
 	 * Constructor
@@ -37,34 +109,105 @@ public class LetterBasedCSP {
 		this.puzzle = puzzle;
 		this.db = db;
 		this.results = new ArrayList<ArrayList<Character>>();
-		DefineAlphabet();
+		this.sink = new CollectingSink(this.results);
+		this.stopped = false;
+		if(!db.IsIndexed()){
+			db.BuildIndex();
+		}
+		this.categories = puzzle.getCategories();
+		this.categoryIndices = puzzle.getCategoryIndexArrays();
+		this.indexCategories = puzzle.getIndexCategoryArrays();
+		this.categoryWords = new CategoryIndex[this.categories.length];
+		this.patternBuffers = new char[this.categories.length][];
+		for(int c = 0; c < this.categories.length; c++){
+			this.categoryWords[c] = db.getCategoryIndex(this.categories[c], this.categoryIndices[c].length);
+			this.patternBuffers[c] = new char[this.categoryIndices[c].length];
+		}
+		this.propagationMode = PropagationMode.CHECK_ONLY;
+		this.initialDomains = null;
+		this.solvable = true;
+		this.variableOrdering = VariableOrdering.FIRST_UNASSIGNED;
+		this.categoryWeights = new int[this.categories.length];
+		Arrays.fill(this.categoryWeights, 1);
+		this.stats = new SearchStats();
+		//the time spent loading the database, which the solver was built on
+		this.stats.AddPhaseTime(SearchStats.Phase.PARSE, db.getParseNanos());
+		this.stats.AddPhaseTime(SearchStats.Phase.INDEX, db.getIndexNanos());
+		this.backjumping = false;
+		this.nogoodCapacity = NogoodStore.DEFAULT_CAPACITY;
 	}
 	
 	/**
-	 * Define the alphabet instance variable, so that it need not 
-	 * be recreated every time a domain is querried
+	 * Constructor, searches the space left by preprocessing (see ArcConsistency):
+	 * the reduced word lists, and letters taken from the reduced domains
+	 * @param reduced
 	 */
-	private void DefineAlphabet(){
-		alphabet = new ArrayList<Character>();
-		char firstChar = 'A';
-		for(int i = 0; i < 26; i++ ){
-			alphabet.add((char) (firstChar+i));
-		}
+	public LetterBasedCSP(ReducedProblem reduced){
+		this(reduced.getPuzzle(), reduced.getWordDatabase());
+		this.initialDomains = reduced.getDomains();
+		this.solvable = reduced.IsSolvable();
+	}
+	
+	/**
+	 * Selects the propagation done after each assignment, CHECK_ONLY by default
+	 * @param mode
+	 */
+	public void setPropagationMode(PropagationMode mode){
+		this.propagationMode = mode;
+	}
+	
+	/**
+	 * Selects the strategy used to pick the next index, FIRST_UNASSIGNED by default
+	 * @param ordering
+	 */
+	public void setVariableOrdering(VariableOrdering ordering){
+		this.variableOrdering = ordering;
+	}
+	
+	/**
+	 * Selects conflict-directed backjumping with nogood learning for the recursive
+	 * search, off by default
+	 * @param backjumping
+	 */
+	public void setBackjumping(boolean backjumping){
+		this.backjumping = backjumping;
+	}
+	
+	/**
+	 * Sets the largest number of nogoods kept by a search with backjumping, the
+	 * least recently used being evicted (NogoodStore.DEFAULT_CAPACITY by default)
+	 * @param capacity 0 to learn no nogood
+	 */
+	public void setNogoodCapacity(int capacity){
+		if(capacity < 0)
+			throw new IllegalArgumentException("The nogood capacity must not be negative: " + capacity);
+		this.nogoodCapacity = capacity;
+	}
+	
+	/**
+	 * Answers the support checks from a cache, which may be shared with other 
+	 * solvers and threads (off by default)
+	 * @param cache the cache, null to query the category indices directly
+	 */
+	@Override
+	public void setSupportCache(SupportCache cache){
+		this.supportCache = cache;
 	}
 	
 	/**
 	 * This is a helper function for the main Backtracking algorithm.
-	 * Selects an unassigned variable from the assignment. Eventually
-	 * this should consider factors such as most/least constrained variables
-	 * but currently the naive implementation simply looks for the next undefined
-	 * index. 
+	 * Selects an unassigned variable from the assignment according to the
+	 * variable ordering (see VariableOrdering). The naive implementation 
+	 * simply looks for the next undefined index.
 	 * @param assignment
 	 * @return
 	 */
-	private int SelectUnassignedVariable(ArrayList<Character> assignment){
+	private int SelectUnassignedVariable(Assignment assignment){
+		if(this.variableOrdering != VariableOrdering.FIRST_UNASSIGNED)
+			return SelectMostConstrainedVariable(assignment);
 		//naive
 		for(int i = 0; i <assignment.size(); i++){
-			if (assignment.get(i) == null){
+			if (!assignment.IsAssigned(i)){
 				return i;
 			}
 		}
@@ -72,43 +215,142 @@ public class LetterBasedCSP {
 		return -1;
 	}
 	
+	/**
+	 * Selects the unassigned index ranked best by the MRV, DEGREE or DOM_WDEG ordering,
+	 * ties going to the lowest index.
+	 * @param assignment
+	 * @return
+	 */
+	private int SelectMostConstrainedVariable(Assignment assignment){
+		int best = -1;
+		//the ranking of the best index is bestNum / bestDen, lower is better
+		long bestNum = 0;
+		long bestDen = 1;
+		for(int i = 0; i < assignment.size(); i++){
+			if (assignment.IsAssigned(i))
+				continue;
+			long num;
+			long den = 1;
+			switch(this.variableOrdering){
+			case DEGREE:
+				num = -this.indexCategories[i].length;
+				break;
+			case DOM_WDEG:
+				num = Integer.bitCount(LiveDomain(i, assignment));
+				den = WeightedDegree(i, assignment);
+				break;
+			default:
+				num = Integer.bitCount(LiveDomain(i, assignment));
+				break;
+			}
+			if(best == -1 || num * bestDen < bestNum * den){
+				best = i;
+				bestNum = num;
+				bestDen = den;
+			}
+		}
+		if(best == -1)
+			System.out.println("Should not be selecting a variable when no index is null");
+		return best;
+	}
+	
+	/**
+	 * The letters which could still be assigned to the index. With forward checking
+	 * this is the pruned domain, otherwise it is computed from the connected categories.
+	 * @param index an unassigned index
+	 * @param assignment
+	 * @return a 26 bit letter mask
+	 */
+	private int LiveDomain(int index, Assignment assignment){
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING)
+			return this.domains.get(index);
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE)
+			return this.compactTable.getDomain(index);
+		int live = (this.initialDomains == null) ? LetterDomains.ALL_LETTERS : this.initialDomains[index];
+		for(int category : this.indexCategories[index]){
+			if(this.categoryWords[category] == null)
+				return 0;
+			char[] partialWord = GetWordPattern(category, assignment);
+			int[] indices = this.categoryIndices[category];
+			for(int position = 0; position < indices.length && live != 0; position++){
+				if(indices[position] == index)
+					live &= this.categoryWords[category].SupportedLetters(partialWord, position);
+			}
+		}
+		return live;
+	}
+	
+	/**
+	 * The summed weights of the categories connected to the index which still
+	 * have another unassigned index (at least 1).
+	 * @param index
+	 * @param assignment
+	 * @return
+	 */
+	private long WeightedDegree(int index, Assignment assignment){
+		long wdeg = 0;
+		for(int category : this.indexCategories[index]){
+			for(int other : this.categoryIndices[category]){
+				if(other != index && !assignment.IsAssigned(other)){
+					wdeg += this.categoryWeights[category];
+					break;
+				}
+			}
+		}
+		return Math.max(wdeg, 1);
+	}
+	
 	/**
 	 * This is a helper method for the main backtracking algorithm.
-	 * Eventually this will intelligently order the domain of possible values for 
-	 * the variable index, but currently the naive method simply returns the normal 
-	 * alphabet of uppercase characters. This is not efficient, but will work.
+	 * Returns the domain of possible values for the variable index as a letter
+	 * mask, which is tried in alphabetical order. The naive method (CHECK_ONLY) 
+	 * returns the whole alphabet of uppercase characters, with forward checking
+	 * only the letters left in the pruned domain of the index are returned.
 	 * @param index 
 	 * @return a domain of possible values (permit-able letters) for the variable index
 	 */
-	private ArrayList<Character> OrderDomainValues(int index){
+	private int OrderDomainValues(int index){
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING)
+			return this.domains.get(index);
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE)
+			return this.compactTable.getDomain(index);
+		if(this.initialDomains != null)
+			return this.initialDomains[index];
 		//naive: return a-z since there will be lots of chars anyways
-		return this.alphabet;
-		//eventually: return the chars in the corresponding categories
-		//return null;
+		return LetterDomains.ALL_LETTERS;
 	}
 	
 	/**
 	 * Considers all the indices of the assignment connected to the given category
-	 * and creates a regular expression using the already assigned characters and
-	 * wildcard flags for unassigned characters.  
-	 * @param category
+	 * and fills the category's pattern buffer with the already assigned characters,
+	 * using 0 for unassigned characters.
+	 * @param category ordinal of the category
 	 * @param assignment
-	 * @return a regular expression to compare against words in a category
+	 * @return the partial word to query against the words in a category
 	 */
-	private String GetWordRegEx(String category, ArrayList<Character> assignment){
-		//"A.A"
-		String partialWord = "";
-		for(int index : this.puzzle.getCategoryIndexMap().get(category)){
-			if (assignment.get(index) == null) {
-				partialWord+= ".";
-			}
-			else{
-				partialWord+= assignment.get(index);
-			}
+	private char[] GetWordPattern(int category, Assignment assignment){
+		//"A.A" is stored as {'A', 0, 'A'}
+		char[] partialWord = this.patternBuffers[category];
+		int[] indices = this.categoryIndices[category];
+		for(int position = 0; position < indices.length; position++){
+			partialWord[position] = assignment.get(indices[position]);
 		}
 		return partialWord;
 	}
 	
+	/**
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @return true if every index of the category holds a letter
+	 */
+	private boolean IsCategoryAssigned(int category, Assignment assignment){
+		for(int index : this.categoryIndices[category]){
+			if(!assignment.IsAssigned(index))
+				return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * Checks that the char c proposed for the specified index is able to form
 	 * a word from every connected category given previous specified letters 
@@ -116,70 +358,479 @@ public class LetterBasedCSP {
 	 * @param assignment
 	 * @return
 	 */
-	private boolean CheckIfConsistent(int index, ArrayList<Character> assignment){
+	private boolean CheckIfConsistent(int index, Assignment assignment){
 		
 		//for each category linked to the index
-		for(String category: this.puzzle.getIndexCategoryMap().get(index)){
-			String partialWord = GetWordRegEx(category, assignment);
-			boolean WordExistsInCategory = false;
-			//for each word in that category
-			for(String word : db.getWordMap().get(category)){
-				//could the partial word construct word
-				if(Pattern.matches(partialWord,word)){
-					WordExistsInCategory = true;
-					break;
-				}
-			}
-			
-			if(!WordExistsInCategory)
+		for(int category : this.indexCategories[index]){
+			char[] partialWord = GetWordPattern(category, assignment);
+			//could the partial word construct any word in that category
+			if(this.categoryWords[category] == null || !HasMatchingWord(category, partialWord)){
+				this.categoryWeights[category]++;
+				this.failedCategory = category;
+				this.failedIndex = index;
 				return false;
+			}
 		}
 		
 		return true;
 	}
 	
 	/**
-	 * Deep copies the input array
-	 * @param inputArray
-	 * @return a copy of the input array which can be saved without 
-	 * 			being affected by changes in the input array
+	 * @param category ordinal of the category
+	 * @param partialWord
+	 * @return true if some word of the category matches the partial word
 	 */
-	private ArrayList<Character> DeepCopyCharArrayList(ArrayList<Character> inputArray){
-		ArrayList<Character> newArrayList = new ArrayList<Character>();
-		for(char c : inputArray){
-			newArrayList.add(c);
+	private boolean HasMatchingWord(int category, char[] partialWord){
+		if(this.supportCache == null)
+			return this.categoryWords[category].HasMatchingWord(partialWord);
+		return this.supportCache.HasMatchingWord(this.categoryWords[category], partialWord);
+	}
+	
+	/**
+	 * Forward checking: prunes the domain of every unassigned index sharing a 
+	 * category with the given (assigned) index to the letters which can still 
+	 * form a word from that category given the specified letters.
+	 * Restrictions are recorded on the domains' trail and undone on backtrack.
+	 * @param index
+	 * @param assignment
+	 * @return false if the domain of any index became empty
+	 */
+	private boolean ForwardCheck(int index, Assignment assignment){
+		//for each category linked to the index
+		for(int category : this.indexCategories[index]){
+			if(this.categoryWords[category] == null){
+				this.failedCategory = category;
+				this.failedIndex = index;
+				return false;
+			}
+			char[] partialWord = GetWordPattern(category, assignment);
+			int[] indices = this.categoryIndices[category];
+			//for each unassigned index of that category
+			for(int position = 0; position < indices.length; position++){
+				if(partialWord[position] != Assignment.UNASSIGNED)
+					continue;
+				int supported = this.categoryWords[category].SupportedLetters(partialWord, position);
+				if(!this.domains.Restrict(indices[position], supported)){
+					this.categoryWeights[category]++;
+					this.failedCategory = category;
+					this.failedIndex = indices[position];
+					return false;
+				}
+			}
 		}
-		return newArrayList;
+		return true;
+	}
+	
+	/**
+	 * Propagates the assignment of the index according to the propagation mode
+	 * @param index
+	 * @param assignment
+	 * @return false if a constraint is violated
+	 */
+	private boolean Propagate(int index, Assignment assignment){
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING){
+			//the letter was taken from the domain pruned by Start and by the earlier 
+			//assignments, so it is consistent with the letters assigned already
+			return ForwardCheck(index, assignment);
+		}
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE){
+			if(this.compactTable.Assign(index, assignment.get(index)))
+				return true;
+			if(this.compactTable.getFailedCategory() >= 0)
+				this.categoryWeights[this.compactTable.getFailedCategory()]++;
+			return false;
+		}
+		return CheckIfConsistent(index, assignment);
+	}
+	
+	/**
+	 * @return a mark of the domains maintained by the propagation mode, 0 if there are none
+	 */
+	private int DomainMark(){
+		if(this.domains != null)
+			return this.domains.Mark();
+		return (this.compactTable == null) ? 0 : this.compactTable.Mark();
+	}
+	
+	/**
+	 * Undoes the pruning of the domains made since the mark was taken
+	 * @param mark
+	 */
+	private void UndoDomains(int mark){
+		if(this.domains != null)
+			this.domains.UndoTo(mark);
+		else if(this.compactTable != null)
+			this.compactTable.UndoTo(mark);
 	}
 	
 	/**
 	 * Main constraint satisfaction solver. 
 	 * Effectively conducts depth first search on the state space of possible
 	 * assignments for a CSP, halting any dive when a constraint is violated.
+	 * The boxed assignment is converted once to the primitive representation,
+	 * the search itself allocates nothing but the solutions it stores.
 	 * @param assignment
 	 * @return nothing, any found solutions are stored in the instance variable "results"
 	 */
 	public void RecursiveBacktracking(ArrayList<Character> assignment){
+		RecursiveBacktracking(new Assignment(assignment));
+	}
+	
+	/**
+	 * Main constraint satisfaction solver, on the primitive assignment.
+	 * @param assignment
+	 * @return nothing, any found solutions are stored in the instance variable "results"
+	 */
+	public void RecursiveBacktracking(Assignment assignment){
+		long start = System.nanoTime();
+		if(Start(assignment))
+			SearchFromCurrentState();
+		this.stats.AddPhaseTime(SearchStats.Phase.SEARCH, System.nanoTime() - start);
+	}
+	
+	@Override
+	public boolean Start(Assignment assignment){
+		this.current = assignment;
+		this.domains = null;
+		this.stopped = false;
+		if(!this.solvable)
+			return false;
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE){
+			if(this.compactTable == null)
+				this.compactTable = new CompactTablePropagator(assignment.size(), this.categoryIndices, 
+						this.indexCategories, this.categoryWords);
+			return this.compactTable.Start(this.initialDomains, assignment);
+		}
+		this.compactTable = null;
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING){
+			this.domains = (this.initialDomains == null) 
+					? new LetterDomains(assignment.size()) : new LetterDomains(this.initialDomains);
+			//keep at every index the letters its categories have at its position, since
+			//a category is only checked through the indices it has left unassigned
+			for(int category = 0; category < this.categories.length; category++){
+				if(this.categoryWords[category] == null)
+					return false;
+				int[] indices = this.categoryIndices[category];
+				char[] empty = new char[indices.length];
+				for(int position = 0; position < indices.length; position++){
+					if(!this.domains.Restrict(indices[position], this.categoryWords[category].SupportedLetters(empty, position)))
+						return false;
+				}
+			}
+			//prune around the letters which are specified before the search
+			for(int i = 0; i < assignment.size(); i++){
+				if(assignment.IsAssigned(i)){
+					if(!this.domains.Restrict(i, LetterDomains.LetterBit(assignment.get(i))))
+						return false;
+					if(!ForwardCheck(i, assignment))
+						return false;
+				}
+			}
+		}
+		//the search only checks a category through the indices it assigns, and
+		//forward checking through the indices left unassigned
+		for(int category = 0; category < this.categories.length; category++){
+			if(IsCategoryAssigned(category, assignment) && (this.categoryWords[category] == null 
+					|| !HasMatchingWord(category, GetWordPattern(category, assignment))))
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public void SearchFromCurrentState(){
+		if(this.current.IsComplete())
+			RecordSolution();
+		else if(this.backjumping)
+			Backjump(this.current);
+		else
+			Backtrack(this.current, 0);
+		if(this.limit != null)
+			this.limit.Flush();
+	}
+	
+	@Override
+	public LetterBasedCSP Fork(){
+		LetterBasedCSP fork = new LetterBasedCSP(this.puzzle, this.db);
+		//the stats of this solver already hold the time spent loading the database
+		fork.stats = new SearchStats();
+		fork.propagationMode = this.propagationMode;
+		fork.variableOrdering = this.variableOrdering;
+		fork.initialDomains = this.initialDomains;
+		fork.solvable = this.solvable;
+		fork.categoryWeights = this.categoryWeights.clone();
+		fork.limit = (this.limit == null) ? null : this.limit.Fork();
+		fork.supportCache = this.supportCache;
+		fork.backjumping = this.backjumping;
+		fork.nogoodCapacity = this.nogoodCapacity;
+		return fork;
+	}
+	
+	@Override
+	public int SelectVariable(){
+		return this.current.IsComplete() ? -1 : SelectUnassignedVariable(this.current);
+	}
+	
+	@Override
+	public int OrderValues(int variable, int[] values){
+		int count = 0;
+		for(int mask = OrderDomainValues(variable); mask != 0; mask &= mask - 1){
+			values[count++] = Integer.numberOfTrailingZeros(mask);
+		}
+		return count;
+	}
+	
+	@Override
+	public int getMaxValueCount(){
+		return CategoryIndex.ALPHABET_SIZE;
+	}
+	
+	@Override
+	public boolean Assign(int variable, int value){
+		this.current.Set(variable, LetterDomains.LetterChar(value));
+		return Propagate(variable, this.current);
+	}
+	
+	@Override
+	public long Mark(){
+		return ((long) this.current.Mark() << 32) | DomainMark();
+	}
+	
+	@Override
+	public void UndoTo(long mark){
+		this.current.UndoTo((int) (mark >>> 32));
+		UndoDomains((int) mark);
+	}
+	
+	@Override
+	public boolean IsComplete(){
+		return this.current.IsComplete();
+	}
+	
+	@Override
+	public boolean RecordSolution(){
+		this.stats.Solution();
+		if(!this.sink.Accept(this.current))
+			this.stopped = true;
+		return true;
+	}
+	
+	/**
+	 * The recursive depth first search behind RecursiveBacktracking
+	 * @param assignment
+	 * @param depth
+	 */
+	private void Backtrack(Assignment assignment, int depth){
+		if(this.limit != null && this.limit.Node()){
+			this.stopped = true;
+			return;
+		}
 		int index = SelectUnassignedVariable(assignment);
-		for(char c : this.OrderDomainValues(index)){
+		this.stats.Node(depth);
+		int values = this.OrderDomainValues(index);
+		while(values != 0){
+			char c = LetterDomains.LetterChar(Integer.numberOfTrailingZeros(values));
+			values &= values - 1;
+			int mark = assignment.Mark();
+			int domainMark = DomainMark();
 			// Add it to the assignment
-			assignment.set(index, c);
+			assignment.Set(index, c);
 			//if value is consistent with assignment given constraints
-			if(CheckIfConsistent(index, assignment)){
-				if (!assignment.contains(null)) {
+			boolean consistent = Propagate(index, assignment);
+			this.stats.Check(depth, consistent);
+			if(consistent){
+				if (assignment.IsComplete()) {
 					// add it to solution set
-					this.results.add(DeepCopyCharArrayList(assignment));
+					RecordSolution();
 				} else {
 					//dive deeper into the tree (the passed in assignment here contains the char c)
-					RecursiveBacktracking(assignment);
+					Backtrack(assignment, depth+1);
 				}
 			}
 			// Remove from assignment, keeping the tree at the current depth 
-			assignment.set(index, null);
+			assignment.UndoTo(mark);
+			UndoDomains(domainMark);
+			if(this.stopped)
+				return;
 			// removing the character ensures the next loop iteration is searching breadth
 		}
+		this.stats.Backtrack();
 	}
 	
+	/**
+	 * Searches from the current assignment with conflict-directed backjumping,
+	 * the letters assigned before being fixed (they take no level and are part
+	 * of no nogood, so the nogoods are learned anew by every search)
+	 * @param assignment
+	 */
+	private void Backjump(Assignment assignment){
+		int size = assignment.size();
+		if(this.levels == null || this.levels.length != size){
+			this.levels = new int[size];
+			this.levelIndices = new int[size];
+			this.conflicts = new BitSet[size];
+			for(int l = 0; l < size; l++){
+				this.conflicts[l] = new BitSet(size);
+			}
+		}
+		Arrays.fill(this.levels, -1);
+		if(this.nogoodCapacity == 0)
+			this.nogoods = null;
+		else if(this.nogoods == null)
+			this.nogoods = new NogoodStore(size, this.nogoodCapacity);
+		else
+			this.nogoods.Clear();
+		Backjump(assignment, 0);
+	}
+	
+	/**
+	 * The recursive depth first search with conflict-directed backjumping
+	 * @param assignment
+	 * @param depth level of the index selected
+	 * @return SOLVED if a solution was found below or the search stopped (nothing
+	 * is learned from a subtree not searched entirely), otherwise the level to go
+	 * back to (-1 if no earlier level is to blame, the search being over)
+	 */
+	private int Backjump(Assignment assignment, int depth){
+		if(this.limit != null && this.limit.Node()){
+			this.stopped = true;
+			return SOLVED;
+		}
+		int index = SelectUnassignedVariable(assignment);
+		this.stats.Node(depth);
+		this.levelIndices[depth] = index;
+		BitSet conflict = this.conflicts[depth];
+		conflict.clear();
+		//letters pruned from the domain before it is tried were pruned because of earlier levels
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING){
+			for(int category : this.indexCategories[index]){
+				AddCategoryLevels(conflict, category);
+			}
+		} else if(this.propagationMode == PropagationMode.COMPACT_TABLE)
+			conflict.set(0, depth);
+		boolean solved = false;
+		int values = this.OrderDomainValues(index);
+		while(values != 0){
+			char c = LetterDomains.LetterChar(Integer.numberOfTrailingZeros(values));
+			values &= values - 1;
+			int mark = assignment.Mark();
+			int domainMark = DomainMark();
+			assignment.Set(index, c);
+			this.levels[index] = depth;
+			int[] nogood = (this.nogoods == null) ? null : this.nogoods.Find(assignment, index);
+			boolean consistent = nogood == null && Propagate(index, assignment);
+			this.stats.Check(depth, consistent);
+			int next = depth;
+			if(consistent){
+				if (assignment.IsComplete()) {
+					RecordSolution();
+					solved = true;
+				} else {
+					next = Backjump(assignment, depth+1);
+				}
+			} else if(nogood != null){
+				this.stats.NogoodPrune();
+				for(int literal : nogood){
+					conflict.set(this.levels[literal / CategoryIndex.ALPHABET_SIZE]);
+				}
+			} else {
+				ExplainFailure(conflict, depth);
+			}
+			assignment.UndoTo(mark);
+			UndoDomains(domainMark);
+			this.levels[index] = -1;
+			if(this.stopped)
+				return SOLVED;
+			if(next == SOLVED)
+				solved = true;
+			else if(next < depth)
+				return next;
+		}
+		this.stats.Backtrack();
+		if(solved)
+			return SOLVED;
+		conflict.clear(depth);
+		int target = conflict.length() - 1;
+		if(target < 0)
+			return -1;
+		if(this.nogoods != null){
+			int[] literals = new int[conflict.cardinality()];
+			int k = 0;
+			for(int l = conflict.nextSetBit(0); l >= 0; l = conflict.nextSetBit(l + 1)){
+				literals[k++] = NogoodStore.Literal(this.levelIndices[l], assignment.get(this.levelIndices[l]));
+			}
+			this.nogoods.Add(literals, NogoodStore.Literal(this.levelIndices[target], assignment.get(this.levelIndices[target])));
+		}
+		if(target < depth - 1)
+			this.stats.Backjump();
+		conflict.clear(target);
+		this.conflicts[target].or(conflict);
+		return target;
+	}
+	
+	/**
+	 * Adds to the conflict set the levels of the assigned indices of the category
+	 * @param conflict
+	 * @param category
+	 */
+	private void AddCategoryLevels(BitSet conflict, int category){
+		for(int i : this.categoryIndices[category]){
+			if(this.levels[i] >= 0)
+				conflict.set(this.levels[i]);
+		}
+	}
+	
+	/**
+	 * Adds to the conflict set the levels blamed for the failed propagation of
+	 * the index assigned at the given level
+	 * @param conflict
+	 * @param depth
+	 */
+	private void ExplainFailure(BitSet conflict, int depth){
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE){
+			conflict.set(0, depth);
+			return;
+		}
+		if(this.propagationMode == PropagationMode.FORWARD_CHECKING){
+			//the wiped out domain was pruned by every category of its index
+			for(int category : this.indexCategories[this.failedIndex]){
+				AddCategoryLevels(conflict, category);
+			}
+		}
+		AddCategoryLevels(conflict, this.failedCategory);
+		conflict.clear(depth);
+	}
+	
+	
+	@Override
+	public boolean ProducesDuplicates(){
+		return false;
+	}
+	
+	@Override
+	public void setSolutionSink(SolutionSink sink){
+		this.sink = (sink == null) ? new CollectingSink(this.results) : sink;
+	}
+	
+	@Override
+	public boolean IsStopped(){
+		return this.stopped;
+	}
+	
+	@Override
+	public void setSearchLimit(SearchBudget.Limit limit){
+		this.limit = limit;
+	}
+	
+	@Override
+	public ArrayList<ArrayList<Character>> getResults(){
+		return this.results;
+	}
+	
+	@Override
+	public SearchStats getStats(){
+		return this.stats;
+	}
 	
 	//broken right now... we can't do this at the end. it has to be done while doing the recursive DFS.
 	public void printTrace(){
@@ -235,6 +886,7 @@ public class LetterBasedCSP {
 	}
 	
 	public boolean[] testResults(){
+		long start = System.nanoTime();
 		boolean[] testResults = new boolean[this.results.size()];
 		int solnCount = 0;
 		boolean bSolnValid;
@@ -254,6 +906,7 @@ public class LetterBasedCSP {
 			testResults[solnCount] = bSolnValid;
 			solnCount++;
 		}
+		this.stats.AddPhaseTime(SearchStats.Phase.VALIDATE, System.nanoTime() - start);
 		return testResults;
 	}
 	
@@ -0,0 +1,116 @@
+/**
+ * LetterDomains: the letters still permitted at every index of a puzzle
+ * 	Each domain is a 26 bit mask (bit 0 = 'A' ... bit 25 = 'Z'). Restrictions
+ * 	are recorded on an undo trail, so that pruning done below a search node
+ * 	can be undone on backtrack with Mark/UndoTo, as with Assignment.
+ *
+ * @author dcyoung3
+ */
+import java.util.Arrays;
+
+public class LetterDomains {
+
+	//mask with every letter of the alphabet permitted
+	public static final int ALL_LETTERS = (1 << CategoryIndex.ALPHABET_SIZE) - 1;
+
+	//Holds the letter mask of every index
+	private int[] masks;
+	//undo trail: the index and previous mask of every restriction, in order
+	private int[] trailIndices;
+	private int[] trailMasks;
+	private int trailSize;
+
+	/**
+	 * Constructor, every index starts with the full alphabet
+	 * @param size number of indices in the puzzle
+	 */
+	public LetterDomains(int size){
+		this.masks = new int[size];
+		Arrays.fill(this.masks, ALL_LETTERS);
+		this.trailIndices = new int[Math.max(size, 1) * 4];
+		this.trailMasks = new int[this.trailIndices.length];
+		this.trailSize = 0;
+	}
+
+	/**
+	 * Constructor, starts from the given domains (eg: reduced by preprocessing)
+	 * @param masks
+	 */
+	public LetterDomains(int[] masks){
+		this(masks.length);
+		System.arraycopy(masks, 0, this.masks, 0, masks.length);
+	}
+
+	/**
+	 * Removes every letter not in the allowed mask from the domain of the index
+	 * @param index
+	 * @param allowed
+	 * @return false if the domain of the index became empty
+	 */
+	public boolean Restrict(int index, int allowed){
+		int old = this.masks[index];
+		int restricted = old & allowed;
+		if(restricted != old){
+			if(this.trailSize == this.trailIndices.length){
+				this.trailIndices = Arrays.copyOf(this.trailIndices, this.trailSize * 2);
+				this.trailMasks = Arrays.copyOf(this.trailMasks, this.trailSize * 2);
+			}
+			this.trailIndices[this.trailSize] = index;
+			this.trailMasks[this.trailSize] = old;
+			this.trailSize++;
+			this.masks[index] = restricted;
+		}
+		return restricted != 0;
+	}
+
+	/**
+	 * @return a mark which can be passed to UndoTo to restore the current domains
+	 */
+	public int Mark(){
+		return this.trailSize;
+	}
+
+	/**
+	 * Undoes every restriction made since the mark was taken
+	 * @param mark
+	 */
+	public void UndoTo(int mark){
+		while(this.trailSize > mark){
+			this.trailSize--;
+			this.masks[this.trailIndices[this.trailSize]] = this.trailMasks[this.trailSize];
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the letter mask of the index
+	 */
+	public int get(int index){
+		return this.masks[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the number of letters still permitted at the index
+	 */
+	public int Size(int index){
+		return Integer.bitCount(this.masks[index]);
+	}
+
+	/**
+	 * @param c an uppercase letter
+	 * @return the mask holding only that letter
+	 */
+	public static int LetterBit(char c){
+		return 1 << (c - 'A');
+	}
+
+	/**
+	 * @param letter 0 based letter (ie: 'A' = 0)
+	 * @return the uppercase letter
+	 */
+	public static char LetterChar(int letter){
+		return (char) ('A' + letter);
+	}
+
+}
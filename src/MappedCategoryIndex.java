@@ -0,0 +1,67 @@
+/**
+ * MappedCategoryIndex: a CategoryIndex reading its bitsets in place from a 
+ * 	compiled dictionary mapped into memory (see CompiledDictionary), so loading
+ * 	the index copies nothing and the pages are shared with every other process
+ * 	mapping the same file. The indices over the words of each length (see
+ * 	CategoryIndex.getLengthIndex) are mapped from the file too.
+ *
+ * @author dcyoung3
+ */
+import java.nio.LongBuffer;
+import java.util.Collections;
+import java.util.List;
+
+public class MappedCategoryIndex extends CategoryIndex {
+
+	//bitsets of word ids, flattened as [position][letter][block]
+	private LongBuffer letterMasks;
+	//bitsets of word ids, flattened as [length][block]
+	private LongBuffer lengthMasks;
+	//bitset of the ids of words which already appear earlier in the list
+	private LongBuffer repeated;
+	//Holds the mapped index over the words of each length, null where it is this
+	//index; null for an index which is itself over the words of one length
+	private MappedCategoryIndex[] lengthIndices;
+
+	/**
+	 * Constructor
+	 * @param words
+	 * @param maxLength length of the longest word
+	 * @param letterMasks
+	 * @param lengthMasks
+	 * @param repeated
+	 * @param lengthIndices index over the words of every length up to maxLength,
+	 * null where it is this index; null if every word has length maxLength
+	 */
+	public MappedCategoryIndex(List<String> words, int maxLength, LongBuffer letterMasks, LongBuffer lengthMasks, 
+			LongBuffer repeated, MappedCategoryIndex[] lengthIndices){
+		super(words, maxLength);
+		this.letterMasks = letterMasks;
+		this.lengthMasks = lengthMasks;
+		this.repeated = repeated;
+		this.lengthIndices = lengthIndices;
+	}
+
+	@Override
+	protected long LetterMask(int offset){
+		return this.letterMasks.get(offset);
+	}
+
+	@Override
+	protected long LengthMask(int offset){
+		return this.lengthMasks.get(offset);
+	}
+
+	@Override
+	protected long RepeatedMask(int block){
+		return this.repeated.get(block);
+	}
+
+	@Override
+	protected CategoryIndex BuildLengthIndex(int length){
+		if(this.lengthIndices == null)
+			return (length == this.maxLength) ? this : new CategoryIndex(Collections.<String>emptyList());
+		return (this.lengthIndices[length] == null) ? this : this.lengthIndices[length];
+	}
+
+}
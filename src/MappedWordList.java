@@ -0,0 +1,92 @@
+/**
+ * MappedWordList: the words of a category of a compiled dictionary (see 
+ * 	CompiledDictionary), read from the mapped string table by id. A word is 
+ * 	decoded the first time it is read and kept for later reads; the decoded 
+ * 	words are shared by every list over the same string table.
+ *
+ * @author dcyoung3
+ */
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+public class MappedWordList extends AbstractList<String> implements RandomAccess {
+
+	/**
+	 * StringTable: the strings of a compiled dictionary, stored once each
+	 */
+	public static class StringTable {
+
+		//Holds the offset of every string in bytes, plus the end of the last string
+		private IntBuffer offsets;
+		//Holds the UTF-8 bytes of all strings
+		private ByteBuffer bytes;
+		//Holds the strings decoded so far, by id
+		private String[] decoded;
+
+		/**
+		 * Constructor
+		 * @param offsets count + 1 offsets into the bytes
+		 * @param bytes
+		 */
+		public StringTable(IntBuffer offsets, ByteBuffer bytes){
+			this.offsets = offsets;
+			this.bytes = bytes;
+			this.decoded = new String[offsets.limit() - 1];
+		}
+
+		/**
+		 * @param id
+		 * @return the string with the given id
+		 */
+		public String get(int id){
+			String s = this.decoded[id];
+			if(s == null){
+				int start = this.offsets.get(id);
+				byte[] utf8 = new byte[this.offsets.get(id + 1) - start];
+				for(int i = 0; i < utf8.length; i++){
+					utf8[i] = this.bytes.get(start + i);
+				}
+				//strings are immutable, a race only decodes the same string twice
+				s = new String(utf8, StandardCharsets.UTF_8);
+				this.decoded[id] = s;
+			}
+			return s;
+		}
+
+		/**
+		 * @return the number of strings
+		 */
+		public int size(){
+			return this.decoded.length;
+		}
+	}
+
+	//Holds the strings the ids refer to
+	private StringTable table;
+	//Holds the string id of every word of the category
+	private IntBuffer ids;
+
+	/**
+	 * Constructor
+	 * @param table
+	 * @param ids string id of every word, in order
+	 */
+	public MappedWordList(StringTable table, IntBuffer ids){
+		this.table = table;
+		this.ids = ids;
+	}
+
+	@Override
+	public String get(int index){
+		return this.table.get(this.ids.get(index));
+	}
+
+	@Override
+	public int size(){
+		return this.ids.limit();
+	}
+
+}
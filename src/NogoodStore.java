@@ -0,0 +1,185 @@
+/**
+ * NogoodStore: a bounded store of nogoods, partial assignments proven to have
+ * 	no solution (see LetterBasedCSP.setBackjumping)
+ *
+ * 	A nogood is a set of literals, a literal being an index holding a letter
+ * 	(index * 26 + letter). Every nogood is watched by one of its literals which
+ * 	the assignment does not hold, so assigning a letter only looks at the
+ * 	nogoods watched by that literal: each either moves to another literal not
+ * 	held, or is matched entirely. Undoing assignments never makes a watched
+ * 	literal held, so the watches need no undoing.
+ *
+ * 	At most capacity nogoods are kept, the least recently learned or matched
+ * 	being evicted first. An evicted nogood is only marked as such, and dropped
+ * 	from the watch lists when they are next scanned.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NogoodStore {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * Nogood: the sorted literals of a nogood, compared by value
+	 */
+	private static class Nogood {
+		final int[] literals;
+		boolean evicted;
+
+		Nogood(int[] literals){
+			this.literals = literals;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			return (o instanceof Nogood) && Arrays.equals(this.literals, ((Nogood) o).literals);
+		}
+
+		@Override
+		public int hashCode(){
+			return Arrays.hashCode(this.literals);
+		}
+	}
+
+	private final int capacity;
+	//Holds the nogoods kept, least recently used first
+	private LinkedHashMap<Nogood, Nogood> nogoods;
+	//Holds the nogoods watched by every literal, evicted ones included until the next scan
+	private ArrayList<ArrayList<Nogood>> watches;
+	private long evictions;
+
+	/**
+	 * Constructor
+	 * @param size size of the puzzle
+	 * @param capacity the largest number of nogoods kept
+	 */
+	public NogoodStore(int size, int capacity){
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity of a nogood store must be positive: " + capacity);
+		this.capacity = capacity;
+		this.nogoods = new LinkedHashMap<Nogood, Nogood>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Nogood, Nogood> eldest){
+				if(size() <= NogoodStore.this.capacity)
+					return false;
+				eldest.getKey().evicted = true;
+				NogoodStore.this.evictions++;
+				return true;
+			}
+		};
+		this.watches = new ArrayList<ArrayList<Nogood>>(size * CategoryIndex.ALPHABET_SIZE);
+		for(int i = 0; i < size * CategoryIndex.ALPHABET_SIZE; i++){
+			this.watches.add(null);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @param letter uppercase letter
+	 * @return the literal of the index holding the letter
+	 */
+	public static int Literal(int index, char letter){
+		return index * CategoryIndex.ALPHABET_SIZE + (letter - 'A');
+	}
+
+	/**
+	 * Stores a nogood, unless it is stored already
+	 * @param literals not empty, not modified
+	 * @param watched the literal of the nogood to watch, which must not be held by
+	 * the assignment when the next letter is assigned (eg: the deepest one, about
+	 * to be undone by the backjump)
+	 */
+	public void Add(int[] literals, int watched){
+		int[] sorted = literals.clone();
+		Arrays.sort(sorted);
+		Nogood nogood = new Nogood(sorted);
+		if(this.nogoods.get(nogood) != null)
+			return;
+		this.nogoods.put(nogood, nogood);
+		Watch(watched, nogood);
+	}
+
+	private void Watch(int literal, Nogood nogood){
+		ArrayList<Nogood> watch = this.watches.get(literal);
+		if(watch == null){
+			watch = new ArrayList<Nogood>();
+			this.watches.set(literal, watch);
+		}
+		watch.add(nogood);
+	}
+
+	/**
+	 * Looks for a stored nogood holding the letter of the index which the
+	 * assignment matches entirely
+	 * @param assignment
+	 * @param index an assigned index
+	 * @return the literals of the nogood, null if there is none
+	 */
+	public int[] Find(Assignment assignment, int index){
+		ArrayList<Nogood> watch = this.watches.get(Literal(index, assignment.get(index)));
+		if(watch == null)
+			return null;
+		for(int k = 0; k < watch.size(); ){
+			Nogood nogood = watch.get(k);
+			int other = nogood.evicted ? -1 : NotHeld(nogood.literals, assignment);
+			if(!nogood.evicted && other < 0){
+				//matching makes it the most recently used
+				this.nogoods.get(nogood);
+				return nogood.literals;
+			}
+			//drop it from this watch list, moving the last one in its place
+			watch.set(k, watch.get(watch.size() - 1));
+			watch.remove(watch.size() - 1);
+			if(!nogood.evicted)
+				Watch(other, nogood);
+		}
+		return null;
+	}
+
+	/**
+	 * @return a literal which the assignment does not hold, -1 if it holds them all
+	 */
+	private static int NotHeld(int[] literals, Assignment assignment){
+		for(int literal : literals){
+			char letter = LetterDomains.LetterChar(literal % CategoryIndex.ALPHABET_SIZE);
+			if(assignment.get(literal / CategoryIndex.ALPHABET_SIZE) != letter)
+				return literal;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes every nogood
+	 */
+	public void Clear(){
+		for(Nogood nogood : this.nogoods.keySet()){
+			nogood.evicted = true;
+		}
+		this.nogoods.clear();
+		for(int i = 0; i < this.watches.size(); i++){
+			this.watches.set(i, null);
+		}
+	}
+
+	/**
+	 * @return the number of nogoods stored
+	 */
+	public int size(){
+		return this.nogoods.size();
+	}
+
+	/**
+	 * @return the number of nogoods evicted to respect the capacity
+	 */
+	public long getEvictions(){
+		return this.evictions;
+	}
+
+}
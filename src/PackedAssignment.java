@@ -0,0 +1,88 @@
+/**
+ * PackedAssignment: a compact, immutable key for a (complete) assignment
+ * 	Packs every letter into 5 bits (0 = unassigned, 1 = 'A' ... 26 = 'Z'), 12 letters
+ * 	per long, so assignments can be stored in hash based sets and maps at a fraction
+ * 	of the cost of an ArrayList<Character>, and compared in O(n / 12).
+ *
+ * @author dcyoung3
+ */
+import java.util.Arrays;
+
+public final class PackedAssignment {
+
+	//number of bits used by one letter
+	private static final int BITS = 5;
+	//number of letters packed into one long
+	private static final int PER_LONG = 64 / BITS;
+
+	//Holds the packed letters
+	private final long[] packed;
+	//number of letters in the assignment
+	private final int size;
+	//Holds the precomputed hash code
+	private final int hash;
+
+	/**
+	 * Constructor, packs the current letters of the assignment
+	 * @param assignment
+	 */
+	public PackedAssignment(Assignment assignment){
+		this.size = assignment.size();
+		this.packed = new long[(this.size + PER_LONG - 1) / PER_LONG];
+		for(int i = 0; i < this.size; i++){
+			this.packed[i / PER_LONG] |= (long) Encode(assignment.get(i)) << ((i % PER_LONG) * BITS);
+		}
+		this.hash = 31 * Arrays.hashCode(this.packed) + this.size;
+	}
+
+	/**
+	 * @param c an uppercase letter or Assignment.UNASSIGNED
+	 * @return the 5 bit code of the letter
+	 */
+	private static int Encode(char c){
+		if(c == Assignment.UNASSIGNED)
+			return 0;
+		if(c < 'A' || c > 'Z')
+			throw new IllegalArgumentException("Cannot pack letter '" + c + "'");
+		return c - 'A' + 1;
+	}
+
+	/**
+	 * @param index
+	 * @return the letter at the index, or Assignment.UNASSIGNED
+	 */
+	public char get(int index){
+		int code = (int) (this.packed[index / PER_LONG] >>> ((index % PER_LONG) * BITS)) & ((1 << BITS) - 1);
+		return (code == 0) ? Assignment.UNASSIGNED : (char) ('A' + code - 1);
+	}
+
+	public int size(){
+		return this.size;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(this == o)
+			return true;
+		if(!(o instanceof PackedAssignment))
+			return false;
+		PackedAssignment other = (PackedAssignment) o;
+		return this.size == other.size && this.hash == other.hash && Arrays.equals(this.packed, other.packed);
+	}
+
+	@Override
+	public int hashCode(){
+		return this.hash;
+	}
+
+	@Override
+	public String toString(){
+		String s = "";
+		for(int i = 0; i < this.size; i++){
+			char c = get(i);
+			s += (c == Assignment.UNASSIGNED) ? '.' : c;
+		}
+		return s;
+	}
+
+}
@@ -0,0 +1,212 @@
+/**
+ * ParallelSearch: runs the backtracking search of a solver on a ForkJoinPool
+ * 	The top of the search tree is expanded as tasks: a task at a depth below
+ * 	splitDepth assigns each value of the next variable and forks one child task
+ * 	per consistent value. A task at splitDepth runs the solver's own sequential
+ * 	search below its node. Idle workers steal queued tasks, which balances 
+ * 	skewed subtrees.
+ * 
+ * 	Every task works on its own solver (see BacktrackingCSP.Fork) and assignment,
+ * 	rebuilt by replaying the decisions leading to its node, so the puzzle and 
+ * 	word database are only ever read. The per task results are merged in the 
+ * 	order of the tree, which gives the same solutions in the same order as the
+ * 	sequential search with FIRST_UNASSIGNED, DEGREE or MRV ordering. Under
+ * 	DOM_WDEG a task starts from the weights its solver had when it was forked,
+ * 	without the dead ends met by the subtrees searched before it, so it may
+ * 	order its subtree differently: the solutions are the same, their order may
+ * 	not be.
+ * 
+ * 	Solve(initial, sink) streams the solutions to a sink instead, as the workers
+ * 	find them (in no particular order). The sink is called by one worker at a 
+ * 	time, and once it asks to stop no further tasks are started.
+ * 
+ * 	The stats of every task's solver are merged into the prototype's stats
+ * 	(see BacktrackingCSP.getStats) as the tasks finish.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelSearch {
+
+	//Holds the configured solver, which is forked for every task but never searched itself
+	private BacktrackingCSP prototype;
+	//depth of the tree down to which nodes are split into tasks
+	private int splitDepth;
+	//Holds the pool running the tasks
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructor, runs on the common ForkJoinPool
+	 * @param prototype configured solver to fork
+	 * @param splitDepth
+	 */
+	public ParallelSearch(BacktrackingCSP prototype, int splitDepth){
+		this(prototype, splitDepth, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor
+	 * @param prototype configured solver to fork
+	 * @param splitDepth depth of the tree down to which nodes are split into tasks
+	 * @param pool
+	 */
+	public ParallelSearch(BacktrackingCSP prototype, int splitDepth, ForkJoinPool pool){
+		this.prototype = prototype;
+		this.splitDepth = splitDepth;
+		this.pool = pool;
+	}
+
+	/**
+	 * Finds every solution extending the initial assignment
+	 * @param initial assignment to start from, it is not modified
+	 * @return the solutions, in the order of the sequential search
+	 */
+	public ArrayList<ArrayList<Character>> Solve(Assignment initial){
+		long start = System.nanoTime();
+		ArrayList<ArrayList<Character>> merged = this.pool.invoke(new SearchTask(initial, new int[0], new int[0], null));
+		this.prototype.getStats().AddPhaseTime(SearchStats.Phase.SEARCH, System.nanoTime() - start);
+		if(!this.prototype.ProducesDuplicates())
+			return merged;
+		//the same complete assignment can be found by more than one task, keep the first one
+		ArrayList<ArrayList<Character>> results = new ArrayList<ArrayList<Character>>();
+		SolutionKeySet seen = new SolutionKeySet();
+		for(ArrayList<Character> soln : merged){
+			if(seen.Add(new Assignment(soln)))
+				results.add(soln);
+		}
+		return results;
+	}
+
+	/**
+	 * Passes every solution extending the initial assignment to the sink
+	 * @param initial assignment to start from, it is not modified
+	 * @param sink receives the solutions from the worker threads, one call at a time
+	 */
+	public void Solve(Assignment initial, SolutionSink sink){
+		long start = System.nanoTime();
+		this.pool.invoke(new SearchTask(initial, new int[0], new int[0], 
+				new SharedSink(sink, this.prototype.ProducesDuplicates())));
+		this.prototype.getStats().AddPhaseTime(SearchStats.Phase.SEARCH, System.nanoTime() - start);
+	}
+
+	/**
+	 * SharedSink: forwards the solutions of all workers to one sink
+	 */
+	private static class SharedSink implements SolutionSink {
+
+		//Holds the sink receiving the solutions
+		private SolutionSink target;
+		//Holds the keys of the solutions passed on so far, null if the solver produces no duplicates
+		private SolutionKeySet seen;
+		//true once the target asked to stop
+		private volatile boolean stopped;
+
+		public SharedSink(SolutionSink target, boolean dropDuplicates){
+			this.target = target;
+			this.seen = dropDuplicates ? new SolutionKeySet(true) : null;
+			this.stopped = false;
+		}
+
+		@Override
+		public boolean Accept(Assignment solution){
+			if(this.stopped)
+				return false;
+			if(this.seen != null && !this.seen.Add(solution))
+				return true;
+			synchronized(this){
+				if(!this.stopped && !this.target.Accept(solution))
+					this.stopped = true;
+			}
+			return !this.stopped;
+		}
+
+		public boolean IsStopped(){
+			return this.stopped;
+		}
+	}
+
+	/**
+	 * SearchTask: searches the subtree below the node reached by a list of decisions
+	 */
+	private class SearchTask extends RecursiveTask<ArrayList<ArrayList<Character>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		//Holds the assignment the search started from
+		private Assignment initial;
+		//Holds the variables and values assigned on the way to the node
+		private int[] variables;
+		private int[] values;
+		//Holds the sink shared by all tasks, null to collect the results
+		private SharedSink shared;
+
+		public SearchTask(Assignment initial, int[] variables, int[] values, SharedSink shared){
+			this.initial = initial;
+			this.variables = variables;
+			this.values = values;
+			this.shared = shared;
+		}
+
+		@Override
+		protected ArrayList<ArrayList<Character>> compute(){
+			BacktrackingCSP csp = prototype.Fork();
+			try {
+				return Search(csp);
+			} finally {
+				prototype.getStats().Merge(csp.getStats());
+			}
+		}
+
+		private ArrayList<ArrayList<Character>> Search(BacktrackingCSP csp){
+			if(this.shared != null){
+				if(this.shared.IsStopped())
+					return csp.getResults();
+				csp.setSolutionSink(this.shared);
+			}
+			if(!csp.Start(new Assignment(this.initial)))
+				return csp.getResults();
+			//replay the decisions leading to this node, they were consistent when the task was created
+			for(int d = 0; d < this.variables.length; d++){
+				csp.Assign(this.variables[d], this.values[d]);
+			}
+			if(this.variables.length >= splitDepth || csp.IsComplete()){
+				csp.getStats().setDepthOffset(this.variables.length);
+				csp.SearchFromCurrentState();
+				return csp.getResults();
+			}
+
+			int depth = this.variables.length;
+			int variable = csp.SelectVariable();
+			csp.getStats().Node(depth);
+			int[] candidates = new int[csp.getMaxValueCount()];
+			int count = csp.OrderValues(variable, candidates);
+			ArrayList<SearchTask> children = new ArrayList<SearchTask>();
+			for(int v = 0; v < count; v++){
+				long mark = csp.Mark();
+				boolean consistent = csp.Assign(variable, candidates[v]);
+				csp.getStats().Check(depth, consistent);
+				if(consistent){
+					int[] childVariables = Arrays.copyOf(this.variables, this.variables.length + 1);
+					int[] childValues = Arrays.copyOf(this.values, this.values.length + 1);
+					childVariables[this.variables.length] = variable;
+					childValues[this.values.length] = candidates[v];
+					children.add(new SearchTask(this.initial, childVariables, childValues, this.shared));
+				}
+				csp.UndoTo(mark);
+			}
+			csp.getStats().Backtrack();
+			invokeAll(children);
+
+			ArrayList<ArrayList<Character>> results = new ArrayList<ArrayList<Character>>();
+			for(SearchTask child : children){
+				results.addAll(child.join());
+			}
+			return results;
+		}
+	}
+
+}
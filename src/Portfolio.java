@@ -0,0 +1,438 @@
+/**
+ * Portfolio: solves a puzzle with the best of several solver strategies
+ * (BatchSolver.SolverFactory), chosen in one of two modes
+ * 	race		every strategy searches the puzzle on its own thread, the
+ * 				first to search the whole tree wins and the others are
+ * 				cancelled (see CancellationToken)
+ * 	predict		a cost model (see Estimate) built from the shape of the
+ * 				puzzle and the sizes of its categories picks LETTER_BASED or
+ * 				WORD_BASED, which alone searches the puzzle
+ * 	PREDICTED is a SolverFactory creating the predicted solver of every
+ * 	puzzle, so the predict mode also runs in BatchSolver (-solver auto).
+ *
+ * 	Usage: Portfolio [-mode race|predict] [-timeout ms] <dictionary> <puzzle> <output file>
+ *
+ * @author dcyoung3
+ */
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class Portfolio {
+
+	//LetterBasedCSP with forward checking, MRV ordering and conflict-directed backjumping
+	public static final BatchSolver.SolverFactory LETTER_BASED_CBJ = new BatchSolver.SolverFactory(){
+		public String getName(){
+			return "LB-CBJ";
+		}
+
+		public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+			LetterBasedCSP csp = new LetterBasedCSP(p, db);
+			csp.setPropagationMode(PropagationMode.FORWARD_CHECKING);
+			csp.setVariableOrdering(VariableOrdering.MRV);
+			csp.setBackjumping(true);
+			return csp;
+		}
+	};
+
+	//WordBasedCSP with Compact-Table propagation and MRV ordering
+	public static final BatchSolver.SolverFactory WORD_BASED_CT = new BatchSolver.SolverFactory(){
+		public String getName(){
+			return "WB-CT";
+		}
+
+		public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+			WordBasedCSP csp = new WordBasedCSP(p, db);
+			csp.setPropagationMode(PropagationMode.COMPACT_TABLE);
+			csp.setVariableOrdering(VariableOrdering.MRV);
+			return csp;
+		}
+	};
+
+	//Creates the solver picked by the cost model for each puzzle
+	public static final BatchSolver.SolverFactory PREDICTED = new BatchSolver.SolverFactory(){
+		public String getName(){
+			return "PF";
+		}
+
+		public BacktrackingCSP Create(Puzzle p, WordDatabase db){
+			return Predict(p, db).Create(p, db);
+		}
+	};
+
+	/**
+	 * @return the strategies raced by default: LETTER_BASED, WORD_BASED, LETTER_BASED_CBJ and WORD_BASED_CT
+	 */
+	public static List<BatchSolver.SolverFactory> DefaultStrategies(){
+		return Arrays.asList(BatchSolver.LETTER_BASED, BatchSolver.WORD_BASED, LETTER_BASED_CBJ, WORD_BASED_CT);
+	}
+
+	/**
+	 * Result: the strategy which answered and how its search returned
+	 */
+	public static class Result {
+
+		private BatchSolver.SolverFactory strategy;
+		private SearchOutcome outcome;
+
+		public Result(BatchSolver.SolverFactory strategy, SearchOutcome outcome){
+			this.strategy = strategy;
+			this.outcome = outcome;
+		}
+
+		public BatchSolver.SolverFactory getStrategy(){
+			return this.strategy;
+		}
+
+		public SearchOutcome getOutcome(){
+			return this.outcome;
+		}
+
+		/**
+		 * @return the solutions found, all of them if the outcome is complete
+		 */
+		public ArrayList<ArrayList<Character>> getSolutions(){
+			return this.outcome.getSolutions();
+		}
+
+		@Override
+		public String toString(){
+			return this.strategy.getName() + " " + this.outcome;
+		}
+	}
+
+	/**
+	 * Estimate: the expected work of each formulation on a puzzle
+	 * 	Both searches are modelled as assigning the puzzle in a fixed greedy
+	 * 	order (the most constrained variable next), every letter or word being
+	 * 	drawn independently: a category of n words with letters fixed at
+	 * 	positions of d1, d2, ... possible letters is expected to keep
+	 * 	n / (d1 * d2 * ...) matching words, which is also the chance that it keeps
+	 * 	one when below 1. The expected nodes of each level follow, and the work is
+	 * 	the number of support queries made:
+	 * 		letter based	every letter tried queries the categories of its index
+	 * 		word based		every word tried queries every category
+	 * 	The letters possible at an index are those its categories have at its
+	 * 	positions. Amounts are held as base 2 logarithms, so that large puzzles
+	 * 	do not overflow.
+	 *
+	 * 	The model ignores propagation, which prunes the letter based search more,
+	 * 	so a word based query is weighed as 2^WORD_QUERY_COST letter based ones:
+	 * 	on the generated puzzles this picks the faster solver every time (eg: WB
+	 * 	searching in 0.1s what takes LB 8s, LB in 0.03s what takes WB 0.07s).
+	 */
+	public static class Estimate {
+
+		//log2 of the weight of a word based support query, in letter based queries
+		public static final double WORD_QUERY_COST = 1.5;
+
+		private double letterBasedWork;
+		private double wordBasedWork;
+
+		/**
+		 * Constructor
+		 * @param p
+		 * @param db indexed database
+		 */
+		public Estimate(Puzzle p, WordDatabase db){
+			String[] categories = p.getCategories();
+			int[][] categoryIndices = p.getCategoryIndexArrays();
+			int[][] indexCategories = p.getIndexCategoryArrays();
+			//log2 of the number of words of each category
+			double[] words = new double[categories.length];
+			int[] letters = new int[p.getPuzzleSize()];
+			Arrays.fill(letters, LetterDomains.ALL_LETTERS);
+			for(int c = 0; c < categories.length; c++){
+				CategoryIndex index = db.getCategoryIndex(categories[c], categoryIndices[c].length);
+				int size = (index == null) ? 0 : index.CountMatchingWords(new char[categoryIndices[c].length]);
+				words[c] = (size == 0) ? Double.NEGATIVE_INFINITY : Log2(size);
+				for(int position = 0; position < categoryIndices[c].length; position++){
+					letters[categoryIndices[c][position]] &= (size == 0) ? 0
+							: index.SupportedLetters(new char[categoryIndices[c].length], position);
+				}
+			}
+			//log2 of the number of letters possible at each index
+			double[] domains = new double[letters.length];
+			for(int i = 0; i < letters.length; i++){
+				domains[i] = Log2(Integer.bitCount(letters[i]));
+			}
+			this.letterBasedWork = LetterBased(categoryIndices, indexCategories, words, domains);
+			this.wordBasedWork = WordBased(categoryIndices, indexCategories, words, domains);
+		}
+
+		/**
+		 * Assigns the indices connected to the most assigned indices first, the
+		 * smallest domain breaking ties
+		 */
+		private static double LetterBased(int[][] categoryIndices, int[][] indexCategories, double[] words, double[] domains){
+			//log2 of the product of the domains of the fixed positions of each category
+			double[] fixed = new double[categoryIndices.length];
+			boolean[] assigned = new boolean[domains.length];
+			int[] links = new int[domains.length];
+			double nodes = 0;
+			double work = Double.NEGATIVE_INFINITY;
+			for(int level = 0; level < domains.length; level++){
+				int next = -1;
+				for(int i = 0; i < domains.length; i++){
+					if(!assigned[i] && (next < 0 || links[i] > links[next]
+							|| (links[i] == links[next] && domains[i] < domains[next])))
+						next = i;
+				}
+				assigned[next] = true;
+				work = LogAdd(work, nodes + domains[next] + Log2(Math.max(indexCategories[next].length, 1)));
+				nodes += domains[next];
+				for(int c : indexCategories[next]){
+					nodes += Survival(words[c], fixed[c] + domains[next]) - Survival(words[c], fixed[c]);
+					fixed[c] += domains[next];
+					for(int i : categoryIndices[c]){
+						links[i]++;
+					}
+				}
+				if(nodes == Double.NEGATIVE_INFINITY)
+					break;
+			}
+			return work;
+		}
+
+		/**
+		 * Assigns the categories with the most fixed positions first, the fewest
+		 * words breaking ties
+		 */
+		private static double WordBased(int[][] categoryIndices, int[][] indexCategories, double[] words, double[] domains){
+			double[] fixed = new double[categoryIndices.length];
+			int[] fixedCount = new int[categoryIndices.length];
+			boolean[] assigned = new boolean[categoryIndices.length];
+			boolean[] fixedIndex = new boolean[domains.length];
+			double queries = Log2(Math.max(categoryIndices.length, 1)) + WORD_QUERY_COST;
+			double nodes = 0;
+			double work = Double.NEGATIVE_INFINITY;
+			for(int level = 0; level < categoryIndices.length; level++){
+				int next = -1;
+				for(int c = 0; c < categoryIndices.length; c++){
+					if(!assigned[c] && (next < 0 || fixedCount[c] > fixedCount[next]
+							|| (fixedCount[c] == fixedCount[next] && words[c] < words[next])))
+						next = c;
+				}
+				assigned[next] = true;
+				//the words of the category agreeing with the letters fixed already
+				double matching = words[next] - fixed[next];
+				work = LogAdd(work, nodes + Math.max(matching, 0) + queries);
+				nodes += matching - Survival(words[next], fixed[next]);
+				for(int i : categoryIndices[next]){
+					if(fixedIndex[i])
+						continue;
+					fixedIndex[i] = true;
+					for(int c : indexCategories[i]){
+						if(c != next && !assigned[c])
+							nodes += Survival(words[c], fixed[c] + domains[i]) - Survival(words[c], fixed[c]);
+						fixed[c] += domains[i];
+						fixedCount[c]++;
+					}
+				}
+				if(nodes == Double.NEGATIVE_INFINITY)
+					break;
+			}
+			return work;
+		}
+
+		/**
+		 * @param words log2 of the number of words of a category
+		 * @param fixed log2 of the number of partial words its fixed positions can hold
+		 * @return log2 of the chance that the category keeps a matching word
+		 */
+		private static double Survival(double words, double fixed){
+			return Math.min(words - fixed, 0);
+		}
+
+		private static double Log2(double x){
+			return Math.log(x) / Math.log(2);
+		}
+
+		/**
+		 * @return log2(2^a + 2^b)
+		 */
+		private static double LogAdd(double a, double b){
+			double max = Math.max(a, b);
+			if(max == Double.NEGATIVE_INFINITY)
+				return max;
+			return max + Log2(1 + Math.pow(2, Math.min(a, b) - max));
+		}
+
+		/**
+		 * @return log2 of the expected support queries of LetterBasedCSP
+		 */
+		public double getLetterBasedWork(){
+			return this.letterBasedWork;
+		}
+
+		/**
+		 * @return log2 of the expected support queries of WordBasedCSP
+		 */
+		public double getWordBasedWork(){
+			return this.wordBasedWork;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("LB 2^%.1f, WB 2^%.1f support queries", this.letterBasedWork, this.wordBasedWork);
+		}
+	}
+
+	private WordDatabase db;
+	private List<BatchSolver.SolverFactory> strategies;
+	//wall time of a race, 0 for no limit
+	private long timeLimitMillis;
+
+	/**
+	 * Constructor
+	 * @param db the dictionary, frozen if it is not yet
+	 * @param strategies the strategies raced, not empty
+	 */
+	public Portfolio(WordDatabase db, List<BatchSolver.SolverFactory> strategies){
+		if(strategies.isEmpty())
+			throw new IllegalArgumentException("A portfolio needs at least one strategy");
+		this.db = db.Freeze();
+		this.strategies = new ArrayList<BatchSolver.SolverFactory>(strategies);
+		this.timeLimitMillis = 0;
+	}
+
+	/**
+	 * Stops the searches after the given wall time, the result then being the
+	 * partial one with the most solutions
+	 * @param millis 0 for no limit
+	 */
+	public void setTimeLimit(long millis){
+		this.timeLimitMillis = Math.max(millis, 0);
+	}
+
+	/**
+	 * @param p
+	 * @param db indexed database
+	 * @return LETTER_BASED or WORD_BASED, whichever the cost model expects to do less work
+	 */
+	public static BatchSolver.SolverFactory Predict(Puzzle p, WordDatabase db){
+		Estimate estimate = new Estimate(p, db);
+		return (estimate.getWordBasedWork() < estimate.getLetterBasedWork()) ? BatchSolver.WORD_BASED : BatchSolver.LETTER_BASED;
+	}
+
+	/**
+	 * Solves the puzzle with the strategy picked by the cost model
+	 * @param p
+	 * @return the result of the strategy
+	 */
+	public Result SolvePredicted(Puzzle p){
+		BatchSolver.SolverFactory strategy = Predict(p, this.db);
+		return new Result(strategy, Budget(null).Solve(strategy.Create(p, this.db), new Assignment(p.getPuzzleSize())));
+	}
+
+	/**
+	 * Races every strategy on the puzzle, each on its own thread
+	 * @param p
+	 * @return the result of the first strategy to search the whole tree, or if
+	 * none did within the time limit, the partial result with the most solutions
+	 * @throws InterruptedException
+	 */
+	public Result Race(final Puzzle p) throws InterruptedException{
+		final CancellationToken token = new CancellationToken();
+		ExecutorService pool = Executors.newFixedThreadPool(this.strategies.size());
+		CompletionService<Result> finished = new ExecutorCompletionService<Result>(pool);
+		for(final BatchSolver.SolverFactory strategy : this.strategies){
+			finished.submit(new Callable<Result>(){
+				@Override
+				public Result call(){
+					BacktrackingCSP csp = strategy.Create(p, Portfolio.this.db);
+					return new Result(strategy, Budget(token).Solve(csp, new Assignment(p.getPuzzleSize())));
+				}
+			});
+		}
+		Result best = null;
+		RuntimeException failure = null;
+		try {
+			for(int k = 0; k < this.strategies.size(); k++){
+				Result result;
+				try {
+					result = finished.take().get();
+				} catch (ExecutionException e) {
+					//a strategy failing loses the race, unless every strategy fails
+					if(failure == null)
+						failure = (e.getCause() instanceof RuntimeException)
+								? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+					continue;
+				}
+				if(result.getOutcome().IsComplete())
+					return result;
+				if(best == null || result.getSolutions().size() > best.getSolutions().size())
+					best = result;
+			}
+		} finally {
+			token.Cancel();
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		if(best == null)
+			throw failure;
+		return best;
+	}
+
+	/**
+	 * @param token cancels the search, null for none
+	 * @return the budget of one search
+	 */
+	private SearchBudget Budget(CancellationToken token){
+		SearchBudget budget = new SearchBudget();
+		budget.setTimeLimit(this.timeLimitMillis);
+		budget.setCancellationToken(token);
+		return budget;
+	}
+
+	public static void main(String[] args){
+		boolean race = true;
+		long timeout = 0;
+		ArrayList<String> paths = new ArrayList<String>();
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("-mode"))
+				race = !args[++a].equalsIgnoreCase("predict");
+			else if(args[a].equals("-timeout"))
+				timeout = Long.parseLong(args[++a]);
+			else
+				paths.add(args[a]);
+		}
+		if(paths.size() != 3){
+			System.out.println("Usage: Portfolio [-mode race|predict] [-timeout ms] <dictionary> <puzzle> <output file>");
+			return;
+		}
+
+		WordDatabase db = new WordDatabase();
+		WordFileReader fr = new WordFileReader(db);
+		fr.readDatabaseFile(paths.get(0));
+		Puzzle p = fr.readPuzzleFile(paths.get(1));
+		Portfolio portfolio = new Portfolio(db, DefaultStrategies());
+		portfolio.setTimeLimit(timeout);
+		try {
+			Result result;
+			if(race){
+				result = portfolio.Race(p);
+			} else {
+				System.out.println(new Estimate(p, portfolio.db));
+				result = portfolio.SolvePredicted(p);
+			}
+			System.out.println(result);
+			BatchSolver.WriteSolutions(p, result.getSolutions(), new File(paths.get(2)));
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + paths.get(2) + "\"\t could not be written.");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+/**
+ * PropagationMode: how much work a solver does after each assignment
+ * 	CHECK_ONLY			only checks the categories of the assigned variable
+ * 						against the words of the database (CheckIfConsistent)
+ * 	FORWARD_CHECKING	also prunes the letter domains of the unassigned indices
+ * 						sharing a category with the assigned variable, and fails
+ * 						as soon as one of them becomes empty
+ * 	COMPACT_TABLE		enforces arc consistency on every category with the
+ * 						Compact-Table algorithm (see CompactTablePropagator);
+ * 						the only mode besides CHECK_ONLY of WordBasedCSP, where
+ * 						a category only offers the words left in its table
+ *
+ * @author dcyoung3
+ */
+public enum PropagationMode {
+	CHECK_ONLY,
+	FORWARD_CHECKING,
+	COMPACT_TABLE
+}
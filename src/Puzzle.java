@@ -83,6 +83,72 @@ public class Puzzle {
 		return this.puzzleSize;
 	}
 	
+	/**
+	 * The solvers refer to categories by ordinal (position in this array)
+	 * rather than by name, so their inner loops do not need map lookups.
+	 * @return the categories of the puzzle, in the iteration order of the category map
+	 */
+	public String[] getCategories(){
+		return this.categoryIndexMap.keySet().toArray(new String[0]);
+	}
+	
+	/**
+	 * @return for every category ordinal (see getCategories), the indices belonging to it
+	 */
+	public int[][] getCategoryIndexArrays(){
+		String[] categories = this.getCategories();
+		int[][] categoryIndices = new int[categories.length][];
+		for(int c = 0; c < categories.length; c++){
+			ArrayList<Integer> indices = this.categoryIndexMap.get(categories[c]);
+			categoryIndices[c] = new int[indices.size()];
+			for(int i = 0; i < indices.size(); i++){
+				categoryIndices[c][i] = indices.get(i);
+			}
+		}
+		return categoryIndices;
+	}
+	
+	/**
+	 * @return for every index, the ordinals (see getCategories) of the categories connected to it
+	 */
+	public int[][] getIndexCategoryArrays(){
+		String[] categories = this.getCategories();
+		int[][] indexCategories = new int[this.puzzleSize][];
+		for(int i = 0; i < this.puzzleSize; i++){
+			ArrayList<String> connected = this.indexCategoryMap.get(i);
+			int count = (connected == null) ? 0 : connected.size();
+			indexCategories[i] = new int[count];
+			for(int k = 0; k < count; k++){
+				indexCategories[i][k] = Arrays.asList(categories).indexOf(connected.get(k));
+			}
+		}
+		return indexCategories;
+	}
+	
+	/**
+	 * @return for every category ordinal (see getCategories), the ordinals of the
+	 * 			other categories sharing at least one index with it
+	 */
+	public int[][] getCategoryNeighbourArrays(){
+		int[][] categoryIndices = this.getCategoryIndexArrays();
+		int[][] indexCategories = this.getIndexCategoryArrays();
+		int[][] neighbours = new int[categoryIndices.length][];
+		for(int c = 0; c < categoryIndices.length; c++){
+			ArrayList<Integer> connected = new ArrayList<Integer>();
+			for(int index : categoryIndices[c]){
+				for(int other : indexCategories[index]){
+					if(other != c && !connected.contains(other))
+						connected.add(other);
+				}
+			}
+			neighbours[c] = new int[connected.size()];
+			for(int k = 0; k < connected.size(); k++){
+				neighbours[c][k] = connected.get(k);
+			}
+		}
+		return neighbours;
+	}
+	
 	public static void main(String[] args) {
 		// TODO Auto-generated method stub
 
@@ -0,0 +1,339 @@
+/**
+ * PuzzleGenerator: generates word databases and puzzles for scale testing
+ * 	Writes files in the formats read by WordFileReader, so the generated
+ * 	problems run through the same path as the ones under words/. A generator
+ * 	built with the same seed and settings always generates the same files.
+ *
+ * 	Dictionary: dictionaryCategories categories ("category0", "category1", ...)
+ * 		of wordsPerCategory distinct random words of wordLength letters each.
+ * 	Puzzle: categories distinct categories of the dictionary over cells spaces.
+ * 		The categories are placed one after the other; each one after the first
+ * 		shares at least one space with the categories placed before it, so the
+ * 		constraint graph is connected. The shape selects where the shared spaces
+ * 		are taken from:
+ * 			CHAIN		the previous category, giving a path of categories
+ * 			TREE		a random earlier category, giving a tree of categories
+ * 			DENSE		any space used so far, giving a graph with many cycles
+ * 		The overlap density (the average number of categories per space) is
+ * 		categories * wordLength / cells; it can be set directly through
+ * 		setOverlapDensity, which then chooses the number of cells.
+ * 	If satisfiable is set, a random hidden solution is drawn and the words it
+ * 	spells in every category of the puzzle are added to the dictionary.
+ *
+ * 	Usage: PuzzleGenerator [options] <output directory>
+ * 		-seed <n>			seed of the random generator (default 1)
+ * 		-cells <n>			spaces in each puzzle (default 9)
+ * 		-categories <n>		categories in each puzzle (default 5)
+ * 		-overlap <d>		overlap density, overrides -cells
+ * 		-shape <s>			chain, tree or dense (default tree)
+ * 		-length <n>			letters per word (default 3)
+ * 		-dictionary <n>		categories in the dictionary (default 20)
+ * 		-words <n>			words per category (default 1000)
+ * 		-puzzles <n>		number of puzzles (default 1)
+ * 		-satisfiable		guarantees every puzzle has a solution
+ * 	writes <output directory>/wordlist.txt and puzzle1.txt, puzzle2.txt, ...
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.util.*;
+
+public class PuzzleGenerator {
+
+	/**
+	 * Shape: the shape of the constraint graph between the categories of a puzzle
+	 */
+	public enum Shape {
+		CHAIN,
+		TREE,
+		DENSE
+	}
+
+	//Holds the seeded source of every random choice
+	private Random random;
+	private int cells;
+	private int categories;
+	//average number of categories per space, 0 to use cells as given
+	private double overlapDensity;
+	private Shape shape;
+	private int wordLength;
+	private int dictionaryCategories;
+	private int wordsPerCategory;
+	private boolean satisfiable;
+
+	/**
+	 * Constructor, with the default settings (see the usage above)
+	 * @param seed
+	 */
+	public PuzzleGenerator(long seed){
+		this.random = new Random(seed);
+		this.cells = 9;
+		this.categories = 5;
+		this.overlapDensity = 0;
+		this.shape = Shape.TREE;
+		this.wordLength = 3;
+		this.dictionaryCategories = 20;
+		this.wordsPerCategory = 1000;
+		this.satisfiable = false;
+	}
+
+	public void setCells(int cells){
+		this.cells = cells;
+		this.overlapDensity = 0;
+	}
+
+	public void setCategories(int categories){
+		this.categories = categories;
+	}
+
+	/**
+	 * Chooses the number of cells giving the overlap density
+	 * @param density average number of categories per space (at least 1)
+	 */
+	public void setOverlapDensity(double density){
+		this.overlapDensity = density;
+	}
+
+	public void setShape(Shape shape){
+		this.shape = shape;
+	}
+
+	public void setWordLength(int wordLength){
+		this.wordLength = wordLength;
+	}
+
+	public void setDictionaryCategories(int dictionaryCategories){
+		this.dictionaryCategories = dictionaryCategories;
+	}
+
+	public void setWordsPerCategory(int wordsPerCategory){
+		this.wordsPerCategory = wordsPerCategory;
+	}
+
+	public void setSatisfiable(boolean satisfiable){
+		this.satisfiable = satisfiable;
+	}
+
+	/**
+	 * @return a new dictionary of random words (not indexed, see WordDatabase.BuildIndex)
+	 */
+	public WordDatabase GenerateDictionary(){
+		if(this.wordsPerCategory > Math.pow(CategoryIndex.ALPHABET_SIZE, this.wordLength))
+			throw new IllegalArgumentException("There are fewer than " + this.wordsPerCategory
+					+ " words of " + this.wordLength + " letters");
+		WordDatabase db = new WordDatabase();
+		for(int c = 0; c < this.dictionaryCategories; c++){
+			LinkedHashSet<String> words = new LinkedHashSet<String>();
+			while(words.size() < this.wordsPerCategory){
+				words.add(RandomWord());
+			}
+			db.getWordMap().put("category" + c, new ArrayList<String>(words));
+		}
+		return db;
+	}
+
+	/**
+	 * @return a word of wordLength random letters
+	 */
+	private String RandomWord(){
+		char[] word = new char[this.wordLength];
+		for(int i = 0; i < word.length; i++){
+			word[i] = (char) ('A' + this.random.nextInt(CategoryIndex.ALPHABET_SIZE));
+		}
+		return new String(word);
+	}
+
+	/**
+	 * Generates a puzzle over categories of the dictionary. If satisfiable is set,
+	 * the words of the hidden solution are added to the dictionary.
+	 * @param db dictionary holding words of wordLength letters
+	 * @return the puzzle
+	 */
+	public Puzzle GeneratePuzzle(WordDatabase db){
+		int length = this.wordLength;
+		int n = this.categories;
+		int size = (this.overlapDensity > 0) ? (int) Math.round(n * length / this.overlapDensity) : this.cells;
+		//every category after the first brings at most length-1 new spaces
+		size = (this.overlapDensity > 0) ? Math.max(length, Math.min(size, length + (n - 1) * (length - 1))) : size;
+		if(size < length || size > length + (n - 1) * (length - 1))
+			throw new IllegalArgumentException(n + " connected categories of " + length
+					+ " letters cannot cover " + size + " spaces");
+		ArrayList<String> names = new ArrayList<String>(new TreeSet<String>(db.getWordMap().keySet()));
+		if(names.size() < n)
+			throw new IllegalArgumentException("The dictionary holds fewer than " + n + " categories");
+		Collections.shuffle(names, this.random);
+
+		//number of new spaces of every category
+		int[] fresh = new int[n];
+		fresh[0] = length;
+		for(int left = size - length; left > 0; left--){
+			int c;
+			do {
+				c = 1 + this.random.nextInt(n - 1);
+			} while(fresh[c] == length - 1);
+			fresh[c]++;
+		}
+
+		//place the categories, numbering the spaces in order of first use
+		int[][] placed = new int[n][];
+		int used = 0;
+		for(int c = 0; c < n; c++){
+			ArrayList<Integer> pool = new ArrayList<Integer>();
+			if(c > 0 && this.shape == Shape.DENSE){
+				for(int i = 0; i < used; i++){
+					pool.add(i);
+				}
+			} else if(c > 0){
+				int parent = (this.shape == Shape.CHAIN) ? c - 1 : this.random.nextInt(c);
+				for(int i : placed[parent]){
+					pool.add(i);
+				}
+			}
+			Collections.shuffle(pool, this.random);
+			placed[c] = new int[length];
+			for(int k = 0; k < length; k++){
+				placed[c][k] = (k < length - fresh[c]) ? pool.get(k) : used++;
+			}
+		}
+
+		//number the spaces in a random order, so the layout carries no hint
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for(int i = 0; i < size; i++){
+			order.add(i);
+		}
+		Collections.shuffle(order, this.random);
+		char[] solution = new char[size];
+		for(int i = 0; i < size; i++){
+			solution[i] = (char) ('A' + this.random.nextInt(CategoryIndex.ALPHABET_SIZE));
+		}
+
+		Puzzle p = new Puzzle(size);
+		boolean inserted = false;
+		for(int c = 0; c < n; c++){
+			ArrayList<Integer> indices = new ArrayList<Integer>();
+			for(int i : placed[c]){
+				indices.add(order.get(i));
+			}
+			Collections.sort(indices);
+			p.getCategoryIndexMap().put(names.get(c), indices);
+			if(this.satisfiable){
+				StringBuilder word = new StringBuilder();
+				for(int i : indices){
+					word.append(solution[i]);
+				}
+				List<String> words = db.getWordMap().get(names.get(c));
+				if(!words.contains(word.toString())){
+					words.add(this.random.nextInt(words.size() + 1), word.toString());
+					inserted = true;
+				}
+			}
+		}
+		p.GenerateInvertedMap();
+		//an index built before the words were added would miss them
+		if(inserted && db.IsIndexed())
+			db.BuildIndex();
+		return p;
+	}
+
+	/**
+	 * Writes a dictionary in the format read by WordFileReader.readDatabaseFile
+	 * @param db
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void WriteDictionary(WordDatabase db, String filename) throws IOException{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+		for(String category : new TreeSet<String>(db.getWordMap().keySet())){
+			StringBuilder line = new StringBuilder(category + ":\t");
+			List<String> words = db.getWordMap().get(category);
+			for(int w = 0; w < words.size(); w++){
+				if(w > 0)
+					line.append(", ");
+				line.append(words.get(w));
+			}
+			out.println(line);
+		}
+		out.close();
+	}
+
+	/**
+	 * Writes a puzzle in the format read by WordFileReader.readPuzzleFile (1 based indices)
+	 * @param p
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void WritePuzzle(Puzzle p, String filename) throws IOException{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+		out.println(p.getPuzzleSize());
+		for(String category : p.getCategories()){
+			StringBuilder line = new StringBuilder(category + ": ");
+			ArrayList<Integer> indices = p.getCategoryIndexMap().get(category);
+			for(int k = 0; k < indices.size(); k++){
+				if(k > 0)
+					line.append(", ");
+				line.append(indices.get(k) + 1);
+			}
+			out.println(line);
+		}
+		out.close();
+	}
+
+	public static void main(String[] args) {
+		long seed = 1;
+		int puzzles = 1;
+		String directory = null;
+		Map<String, String> options = new HashMap<String, String>();
+		boolean satisfiable = false;
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("-satisfiable"))
+				satisfiable = true;
+			else if(args[a].startsWith("-") && a + 1 < args.length)
+				options.put(args[a], args[++a]);
+			else
+				directory = args[a];
+		}
+		if(directory == null){
+			System.out.println("Usage: PuzzleGenerator [-seed n] [-cells n] [-categories n] [-overlap d] [-shape chain|tree|dense]"
+					+ " [-length n] [-dictionary n] [-words n] [-puzzles n] [-satisfiable] <output directory>");
+			return;
+		}
+		if(options.containsKey("-seed"))
+			seed = Long.parseLong(options.get("-seed"));
+		if(options.containsKey("-puzzles"))
+			puzzles = Integer.parseInt(options.get("-puzzles"));
+
+		PuzzleGenerator generator = new PuzzleGenerator(seed);
+		generator.setSatisfiable(satisfiable);
+		if(options.containsKey("-cells"))
+			generator.setCells(Integer.parseInt(options.get("-cells")));
+		if(options.containsKey("-categories"))
+			generator.setCategories(Integer.parseInt(options.get("-categories")));
+		if(options.containsKey("-overlap"))
+			generator.setOverlapDensity(Double.parseDouble(options.get("-overlap")));
+		if(options.containsKey("-shape"))
+			generator.setShape(Shape.valueOf(options.get("-shape").toUpperCase()));
+		if(options.containsKey("-length"))
+			generator.setWordLength(Integer.parseInt(options.get("-length")));
+		if(options.containsKey("-dictionary"))
+			generator.setDictionaryCategories(Integer.parseInt(options.get("-dictionary")));
+		if(options.containsKey("-words"))
+			generator.setWordsPerCategory(Integer.parseInt(options.get("-words")));
+
+		try {
+			new File(directory).mkdirs();
+			WordDatabase db = generator.GenerateDictionary();
+			ArrayList<Puzzle> generated = new ArrayList<Puzzle>();
+			for(int i = 0; i < puzzles; i++){
+				generated.add(generator.GeneratePuzzle(db));
+			}
+			WriteDictionary(db, new File(directory, "wordlist.txt").getPath());
+			for(int i = 0; i < puzzles; i++){
+				WritePuzzle(generated.get(i), new File(directory, "puzzle" + (i + 1) + ".txt").getPath());
+			}
+		} catch (IOException e) {
+			System.out.println("Directory: \"" + directory + "\"\t could not be written.");
+			e.printStackTrace();
+		}
+	}
+
+}
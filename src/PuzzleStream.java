@@ -0,0 +1,158 @@
+/**
+ * PuzzleStream: reads puzzles one at a time from a puzzle file or a directory
+ * 	A file may hold several puzzles one after the other, each one starting with
+ * 	the line holding its size (as read by WordFileReader.readPuzzleFile):
+ * 		9
+ * 		emotion: 4, 5, 7
+ * 		body: 3, 8, 9
+ * 		7
+ * 		nature: 1, 4, 5
+ * 		...
+ * 	A directory is read file by file, in name order, skipping the files which
+ * 	do not start with a size line (eg: the word list). Only the puzzle being
+ * 	read is held in memory.
+ *
+ * 	Every puzzle is named after its file, with "-k" appended to the name of the
+ * 	k-th puzzle of a file holding more than one.
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class PuzzleStream implements Iterator<PuzzleStream.Entry>, Closeable {
+
+	/**
+	 * Entry: a puzzle and its name
+	 */
+	public static class Entry {
+		public final String name;
+		public final Puzzle puzzle;
+
+		public Entry(String name, Puzzle puzzle){
+			this.name = name;
+			this.puzzle = puzzle;
+		}
+	}
+
+	//Holds the files left to read
+	private ArrayList<File> files;
+	//Holds the file being read, null once every file was read
+	private BufferedReader reader;
+	//name of the file being read, without the extension
+	private String fileName;
+	//number of puzzles read from the file so far
+	private int count;
+	//size line of the next puzzle of the file, null if there is none
+	private String pendingSize;
+	//Holds the next entry, read ahead by hasNext
+	private Entry next;
+
+	/**
+	 * Constructor
+	 * @param path a puzzle file or a directory of puzzle files
+	 * @throws IOException if the path cannot be read
+	 */
+	public PuzzleStream(String path) throws IOException{
+		File root = new File(path);
+		this.files = new ArrayList<File>();
+		if(root.isDirectory()){
+			File[] listed = root.listFiles();
+			if(listed == null)
+				throw new IOException("Directory: \"" + path + "\" could not be listed");
+			Arrays.sort(listed);
+			for(File f : listed){
+				if(f.isFile())
+					this.files.add(f);
+			}
+		} else if(root.isFile()){
+			this.files.add(root);
+		} else {
+			throw new FileNotFoundException("Filename: \"" + path + "\" could not be found");
+		}
+	}
+
+	@Override
+	public boolean hasNext(){
+		if(this.next == null){
+			try {
+				this.next = ReadNext();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Entry next(){
+		if(!hasNext())
+			throw new NoSuchElementException();
+		Entry entry = this.next;
+		this.next = null;
+		return entry;
+	}
+
+	/**
+	 * @return the next puzzle, null once every file was read
+	 * @throws IOException
+	 */
+	private Entry ReadNext() throws IOException{
+		while(this.pendingSize == null){
+			if(this.reader != null)
+				this.reader.close();
+			this.reader = null;
+			if(this.files.isEmpty())
+				return null;
+			File file = this.files.remove(0);
+			this.reader = new BufferedReader(new FileReader(file));
+			this.fileName = file.getName().replaceFirst("\\.[^.]*$", "");
+			this.count = 0;
+			String line = this.reader.readLine();
+			while(line != null && line.trim().isEmpty()){
+				line = this.reader.readLine();
+			}
+			if(line != null && IsSizeLine(line))
+				this.pendingSize = line;
+		}
+
+		Puzzle p = new Puzzle(Integer.parseInt(this.pendingSize.trim()));
+		this.pendingSize = null;
+		String line;
+		while((line = this.reader.readLine()) != null){
+			if(line.trim().isEmpty())
+				continue;
+			if(IsSizeLine(line)){
+				this.pendingSize = line;
+				break;
+			}
+			WordFileReader.readCategoryLine(p, line);
+		}
+		//Generate the inverted map (ie: mapping indices as keys to categories as values)
+		p.GenerateInvertedMap();
+		this.count++;
+		boolean single = this.count == 1 && this.pendingSize == null;
+		return new Entry(single ? this.fileName : this.fileName + "-" + this.count, p);
+	}
+
+	/**
+	 * @param line
+	 * @return true if the line holds only a puzzle size
+	 */
+	private static boolean IsSizeLine(String line){
+		return line.trim().matches("\\d+");
+	}
+
+	@Override
+	public void close() throws IOException{
+		this.files.clear();
+		this.pendingSize = null;
+		if(this.reader != null)
+			this.reader.close();
+		this.reader = null;
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ * ReducedProblem: a puzzle together with the search space left after preprocessing
+ * 	(see ArcConsistency)
+ * 		domains		the letters still permitted at every index, as 26 bit masks
+ * 		database	a word database holding, for every category of the puzzle, 
+ * 					only the words which are still supported
+ * 		solvable	false if preprocessing proved that the puzzle has no solution
+ * 
+ * 	Both LetterBasedCSP and WordBasedCSP can be constructed from a ReducedProblem,
+ * 	so that the search starts from the smaller space.
+ *
+ * @author dcyoung3
+ */
+public class ReducedProblem {
+
+	//Holds the puzzle which was reduced
+	private Puzzle puzzle;
+	//Holds the reduced word lists of the puzzle's categories
+	private WordDatabase database;
+	//Holds the reduced letter domain of every index
+	private int[] domains;
+	//false if the puzzle was proven to have no solution
+	private boolean solvable;
+
+	/**
+	 * Constructor
+	 * @param puzzle
+	 * @param database
+	 * @param domains
+	 * @param solvable
+	 */
+	public ReducedProblem(Puzzle puzzle, WordDatabase database, int[] domains, boolean solvable){
+		this.puzzle = puzzle;
+		this.database = database;
+		this.domains = domains;
+		this.solvable = solvable;
+	}
+
+	/**
+	 * Print the reduced domains and word counts to the console
+	 */
+	public void PrintReducedProblem(){
+		System.out.println("Solvable: " + this.solvable);
+		for(int i = 0; i < this.domains.length; i++){
+			String line = i + ": ";
+			for(int letter = 0; letter < CategoryIndex.ALPHABET_SIZE; letter++){
+				if((this.domains[i] & (1 << letter)) != 0)
+					line += LetterDomains.LetterChar(letter);
+			}
+			System.out.println(line);
+		}
+		for(String category : this.database.getWordMap().keySet()){
+			System.out.println(category + ": " + this.database.getWordMap().get(category).size() + " words");
+		}
+	}
+
+	public Puzzle getPuzzle(){
+		return this.puzzle;
+	}
+
+	public WordDatabase getWordDatabase(){
+		return this.database;
+	}
+
+	/**
+	 * @return the reduced letter mask of every index (bit 0 = 'A')
+	 */
+	public int[] getDomains(){
+		return this.domains;
+	}
+
+	/**
+	 * @return false if the puzzle was proven to have no solution
+	 */
+	public boolean IsSolvable(){
+		return this.solvable;
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ * SearchBudget: limits on a search, which then returns early with the solutions
+ * 	found so far (see Solve and SearchOutcome)
+ * 		time limit		wall time from the start of the search
+ * 		max nodes		nodes expanded
+ * 		max solutions	solutions found
+ * 		cancellation	a CancellationToken cancelled from another thread
+ * 	Every limit is off by default, a budget without any limit searches the
+ * 	whole tree.
+ *
+ * 	The solvers read the limits through a Limit (see Begin and
+ * 	BacktrackingCSP.setSearchLimit), at every node of their search: a node only
+ * 	counts down a field, the token, the node count and the clock are read every
+ * 	CHECK_INTERVAL nodes, or sooner when fewer nodes are left. The forks of a
+ * 	solver share its Limit, so the nodes of a ParallelSearch are counted
+ * 	together.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SearchBudget {
+
+	//nodes expanded between two reads of the limits
+	public static final int CHECK_INTERVAL = 64;
+
+	//0 for no limit
+	private long timeLimitMillis;
+	private long maxNodes;
+	private long maxSolutions;
+	//Holds the token cancelling the search, null if there is none
+	private CancellationToken token;
+
+	/**
+	 * Constructor, without any limit
+	 */
+	public SearchBudget(){
+		this.timeLimitMillis = 0;
+		this.maxNodes = 0;
+		this.maxSolutions = 0;
+		this.token = null;
+	}
+
+	/**
+	 * @param millis wall time of a search, 0 for no limit
+	 */
+	public void setTimeLimit(long millis){
+		this.timeLimitMillis = Math.max(millis, 0);
+	}
+
+	/**
+	 * A single thread stops at exactly this many nodes; the forks of a
+	 * ParallelSearch each count a batch of nodes ahead, so together they may
+	 * expand up to CHECK_INTERVAL nodes per fork more.
+	 * @param nodes nodes expanded by a search, 0 for no limit
+	 */
+	public void setMaxNodes(long nodes){
+		this.maxNodes = Math.max(nodes, 0);
+	}
+
+	/**
+	 * @param solutions solutions found by a search, 0 for no limit
+	 */
+	public void setMaxSolutions(long solutions){
+		this.maxSolutions = Math.max(solutions, 0);
+	}
+
+	/**
+	 * @param token cancels the searches of the budget, null for none
+	 */
+	public void setCancellationToken(CancellationToken token){
+		this.token = token;
+	}
+
+	public long getTimeLimit(){
+		return this.timeLimitMillis;
+	}
+
+	public long getMaxNodes(){
+		return this.maxNodes;
+	}
+
+	public long getMaxSolutions(){
+		return this.maxSolutions;
+	}
+
+	public CancellationToken getCancellationToken(){
+		return this.token;
+	}
+
+	/**
+	 * Starts the clock of a search
+	 * @return the limits of the search, for the solver (see BacktrackingCSP.setSearchLimit)
+	 */
+	public Limit Begin(){
+		long deadline = (this.timeLimitMillis > 0) ? System.nanoTime() + this.timeLimitMillis * 1000000 : Long.MAX_VALUE;
+		return new Limit(deadline, this.maxNodes, this.token, new AtomicLong(),
+				new AtomicReference<SearchOutcome.Status>());
+	}
+
+	/**
+	 * Searches the solutions extending the assignment within the budget
+	 * @param csp configured solver, its solution sink and limit are replaced during the search
+	 * @param assignment modified in place
+	 * @return the status of the search and the solutions it found
+	 */
+	public SearchOutcome Solve(BacktrackingCSP csp, Assignment assignment){
+		final Limit limit = Begin();
+		final ArrayList<ArrayList<Character>> solutions = new ArrayList<ArrayList<Character>>();
+		final long max = this.maxSolutions;
+		csp.setSolutionSink(new SolutionSink(){
+			@Override
+			public boolean Accept(Assignment solution){
+				solutions.add(solution.ToCharacterList());
+				if(max > 0 && solutions.size() >= max)
+					return !limit.Exhaust(SearchOutcome.Status.SOLUTION_LIMIT);
+				return true;
+			}
+		});
+		csp.setSearchLimit(limit);
+		SearchStats stats = csp.getStats();
+		long nodes = stats.getNodes();
+		long start = System.nanoTime();
+		try {
+			if(!limit.IsExhausted() && csp.Start(assignment))
+				csp.SearchFromCurrentState();
+		} finally {
+			csp.setSearchLimit(null);
+			csp.setSolutionSink(null);
+		}
+		long nanos = System.nanoTime() - start;
+		stats.AddPhaseTime(SearchStats.Phase.SEARCH, nanos);
+		SearchOutcome.Status status = limit.getReason();
+		return new SearchOutcome((status == null) ? SearchOutcome.Status.COMPLETE : status, solutions,
+				stats.getNodes() - nodes, stats.getMaxDepth(), nanos);
+	}
+
+	/**
+	 * Limit: the limits of one search, read by the solver at every node.
+	 * 	A Limit is used by one thread, its forks share the node count and the
+	 * 	reason of the search ending.
+	 */
+	public static class Limit {
+
+		private final long deadline;
+		private final long maxNodes;
+		private final CancellationToken token;
+		//Holds the nodes counted by the search, shared with the forks
+		private final AtomicLong nodes;
+		//Holds the first limit reached, null while none was
+		private final AtomicReference<SearchOutcome.Status> reason;
+		//nodes expanded but not yet added to the shared count
+		private int pending;
+		//nodes left before the limits are read again
+		private int countdown;
+		private final int interval;
+
+		private Limit(long deadline, long maxNodes, CancellationToken token, AtomicLong nodes,
+				AtomicReference<SearchOutcome.Status> reason){
+			this.deadline = deadline;
+			this.maxNodes = maxNodes;
+			this.token = token;
+			this.nodes = nodes;
+			this.reason = reason;
+			this.pending = 0;
+			this.interval = (maxNodes > 0) ? (int) Math.min(CHECK_INTERVAL, maxNodes) : CHECK_INTERVAL;
+			this.countdown = this.interval;
+		}
+
+		/**
+		 * @return a Limit for a fork of the solver, sharing the limits of this one.
+		 * The fork reads them at its first node, since the search may have ended 
+		 * while it waited to run.
+		 */
+		public Limit Fork(){
+			Limit fork = new Limit(this.deadline, this.maxNodes, this.token, this.nodes, this.reason);
+			fork.countdown = 1;
+			return fork;
+		}
+
+		/**
+		 * Counts a node expanded by the search
+		 * @return true if the search must stop
+		 */
+		public boolean Node(){
+			this.pending++;
+			if(--this.countdown > 0)
+				return false;
+			long total = this.nodes.addAndGet(this.pending);
+			this.pending = 0;
+			//read the limits again at the first node past the limit, if it comes sooner
+			this.countdown = (this.maxNodes >= total) ? (int) Math.min(this.interval, this.maxNodes - total + 1) : this.interval;
+			if(this.reason.get() != null)
+				return true;
+			if(this.token != null && this.token.IsCancelled())
+				return Exhaust(SearchOutcome.Status.CANCELLED);
+			//the node counted is only expanded within the limit
+			if(this.maxNodes > 0 && total > this.maxNodes)
+				return Exhaust(SearchOutcome.Status.NODE_LIMIT);
+			if(System.nanoTime() >= this.deadline)
+				return Exhaust(SearchOutcome.Status.DEADLINE);
+			return false;
+		}
+
+		/**
+		 * Adds the nodes not yet counted to the count shared with the forks, when
+		 * the search of this Limit returns
+		 */
+		public void Flush(){
+			this.nodes.addAndGet(this.pending);
+			this.pending = 0;
+		}
+
+		/**
+		 * @return the nodes counted by this Limit and its forks
+		 */
+		public long getNodes(){
+			return this.nodes.get() + this.pending;
+		}
+
+		/**
+		 * @return true if the search must stop, reading every limit now
+		 */
+		public boolean IsExhausted(){
+			if(this.reason.get() != null)
+				return true;
+			if(this.token != null && this.token.IsCancelled())
+				return Exhaust(SearchOutcome.Status.CANCELLED);
+			if(System.nanoTime() >= this.deadline)
+				return Exhaust(SearchOutcome.Status.DEADLINE);
+			return false;
+		}
+
+		/**
+		 * Ends the search, unless another limit ended it first
+		 * @param status the limit reached
+		 * @return true
+		 */
+		public boolean Exhaust(SearchOutcome.Status status){
+			this.reason.compareAndSet(null, status);
+			return true;
+		}
+
+		/**
+		 * @return the first limit reached, null if none was
+		 */
+		public SearchOutcome.Status getReason(){
+			return this.reason.get();
+		}
+	}
+
+}
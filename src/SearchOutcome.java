@@ -0,0 +1,83 @@
+/**
+ * SearchOutcome: how a budgeted search (see SearchBudget.Solve) returned
+ * 	The status tells whether the whole tree was searched or which limit ended
+ * 	the search; the solutions are those found before it ended, with the
+ * 	nodes expanded, the deepest level reached and the time spent.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+
+public class SearchOutcome {
+
+	/**
+	 * Status: why the search returned
+	 */
+	public enum Status {
+		//the whole tree was searched, the solutions are all the solutions
+		COMPLETE,
+		DEADLINE,
+		NODE_LIMIT,
+		SOLUTION_LIMIT,
+		CANCELLED
+	}
+
+	private Status status;
+	private ArrayList<ArrayList<Character>> solutions;
+	private long nodes;
+	private int maxDepth;
+	private long nanos;
+
+	/**
+	 * Constructor
+	 * @param status
+	 * @param solutions found before the search returned
+	 * @param nodes expanded by the search
+	 * @param maxDepth deepest level of the tree reached
+	 * @param nanos wall time of the search
+	 */
+	public SearchOutcome(Status status, ArrayList<ArrayList<Character>> solutions, long nodes, int maxDepth, long nanos){
+		this.status = status;
+		this.solutions = solutions;
+		this.nodes = nodes;
+		this.maxDepth = maxDepth;
+		this.nanos = nanos;
+	}
+
+	public Status getStatus(){
+		return this.status;
+	}
+
+	/**
+	 * @return true if the whole tree was searched
+	 */
+	public boolean IsComplete(){
+		return this.status == Status.COMPLETE;
+	}
+
+	/**
+	 * @return the solutions found, all of them if the search is complete
+	 */
+	public ArrayList<ArrayList<Character>> getSolutions(){
+		return this.solutions;
+	}
+
+	public long getNodes(){
+		return this.nodes;
+	}
+
+	public int getMaxDepth(){
+		return this.maxDepth;
+	}
+
+	public double getMillis(){
+		return this.nanos / 1e6;
+	}
+
+	@Override
+	public String toString(){
+		return this.status + ": " + this.solutions.size() + " solutions, " + this.nodes + " nodes, depth "
+				+ this.maxDepth + String.format(", %.3f ms", getMillis());
+	}
+
+}
@@ -0,0 +1,341 @@
+/**
+ * SearchStats: counters of the work done by a solver
+ * 	nodes			search tree nodes expanded (a variable selected and its values tried)
+ * 	checks			values tried, each followed by a consistency check / propagation
+ * 	failedChecks	values rejected by the check
+ * 	backtracks		nodes left after trying all of their values
+ * 	solutions		complete assignments reached
+ * 	backjumps		dead ends sending the search back over more than one level
+ * 	nogoodPrunes	values rejected by a learned nogood (see NogoodStore)
+ * 	and per depth of the tree, the nodes, checks and failed checks, which give
+ * 	the branching factor (checks / nodes) and the prune rate (failed / checks).
+ * 	The wall time of each Phase is recorded by whoever runs it: the solvers time
+ * 	SEARCH and VALIDATE, and start from the PARSE and INDEX times of the 
+ * 	database they are built on (see WordDatabase.getParseNanos and 
+ * 	getIndexNanos), shared by every solver built on the same database.
+ * 	
+ * 	The counters are plain fields updated by the solver thread only, so they 
+ * 	cost an increment each. Every fork of a solver (see BacktrackingCSP.Fork) 
+ * 	has its own SearchStats, merged into the stats of the original solver 
+ * 	when its search is over (see ParallelSearch). Values read through JMX 
+ * 	while a search runs may be slightly stale.
+ *
+ * @author dcyoung3
+ */
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SearchStats implements SearchStatsMXBean {
+
+	/**
+	 * Phase: the timed steps of solving a puzzle
+	 */
+	public enum Phase {
+		PARSE,
+		INDEX,
+		SEARCH,
+		VALIDATE
+	}
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private long nodes;
+	private long checks;
+	private long failedChecks;
+	private long backtracks;
+	private long solutions;
+	private long backjumps;
+	private long nogoodPrunes;
+	//Holds the nodes, checks and failed checks of every depth
+	private long[] depthNodes;
+	private long[] depthChecks;
+	private long[] depthFailedChecks;
+	//added to every depth, for a search starting below the root (see ParallelSearch)
+	private int depthOffset;
+	//Holds the wall time of every phase
+	private long[] phaseNanos;
+
+	/**
+	 * Constructor
+	 */
+	public SearchStats(){
+		this.phaseNanos = new long[Phase.values().length];
+		Reset();
+	}
+
+	/**
+	 * Clears every counter and time
+	 */
+	@Override
+	public synchronized void Reset(){
+		this.nodes = 0;
+		this.checks = 0;
+		this.failedChecks = 0;
+		this.backtracks = 0;
+		this.solutions = 0;
+		this.backjumps = 0;
+		this.nogoodPrunes = 0;
+		this.depthNodes = new long[16];
+		this.depthChecks = new long[16];
+		this.depthFailedChecks = new long[16];
+		this.depthOffset = 0;
+		Arrays.fill(this.phaseNanos, 0);
+	}
+
+	/**
+	 * Records a node expanded at the given depth
+	 * @param depth
+	 */
+	public void Node(int depth){
+		depth += this.depthOffset;
+		if(depth >= this.depthNodes.length)
+			Grow(depth);
+		this.nodes++;
+		this.depthNodes[depth]++;
+	}
+
+	/**
+	 * Records a value tried at the given depth
+	 * @param depth
+	 * @param consistent result of the check
+	 */
+	public void Check(int depth, boolean consistent){
+		depth += this.depthOffset;
+		if(depth >= this.depthChecks.length)
+			Grow(depth);
+		this.checks++;
+		this.depthChecks[depth]++;
+		if(!consistent){
+			this.failedChecks++;
+			this.depthFailedChecks[depth]++;
+		}
+	}
+
+	public void Backtrack(){
+		this.backtracks++;
+	}
+
+	public void Solution(){
+		this.solutions++;
+	}
+
+	public void Backjump(){
+		this.backjumps++;
+	}
+
+	public void NogoodPrune(){
+		this.nogoodPrunes++;
+	}
+
+	private void Grow(int depth){
+		int length = Math.max(depth + 1, this.depthNodes.length * 2);
+		this.depthNodes = Arrays.copyOf(this.depthNodes, length);
+		this.depthChecks = Arrays.copyOf(this.depthChecks, length);
+		this.depthFailedChecks = Arrays.copyOf(this.depthFailedChecks, length);
+	}
+
+	/**
+	 * Sets the depth of the root of the following search in the whole tree
+	 * @param offset
+	 */
+	public void setDepthOffset(int offset){
+		this.depthOffset = offset;
+	}
+
+	/**
+	 * Adds wall time to a phase
+	 * @param phase
+	 * @param nanos
+	 */
+	public synchronized void AddPhaseTime(Phase phase, long nanos){
+		this.phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Adds the counters and times of another SearchStats (eg: of a fork) to these
+	 * @param other not modified, and not in use by another thread
+	 */
+	public synchronized void Merge(SearchStats other){
+		this.nodes += other.nodes;
+		this.checks += other.checks;
+		this.failedChecks += other.failedChecks;
+		this.backtracks += other.backtracks;
+		this.solutions += other.solutions;
+		this.backjumps += other.backjumps;
+		this.nogoodPrunes += other.nogoodPrunes;
+		if(other.depthNodes.length > this.depthNodes.length)
+			Grow(other.depthNodes.length - 1);
+		for(int d = 0; d < other.depthNodes.length; d++){
+			this.depthNodes[d] += other.depthNodes[d];
+			this.depthChecks[d] += other.depthChecks[d];
+			this.depthFailedChecks[d] += other.depthFailedChecks[d];
+		}
+		for(int p = 0; p < this.phaseNanos.length; p++){
+			this.phaseNanos[p] += other.phaseNanos[p];
+		}
+	}
+
+	@Override
+	public long getNodes(){
+		return this.nodes;
+	}
+
+	@Override
+	public long getChecks(){
+		return this.checks;
+	}
+
+	@Override
+	public long getFailedChecks(){
+		return this.failedChecks;
+	}
+
+	@Override
+	public long getBacktracks(){
+		return this.backtracks;
+	}
+
+	@Override
+	public long getSolutions(){
+		return this.solutions;
+	}
+
+	@Override
+	public long getBackjumps(){
+		return this.backjumps;
+	}
+
+	@Override
+	public long getNogoodPrunes(){
+		return this.nogoodPrunes;
+	}
+
+	/**
+	 * @param phase
+	 * @return the wall time of the phase in nanoseconds
+	 */
+	public synchronized long getPhaseNanos(Phase phase){
+		return this.phaseNanos[phase.ordinal()];
+	}
+
+	@Override
+	public double getParseMillis(){
+		return getPhaseNanos(Phase.PARSE) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getIndexMillis(){
+		return getPhaseNanos(Phase.INDEX) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getSearchMillis(){
+		return getPhaseNanos(Phase.SEARCH) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getValidateMillis(){
+		return getPhaseNanos(Phase.VALIDATE) / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the number of depths holding at least one node or check
+	 */
+	public int getMaxDepth(){
+		int depth = this.depthChecks.length;
+		while(depth > 0 && this.depthNodes[depth-1] == 0 && this.depthChecks[depth-1] == 0){
+			depth--;
+		}
+		return depth;
+	}
+
+	/**
+	 * @param depth
+	 * @return the number of nodes expanded at the depth
+	 */
+	public long getNodes(int depth){
+		return (depth < this.depthNodes.length) ? this.depthNodes[depth] : 0;
+	}
+
+	/**
+	 * @param depth
+	 * @return the average number of values tried per node at the depth
+	 */
+	public double getBranchingFactor(int depth){
+		long n = getNodes(depth);
+		return (n == 0) ? 0 : (double) this.depthChecks[depth] / n;
+	}
+
+	/**
+	 * @param depth
+	 * @return the fraction of the values tried at the depth which were rejected
+	 */
+	public double getPruneRate(int depth){
+		long c = (depth < this.depthChecks.length) ? this.depthChecks[depth] : 0;
+		return (c == 0) ? 0 : (double) this.depthFailedChecks[depth] / c;
+	}
+
+	@Override
+	public double[] getBranchingByDepth(){
+		double[] branching = new double[getMaxDepth()];
+		for(int d = 0; d < branching.length; d++){
+			branching[d] = getBranchingFactor(d);
+		}
+		return branching;
+	}
+
+	@Override
+	public double[] getPruneRateByDepth(){
+		double[] pruneRate = new double[getMaxDepth()];
+		for(int d = 0; d < pruneRate.length; d++){
+			pruneRate[d] = getPruneRate(d);
+		}
+		return pruneRate;
+	}
+
+	/**
+	 * Exports the stats on the platform MBean server, 
+	 * as "WordPuzzleCSP:type=SearchStats,name=<name>"
+	 * @param name
+	 * @return the name the stats were registered under
+	 * @throws JMException if the name is invalid or already registered
+	 */
+	public ObjectName Register(String name) throws JMException{
+		ObjectName objectName = new ObjectName("WordPuzzleCSP:type=SearchStats,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Removes stats exported by Register
+	 * @param objectName
+	 * @throws JMException
+	 */
+	public static void Unregister(ObjectName objectName) throws JMException{
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+
+	public void PrintStats(){
+		System.out.print(this.toString());
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		sb.append("Search Stats:\n");
+		sb.append("  nodes: " + this.nodes + ", checks: " + this.checks + ", failed checks: " + this.failedChecks
+				+ ", backtracks: " + this.backtracks + ", solutions: " + this.solutions + "\n");
+		if(this.backjumps > 0 || this.nogoodPrunes > 0)
+			sb.append("  backjumps: " + this.backjumps + ", nogood prunes: " + this.nogoodPrunes + "\n");
+		sb.append(String.format("  parse: %.3f ms, index: %.3f ms, search: %.3f ms, validate: %.3f ms%n",
+				getParseMillis(), getIndexMillis(), getSearchMillis(), getValidateMillis()));
+		for(int d = 0; d < getMaxDepth(); d++){
+			sb.append(String.format("  depth %d: nodes %d, branching %.2f, pruned %.1f%%%n",
+					d, getNodes(d), getBranchingFactor(d), 100 * getPruneRate(d)));
+		}
+		return sb.toString();
+	}
+
+}
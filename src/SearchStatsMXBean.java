@@ -0,0 +1,38 @@
+/**
+ * SearchStatsMXBean: the counters of a SearchStats as exported over JMX
+ * 	(see SearchStats.Register). Times are in milliseconds, the per depth
+ * 	arrays are indexed by the depth of the search tree.
+ *
+ * @author dcyoung3
+ */
+public interface SearchStatsMXBean {
+
+	long getNodes();
+
+	long getChecks();
+
+	long getFailedChecks();
+
+	long getBacktracks();
+
+	long getSolutions();
+
+	long getBackjumps();
+
+	long getNogoodPrunes();
+
+	double getParseMillis();
+
+	double getIndexMillis();
+
+	double getSearchMillis();
+
+	double getValidateMillis();
+
+	double[] getBranchingByDepth();
+
+	double[] getPruneRateByDepth();
+
+	void Reset();
+
+}
@@ -0,0 +1,284 @@
+/**
+ * SearchTrace: records the search tree of a solver without slowing it down
+ * 	The solver publishes every event (a value tried, a solution found, a 
+ * 	backtrack) as a single long, plus the packed letters for a solution, into a
+ * 	ring buffer. A background thread drains the ring buffer and, depending on 
+ * 	the TraceMode, renders the arrow tree text (see TraceRenderer) or writes the
+ * 	events to a compact binary log, through a buffered stream.
+ * 	
+ * 	The ring buffer has a single producer (the solver thread) and a single 
+ * 	consumer (the writer thread); when it is full the solver waits for the writer
+ * 	rather than dropping events. A trace only records the search of one solver,
+ * 	forks (see BacktrackingCSP.Fork) are never traced.
+ * 	
+ * 	Usage:
+ * 		SearchTrace trace = SearchTrace.ToFile(TraceMode.BINARY, "results/traces/puzzle1.trace");
+ * 		csp.setSearchTrace(trace);
+ * 		csp.RecursiveBacktracking(assignment, 0);
+ * 		trace.close();
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class SearchTrace implements AutoCloseable {
+
+	//a trace which records nothing
+	public static final SearchTrace OFF = new SearchTrace(TraceMode.OFF, null);
+
+	//number of longs held by the ring buffer (a power of 2)
+	private static final int RING_SIZE = 1 << 16;
+	//time the writer waits when the ring buffer is empty
+	private static final long IDLE_NANOS = 50000;
+
+	//Holds what is done with the events
+	private TraceMode mode;
+	//Holds the stream the trace is written to
+	private OutputStream out;
+	//true if the stream is closed with the trace (ie: it was opened by ToFile)
+	private boolean ownsStream;
+	//Holds the ring buffer of events, and the positions of the next write and read
+	private final long[] ring;
+	private final AtomicLong head;
+	private final AtomicLong tail;
+	//last read position seen by the producer, refreshed only when the buffer looks full
+	private long cachedTail;
+	//number of letters in a solution, set by Attach
+	private int puzzleSize;
+	//Holds the words of every category ordinal of the attached solver
+	private String[][] words;
+	//Holds the background thread draining the ring buffer
+	private Thread writer;
+	private volatile boolean closing;
+	//Holds the first failure of the writer, reported by close
+	private volatile IOException failure;
+
+	/**
+	 * Constructor
+	 * @param mode
+	 * @param out receives the trace, it is flushed but not closed by close()
+	 */
+	public SearchTrace(TraceMode mode, OutputStream out){
+		this.mode = (out == null) ? TraceMode.OFF : mode;
+		this.out = out;
+		this.ownsStream = false;
+		this.ring = (this.mode == TraceMode.OFF) ? null : new long[RING_SIZE];
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+		this.cachedTail = 0;
+	}
+
+	/**
+	 * Opens a trace writing to a file, the file is closed with the trace
+	 * @param mode
+	 * @param filename
+	 * @return the trace
+	 * @throws IOException
+	 */
+	public static SearchTrace ToFile(TraceMode mode, String filename) throws IOException{
+		if(mode == TraceMode.OFF)
+			return OFF;
+		SearchTrace trace = new SearchTrace(mode, new FileOutputStream(filename));
+		trace.ownsStream = true;
+		return trace;
+	}
+
+	/**
+	 * @return true unless the trace is OFF, the solvers skip every call otherwise
+	 */
+	public boolean IsEnabled(){
+		return this.mode != TraceMode.OFF;
+	}
+
+	/**
+	 * @return the mode of the trace
+	 */
+	public TraceMode getMode(){
+		return this.mode;
+	}
+
+	/**
+	 * Binds the trace to the words of a solver and starts the writer thread.
+	 * Called by the solver (see setSearchTrace) before the first event.
+	 * @param puzzleSize number of letters in the puzzle
+	 * @param categories the categories of the solver, by ordinal
+	 * @param categoryWords the word index of every category ordinal, null entries hold no words
+	 */
+	public synchronized void Attach(int puzzleSize, String[] categories, CategoryIndex[] categoryWords){
+		if(!IsEnabled())
+			return;
+		if(this.writer != null)
+			throw new IllegalStateException("The trace is already attached to a solver");
+		this.puzzleSize = puzzleSize;
+		this.words = new String[categories.length][];
+		for(int c = 0; c < categories.length; c++){
+			int size = (categoryWords[c] == null) ? 0 : categoryWords[c].size();
+			this.words[c] = new String[size];
+			for(int w = 0; w < size; w++){
+				this.words[c][w] = categoryWords[c].getWord(w);
+			}
+		}
+		final String[] names = categories.clone();
+		this.writer = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				Drain(names);
+			}
+		}, "search-trace-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Records that a word was tried (and found consistent)
+	 * @param depth depth of the search tree
+	 * @param category ordinal of the category
+	 * @param word id of the word in the category
+	 */
+	public void Node(int depth, int category, int word){
+		Publish(TraceRenderer.Encode(TraceRenderer.NODE, depth, category, word));
+	}
+
+	/**
+	 * Records that every value of the current node was tried
+	 * @param depth depth of the search tree
+	 */
+	public void Backtrack(int depth){
+		Publish(TraceRenderer.Encode(TraceRenderer.BACKTRACK, depth, -1, 0));
+	}
+
+	/**
+	 * Records a solution, its letters are packed into the ring buffer
+	 * @param depth depth of the search tree
+	 * @param assignment a complete assignment
+	 */
+	public void Solution(int depth, Assignment assignment){
+		int longs = TraceRenderer.SolutionLongs(assignment.size());
+		long h = Reserve(1 + longs);
+		this.ring[(int) h & (RING_SIZE - 1)] = TraceRenderer.Encode(TraceRenderer.SOLUTION, depth, -1, 0);
+		for(int k = 0; k < longs; k++){
+			long packed = 0;
+			int end = Math.min(assignment.size(), (k + 1) * TraceRenderer.LETTERS_PER_LONG);
+			for(int i = k * TraceRenderer.LETTERS_PER_LONG; i < end; i++){
+				char c = assignment.get(i);
+				long code = (c == Assignment.UNASSIGNED) ? 0 : (c - 'A' + 1) & 31;
+				packed |= code << ((i % TraceRenderer.LETTERS_PER_LONG) * 5);
+			}
+			this.ring[(int) (h + 1 + k) & (RING_SIZE - 1)] = packed;
+		}
+		this.head.lazySet(h + 1 + longs);
+	}
+
+	private void Publish(long event){
+		long h = Reserve(1);
+		this.ring[(int) h & (RING_SIZE - 1)] = event;
+		this.head.lazySet(h + 1);
+	}
+
+	/**
+	 * Waits until the ring buffer has room for the given number of longs
+	 * @param count
+	 * @return the position to write the first of them at
+	 */
+	private long Reserve(int count){
+		long h = this.head.get();
+		while(h + count - this.cachedTail > RING_SIZE){
+			this.cachedTail = this.tail.get();
+			if(h + count - this.cachedTail > RING_SIZE){
+				if(this.failure != null || !this.writer.isAlive())
+					throw new IllegalStateException("The search trace writer stopped", this.failure);
+				Thread.yield();
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Body of the writer thread: moves the events from the ring buffer to the stream
+	 * @param categories
+	 */
+	private void Drain(String[] categories){
+		try {
+			TraceRenderer renderer = null;
+			DataOutputStream data = null;
+			Writer text = null;
+			if(this.mode == TraceMode.BINARY){
+				data = new DataOutputStream(new BufferedOutputStream(this.out, 1 << 16));
+				TraceRenderer.WriteHeader(data, this.puzzleSize, categories, this.words);
+			} else {
+				text = new BufferedWriter(new OutputStreamWriter(this.out), 1 << 16);
+				renderer = new TraceRenderer(this.puzzleSize, this.words, text);
+			}
+			int solutionLongs = TraceRenderer.SolutionLongs(this.puzzleSize);
+			long[] payload = new long[solutionLongs];
+			long t = this.tail.get();
+			while(true){
+				//read closing before head, so no event published before close() is missed
+				boolean done = this.closing;
+				long h = this.head.get();
+				if(t == h){
+					if(done)
+						break;
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+				while(t < h){
+					long event = this.ring[(int) t & (RING_SIZE - 1)];
+					t++;
+					boolean solution = TraceRenderer.Type(event) == TraceRenderer.SOLUTION;
+					if(data != null){
+						data.writeLong(event);
+						for(int k = 0; solution && k < solutionLongs; k++){
+							data.writeLong(this.ring[(int) (t + k) & (RING_SIZE - 1)]);
+						}
+					} else {
+						for(int k = 0; solution && k < solutionLongs; k++){
+							payload[k] = this.ring[(int) (t + k) & (RING_SIZE - 1)];
+						}
+						renderer.Render(event, payload, 0);
+					}
+					if(solution)
+						t += solutionLongs;
+				}
+				this.tail.lazySet(t);
+			}
+			if(data != null)
+				data.flush();
+			else
+				text.flush();
+		} catch (IOException e) {
+			this.failure = e;
+		}
+	}
+
+	/**
+	 * Waits for the writer to write every recorded event, then flushes the stream
+	 * (and closes it if it was opened by ToFile). 
+	 */
+	@Override
+	public synchronized void close(){
+		if(!IsEnabled() || this.closing)
+			return;
+		this.closing = true;
+		try {
+			if(this.writer != null)
+				this.writer.join();
+			if(this.ownsStream)
+				this.out.close();
+			else
+				this.out.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			if(this.failure == null)
+				this.failure = e;
+		}
+		if(this.failure != null){
+			System.out.println("The search trace could not be written.");
+			this.failure.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,404 @@
+/**
+ * SolutionCache: remembers the solutions of puzzles, so a puzzle with the same
+ * 	structure as one solved before is answered without searching
+ *
+ * 	Two puzzles have the same structure if they have the same size and the same
+ * 	categories, and the spaces can be renumbered so that every category has the
+ * 	same spaces in both. The canonical form of a puzzle (see CanonicalForm)
+ * 	numbers the spaces in order of first appearance, visiting the categories in
+ * 	name order and the spaces of each category in word order; spaces without a
+ * 	category come last. The solutions are stored in canonical numbering and
+ * 	mapped back to the numbering of the puzzle asking for them, so the same
+ * 	solutions are returned (in the order they were found for the first puzzle).
+ *
+ * 	The key of a puzzle is its canonical form plus the version of the dictionary
+ * 	(a hash of its content). Entries are evicted least recently used first once
+ * 	more than capacity solutions are held. With a disk directory set, every
+ * 	entry is also written to a file named after the hash of its key, which is
+ * 	read back on a miss, including by a later process using the same dictionary.
+ *
+ * 	The cache is thread safe. Two threads missing on the same structure at the
+ * 	same time both search it.
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class SolutionCache {
+
+	/**
+	 * CanonicalForm: the structure of a puzzle independent of its numbering
+	 */
+	public static class CanonicalForm {
+
+		//Holds the canonical description of the structure
+		private String key;
+		//Holds the canonical number of every space of the puzzle
+		private int[] labels;
+
+		/**
+		 * Constructor
+		 * @param p
+		 */
+		public CanonicalForm(Puzzle p){
+			int size = p.getPuzzleSize();
+			this.labels = new int[size];
+			for(int i = 0; i < size; i++){
+				this.labels[i] = -1;
+			}
+			int next = 0;
+			StringBuilder sb = new StringBuilder();
+			sb.append(size);
+			for(String category : new TreeSet<String>(p.getCategoryIndexMap().keySet())){
+				sb.append('|').append(category).append(':');
+				List<Integer> indices = p.getCategoryIndexMap().get(category);
+				for(int k = 0; k < indices.size(); k++){
+					int index = indices.get(k);
+					if(this.labels[index] < 0)
+						this.labels[index] = next++;
+					sb.append(k == 0 ? "" : ",").append(this.labels[index]);
+				}
+			}
+			for(int i = 0; i < size; i++){
+				if(this.labels[i] < 0)
+					this.labels[i] = next++;
+			}
+			this.key = sb.toString();
+		}
+
+		/**
+		 * @return the canonical description of the structure
+		 */
+		public String getKey(){
+			return this.key;
+		}
+
+		/**
+		 * @param solution in the numbering of the puzzle
+		 * @return the letters of the solution in canonical numbering
+		 */
+		public String ToCanonical(List<Character> solution){
+			char[] letters = new char[this.labels.length];
+			for(int i = 0; i < letters.length; i++){
+				Character c = solution.get(i);
+				letters[this.labels[i]] = (c == null) ? '.' : c;
+			}
+			return new String(letters);
+		}
+
+		/**
+		 * @param letters of a solution in canonical numbering
+		 * @return the solution in the numbering of the puzzle
+		 */
+		public ArrayList<Character> FromCanonical(String letters){
+			ArrayList<Character> solution = new ArrayList<Character>(this.labels.length);
+			for(int i = 0; i < this.labels.length; i++){
+				char c = letters.charAt(this.labels[i]);
+				solution.add(c == '.' ? null : c);
+			}
+			return solution;
+		}
+	}
+
+	//Holds the dictionary the solutions were found in
+	private WordDatabase db;
+	//Holds the hash of the dictionary content
+	private String version;
+	//maximum number of solutions held in memory
+	private long capacity;
+	//number of solutions held in memory
+	private long held;
+	//Holds the solutions in canonical numbering by key, least recently used first
+	private LinkedHashMap<String, String[]> entries;
+	//Holds the directory of the disk tier, null if there is none
+	private File diskDirectory;
+	private long hits;
+	private long diskHits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructor
+	 * @param db the dictionary, frozen if it is not yet
+	 * @param capacity maximum number of solutions held in memory
+	 */
+	public SolutionCache(WordDatabase db, long capacity){
+		this.db = db.Freeze();
+		this.version = DictionaryVersion(this.db);
+		this.capacity = capacity;
+		this.held = 0;
+		this.entries = new LinkedHashMap<String, String[]>(16, 0.75f, true);
+		this.diskDirectory = null;
+	}
+
+	/**
+	 * Keeps a copy of every entry in the directory, and looks there on a miss
+	 * @param directory
+	 */
+	public synchronized void setDiskDirectory(String directory){
+		this.diskDirectory = (directory == null) ? null : new File(directory);
+		if(this.diskDirectory != null)
+			this.diskDirectory.mkdirs();
+	}
+
+	/**
+	 * @return the frozen dictionary the solvers of the cache search
+	 */
+	public WordDatabase getWordDatabase(){
+		return this.db;
+	}
+
+	/**
+	 * @return the version of the dictionary, part of every key
+	 */
+	public String getVersion(){
+		return this.version;
+	}
+
+	/**
+	 * Returns the solutions of the puzzle, searching them with a solver from the
+	 * factory unless a puzzle of the same structure was solved before
+	 * @param p
+	 * @param factory
+	 * @return the solutions, in the numbering of the puzzle
+	 */
+	public ArrayList<ArrayList<Character>> Solve(Puzzle p, BatchSolver.SolverFactory factory){
+		CanonicalForm form = new CanonicalForm(p);
+		ArrayList<ArrayList<Character>> results = Get(form);
+		if(results != null)
+			return results;
+		BacktrackingCSP csp = factory.Create(p, this.db);
+		if(csp.Start(new Assignment(p.getPuzzleSize())))
+			csp.SearchFromCurrentState();
+		Put(form, csp.getResults());
+		return csp.getResults();
+	}
+
+	/**
+	 * @param form
+	 * @return the cached solutions of the structure in the numbering of the form's puzzle, null on a miss
+	 */
+	public ArrayList<ArrayList<Character>> Get(CanonicalForm form){
+		String key = Key(form);
+		String[] solutions;
+		synchronized(this){
+			solutions = this.entries.get(key);
+			if(solutions != null)
+				this.hits++;
+		}
+		if(solutions == null){
+			solutions = ReadDisk(key);
+			synchronized(this){
+				if(solutions == null){
+					this.misses++;
+					return null;
+				}
+				this.diskHits++;
+				Store(key, solutions);
+			}
+		}
+		ArrayList<ArrayList<Character>> results = new ArrayList<ArrayList<Character>>(solutions.length);
+		for(String letters : solutions){
+			results.add(form.FromCanonical(letters));
+		}
+		return results;
+	}
+
+	/**
+	 * Caches the solutions of the structure
+	 * @param form
+	 * @param results every solution of the form's puzzle, in its numbering
+	 */
+	public void Put(CanonicalForm form, List<? extends List<Character>> results){
+		String key = Key(form);
+		String[] solutions = new String[results.size()];
+		for(int s = 0; s < solutions.length; s++){
+			solutions[s] = form.ToCanonical(results.get(s));
+		}
+		synchronized(this){
+			Store(key, solutions);
+		}
+		WriteDisk(key, solutions);
+	}
+
+	private String Key(CanonicalForm form){
+		return this.version + "|" + form.getKey();
+	}
+
+	/**
+	 * Adds an entry in memory and evicts the least recently used ones over capacity
+	 */
+	private void Store(String key, String[] solutions){
+		if(solutions.length > this.capacity)
+			return;
+		String[] old = this.entries.put(key, solutions);
+		this.held += solutions.length - ((old == null) ? 0 : old.length);
+		Iterator<Map.Entry<String, String[]>> eldest = this.entries.entrySet().iterator();
+		while(this.held > this.capacity && eldest.hasNext()){
+			Map.Entry<String, String[]> entry = eldest.next();
+			this.held -= entry.getValue().length;
+			eldest.remove();
+			this.evictions++;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the file of the entry in the disk tier
+	 */
+	private File DiskFile(String key){
+		return new File(this.diskDirectory, Hash(key) + ".soln");
+	}
+
+	/**
+	 * @param key
+	 * @return the solutions written for the key, null if there are none (or no disk tier)
+	 */
+	private String[] ReadDisk(String key){
+		File directory = this.diskDirectory;
+		if(directory == null)
+			return null;
+		File file = DiskFile(key);
+		if(!file.isFile())
+			return null;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				//the key is stored too, a file for another key (a hash collision) is ignored
+				if(!key.equals(in.readLine()))
+					return null;
+				ArrayList<String> solutions = new ArrayList<String>();
+				String line;
+				while((line = in.readLine()) != null){
+					solutions.add(line);
+				}
+				return solutions.toArray(new String[0]);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + file + "\"\t could not be read.");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the entry to the disk tier, through a temporary file so a reader never sees part of it
+	 */
+	private void WriteDisk(String key, String[] solutions){
+		File directory = this.diskDirectory;
+		if(directory == null)
+			return;
+		File file = DiskFile(key);
+		try {
+			File temp = File.createTempFile("soln", ".tmp", directory);
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)));
+			out.println(key);
+			for(String s : solutions){
+				out.println(s);
+			}
+			out.close();
+			if(out.checkError() || !temp.renameTo(file)){
+				temp.delete();
+				throw new IOException("Filename: \"" + file + "\" could not be written");
+			}
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + file + "\"\t could not be written.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param db
+	 * @return a hash of the categories and words of the dictionary
+	 */
+	public static String DictionaryVersion(WordDatabase db){
+		MessageDigest digest = Digest();
+		for(String category : new TreeSet<String>(db.getWordMap().keySet())){
+			digest.update(category.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) ':');
+			for(String w : db.getWordMap().get(category)){
+				digest.update(w.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) ',');
+			}
+			digest.update((byte) '\n');
+		}
+		return Hex(digest.digest());
+	}
+
+	private static String Hash(String s){
+		return Hex(Digest().digest(s.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static MessageDigest Digest(){
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//every Java platform provides SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String Hex(byte[] bytes){
+		StringBuilder sb = new StringBuilder();
+		for(byte b : bytes){
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	public synchronized long getHits(){
+		return this.hits;
+	}
+
+	public synchronized long getDiskHits(){
+		return this.diskHits;
+	}
+
+	public synchronized long getMisses(){
+		return this.misses;
+	}
+
+	public synchronized long getEvictions(){
+		return this.evictions;
+	}
+
+	/**
+	 * @return the fraction of lookups answered from memory or disk
+	 */
+	public synchronized double getHitRate(){
+		long lookups = this.hits + this.diskHits + this.misses;
+		return (lookups == 0) ? 0 : (double) (this.hits + this.diskHits) / lookups;
+	}
+
+	/**
+	 * @return the number of entries held in memory
+	 */
+	public synchronized int size(){
+		return this.entries.size();
+	}
+
+	/**
+	 * @return the number of solutions held in memory
+	 */
+	public synchronized long getSolutionCount(){
+		return this.held;
+	}
+
+	@Override
+	public synchronized String toString(){
+		return "SolutionCache: " + this.entries.size() + " entries, " + this.held + " solutions, hits: " + this.hits
+				+ ", disk hits: " + this.diskHits + ", misses: " + this.misses + ", evictions: " + this.evictions;
+	}
+
+}
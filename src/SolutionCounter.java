@@ -0,0 +1,394 @@
+/**
+ * SolutionCounter: counts the solutions of a puzzle exactly, and draws solutions
+ * 	uniformly at random, without enumerating them
+ *
+ * 	Dynamic programming over a TreeDecomposition of the puzzle, visiting the bags
+ * 	children first. A table maps letters of a set of indices (its scope) to a
+ * 	number of partial solutions, only the entries with a count being stored. The
+ * 	table of a bag is the join of the tables of the categories it holds (one
+ * 	entry per distinct word) with the messages of its child bags; summing its own
+ * 	index out of it gives its message to the parent. The product of the messages
+ * 	of the roots is the number of solutions, as a BigInteger. An index no
+ * 	category holds takes any letter, as in LetterBasedCSP.
+ *
+ * 	Every table has at most 26^(width + 1) entries, so time and memory are
+ * 	exponential in the width of the decomposition only. A table holds up to 12
+ * 	indices (letters are packed 5 bits each into a long key); a puzzle of width
+ * 	above 11 is rejected.
+ *
+ * 	Sampling reuses the tables of the bags: the indices are drawn in reverse
+ * 	elimination order, each with a probability proportional to the count of its
+ * 	letter given the letters already drawn, which gives every solution the same
+ * 	probability.
+ *
+ * @author dcyoung3
+ */
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class SolutionCounter {
+
+	//number of letters packed into a table key
+	public static final int MAX_SCOPE = 12;
+
+	/**
+	 * Table: counts of partial solutions by the letters of the indices of its scope
+	 */
+	private static class Table {
+		//Holds the indices of the table, in increasing order
+		final int[] scope;
+		//Holds the count of every packed key (letter of scope[k] in bits 5k to 5k+4)
+		final HashMap<Long, BigInteger> counts;
+
+		Table(int[] scope){
+			if(scope.length > MAX_SCOPE)
+				throw new IllegalStateException("The puzzle is too wide to count: a table would hold "
+						+ scope.length + " indices");
+			this.scope = scope;
+			this.counts = new HashMap<Long, BigInteger>();
+		}
+	}
+
+	/**
+	 * Choice: the letters of an index and their cumulative counts, given the
+	 * 	letters of the other indices of its bag's table
+	 */
+	private static class Choice {
+		final int[] letters;
+		final BigInteger[] cumulative;
+
+		Choice(int[] letters, BigInteger[] cumulative){
+			this.letters = letters;
+			this.cumulative = cumulative;
+		}
+	}
+
+	//Holds the puzzle to count
+	private Puzzle puzzle;
+	//Holds the database of possible words for lookup by category
+	private WordDatabase db;
+	private TreeDecomposition decomposition;
+	//Holds the number of solutions, null until Count runs
+	private BigInteger count;
+	//Holds, for every index, the scope of its bag's table without the index (null if the index is free)
+	private int[][] sampleScopes;
+	//Holds, for every index, its choices by the packed letters of its sample scope
+	private ArrayList<HashMap<Long, Choice>> choices;
+
+	/**
+	 * Constructor
+	 * @param puzzle
+	 * @param db
+	 */
+	public SolutionCounter(Puzzle puzzle, WordDatabase db){
+		this.puzzle = puzzle;
+		this.db = db;
+		if(!db.IsIndexed())
+			db.BuildIndex();
+		this.decomposition = new TreeDecomposition(puzzle);
+	}
+
+	/**
+	 * @return the tree decomposition the counts are computed over
+	 */
+	public TreeDecomposition getDecomposition(){
+		return this.decomposition;
+	}
+
+	/**
+	 * Counts the solutions of the puzzle (once, later calls return the same count)
+	 * @return the number of solutions
+	 * @throws IllegalStateException if the width of the puzzle is above MAX_SCOPE - 1
+	 */
+	public synchronized BigInteger Count(){
+		if(this.count != null)
+			return this.count;
+		int size = this.puzzle.getPuzzleSize();
+		String[] categories = this.puzzle.getCategories();
+		int[][] categoryIndices = this.puzzle.getCategoryIndexArrays();
+
+		//the tables joined at every bag: its categories, then the messages of its children
+		ArrayList<ArrayList<Table>> incoming = new ArrayList<ArrayList<Table>>();
+		for(int v = 0; v < size; v++){
+			incoming.add(new ArrayList<Table>());
+		}
+		for(int c = 0; c < categories.length; c++){
+			int bag = this.decomposition.getCategoryBag(c);
+			if(bag >= 0)
+				incoming.get(bag).add(CategoryTable(categories[c], categoryIndices[c]));
+		}
+
+		this.sampleScopes = new int[size][];
+		this.choices = new ArrayList<HashMap<Long, Choice>>();
+		for(int v = 0; v < size; v++){
+			this.choices.add(null);
+		}
+		BigInteger total = BigInteger.ONE;
+		for(int v : this.decomposition.getEliminationOrder()){
+			Table joined = new Table(new int[0]);
+			joined.counts.put(0L, BigInteger.ONE);
+			for(Table t : incoming.get(v)){
+				joined = Join(joined, t);
+			}
+			incoming.set(v, null);
+			Table message = SumOut(joined, v);
+			int parent = this.decomposition.getParent(v);
+			if(parent >= 0)
+				incoming.get(parent).add(message);
+			else
+				total = total.multiply(message.counts.containsKey(0L) ? message.counts.get(0L) : BigInteger.ZERO);
+		}
+		this.count = total;
+		return total;
+	}
+
+	/**
+	 * @return the table of the distinct words of the category over its indices
+	 */
+	private Table CategoryTable(String category, int[] indices){
+		int[] scope = Distinct(indices);
+		Table table = new Table(scope);
+		CategoryIndex words = this.db.getCategoryIndex(category, indices.length);
+		if(words == null)
+			return table;
+		for(int id = 0; id < words.size(); id++){
+			String w = words.getWord(id);
+			long key = 0;
+			boolean valid = w.length() == indices.length;
+			for(int p = 0; p < indices.length && valid; p++){
+				int letter = w.charAt(p) - 'A';
+				int k = Arrays.binarySearch(scope, indices[p]);
+				long shift = 5L * k;
+				//a repeated index must hold the same letter at both positions
+				if(letter < 0 || letter >= CategoryIndex.ALPHABET_SIZE
+						|| (Letter(key, k) != 0 && Letter(key, k) != letter + 1))
+					valid = false;
+				else
+					key |= (long) (letter + 1) << shift;
+			}
+			if(valid)
+				table.counts.put(key, BigInteger.ONE);
+		}
+		return table;
+	}
+
+	/**
+	 * Joins two tables: every pair of entries agreeing on their common indices
+	 * gives an entry over both scopes, counting the product of their counts
+	 */
+	private static Table Join(Table a, Table b){
+		int[] scope = Union(a.scope, b.scope);
+		int[] fromA = Positions(a.scope, scope);
+		int[] fromB = Positions(b.scope, scope);
+		int[] shared = Intersection(a.scope, b.scope);
+		int[] sharedInA = Positions(a.scope, shared);
+		int[] sharedInB = Positions(b.scope, shared);
+
+		//group the entries of b by their letters at the common indices
+		HashMap<Long, ArrayList<Map.Entry<Long, BigInteger>>> groups = new HashMap<Long, ArrayList<Map.Entry<Long, BigInteger>>>();
+		for(Map.Entry<Long, BigInteger> e : b.counts.entrySet()){
+			long k = Project(e.getKey(), sharedInB);
+			ArrayList<Map.Entry<Long, BigInteger>> group = groups.get(k);
+			if(group == null){
+				group = new ArrayList<Map.Entry<Long, BigInteger>>();
+				groups.put(k, group);
+			}
+			group.add(e);
+		}
+
+		Table joined = new Table(scope);
+		for(Map.Entry<Long, BigInteger> e : a.counts.entrySet()){
+			ArrayList<Map.Entry<Long, BigInteger>> group = groups.get(Project(e.getKey(), sharedInA));
+			if(group == null)
+				continue;
+			for(Map.Entry<Long, BigInteger> f : group){
+				long key = 0;
+				for(int k = 0; k < scope.length; k++){
+					long letter = (fromA[k] >= 0) ? Letter(e.getKey(), fromA[k]) : Letter(f.getKey(), fromB[k]);
+					key |= letter << (5 * k);
+				}
+				joined.counts.put(key, e.getValue().multiply(f.getValue()));
+			}
+		}
+		return joined;
+	}
+
+	/**
+	 * Sums the index out of the table of its bag, keeping the choices of the
+	 * index for sampling. A free index (no category) multiplies every count by 26.
+	 * @param joined
+	 * @param v
+	 * @return the message of the bag to its parent
+	 */
+	private Table SumOut(Table joined, int v){
+		int position = Arrays.binarySearch(joined.scope, v);
+		if(position < 0){
+			Table message = new Table(joined.scope);
+			BigInteger letters = BigInteger.valueOf(CategoryIndex.ALPHABET_SIZE);
+			for(Map.Entry<Long, BigInteger> e : joined.counts.entrySet()){
+				message.counts.put(e.getKey(), e.getValue().multiply(letters));
+			}
+			return message;
+		}
+		int[] rest = new int[joined.scope.length - 1];
+		for(int k = 0, r = 0; k < joined.scope.length; k++){
+			if(k != position)
+				rest[r++] = joined.scope[k];
+		}
+		int[] restPositions = Positions(joined.scope, rest);
+		Table message = new Table(rest);
+		HashMap<Long, ArrayList<Map.Entry<Long, BigInteger>>> groups = new HashMap<Long, ArrayList<Map.Entry<Long, BigInteger>>>();
+		for(Map.Entry<Long, BigInteger> e : joined.counts.entrySet()){
+			long k = Project(e.getKey(), restPositions);
+			BigInteger sum = message.counts.get(k);
+			message.counts.put(k, (sum == null) ? e.getValue() : sum.add(e.getValue()));
+			ArrayList<Map.Entry<Long, BigInteger>> group = groups.get(k);
+			if(group == null){
+				group = new ArrayList<Map.Entry<Long, BigInteger>>();
+				groups.put(k, group);
+			}
+			group.add(e);
+		}
+
+		HashMap<Long, Choice> choices = new HashMap<Long, Choice>();
+		for(Map.Entry<Long, ArrayList<Map.Entry<Long, BigInteger>>> g : groups.entrySet()){
+			ArrayList<Map.Entry<Long, BigInteger>> group = g.getValue();
+			int[] letters = new int[group.size()];
+			BigInteger[] cumulative = new BigInteger[group.size()];
+			BigInteger sum = BigInteger.ZERO;
+			for(int i = 0; i < group.size(); i++){
+				letters[i] = (int) Letter(group.get(i).getKey(), position) - 1;
+				sum = sum.add(group.get(i).getValue());
+				cumulative[i] = sum;
+			}
+			choices.put(g.getKey(), new Choice(letters, cumulative));
+		}
+		this.sampleScopes[v] = rest;
+		this.choices.set(v, choices);
+		return message;
+	}
+
+	/**
+	 * Draws a solution of the puzzle, every solution being equally likely
+	 * @param random
+	 * @return the solution, null if the puzzle has none
+	 */
+	public ArrayList<Character> Sample(Random random){
+		if(Count().signum() == 0)
+			return null;
+		int[] order = this.decomposition.getEliminationOrder();
+		int[] letters = new int[this.puzzle.getPuzzleSize()];
+		for(int step = order.length - 1; step >= 0; step--){
+			int v = order[step];
+			int[] scope = this.sampleScopes[v];
+			if(scope == null){
+				letters[v] = random.nextInt(CategoryIndex.ALPHABET_SIZE);
+				continue;
+			}
+			long key = 0;
+			for(int k = 0; k < scope.length; k++){
+				key |= (long) (letters[scope[k]] + 1) << (5 * k);
+			}
+			//the letters of the scope were drawn from entries with a count, so the choice exists
+			Choice choice = this.choices.get(v).get(key);
+			BigInteger[] cumulative = choice.cumulative;
+			BigInteger draw = Below(cumulative[cumulative.length - 1], random);
+			int i = 0;
+			while(cumulative[i].compareTo(draw) <= 0){
+				i++;
+			}
+			letters[v] = choice.letters[i];
+		}
+		ArrayList<Character> solution = new ArrayList<Character>(letters.length);
+		for(int letter : letters){
+			solution.add(LetterDomains.LetterChar(letter));
+		}
+		return solution;
+	}
+
+	/**
+	 * @return a uniformly drawn integer in [0, bound)
+	 */
+	private static BigInteger Below(BigInteger bound, Random random){
+		//BigInteger(bits, random) reads the low bits of Random, which are poorly
+		//distributed; the high bits serve the bounds which fit
+		if(bound.bitLength() < 31)
+			return BigInteger.valueOf(random.nextInt(bound.intValue()));
+		if(bound.bitLength() < 63){
+			long b = bound.longValue();
+			long draw;
+			do {
+				draw = random.nextLong() >>> (64 - bound.bitLength());
+			} while(draw >= b);
+			return BigInteger.valueOf(draw);
+		}
+		BigInteger draw;
+		do {
+			draw = new BigInteger(bound.bitLength(), random);
+		} while(draw.compareTo(bound) >= 0);
+		return draw;
+	}
+
+	/**
+	 * @return the letter (1 to 26, 0 if unset) at position k of a packed key
+	 */
+	private static long Letter(long key, int k){
+		return (key >>> (5 * k)) & 31;
+	}
+
+	/**
+	 * @return the packed key of the letters at the given positions of the key
+	 */
+	private static long Project(long key, int[] positions){
+		long projected = 0;
+		for(int k = 0; k < positions.length; k++){
+			projected |= Letter(key, positions[k]) << (5 * k);
+		}
+		return projected;
+	}
+
+	/**
+	 * @return for every index of part, its position in scope (-1 if it is not there)
+	 */
+	private static int[] Positions(int[] scope, int[] part){
+		int[] positions = new int[part.length];
+		for(int k = 0; k < part.length; k++){
+			positions[k] = Arrays.binarySearch(scope, part[k]);
+			if(positions[k] < 0)
+				positions[k] = -1;
+		}
+		return positions;
+	}
+
+	private static int[] Distinct(int[] indices){
+		int[] sorted = indices.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for(int i = 0; i < sorted.length; i++){
+			if(n == 0 || sorted[n - 1] != sorted[i])
+				sorted[n++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, n);
+	}
+
+	private static int[] Union(int[] a, int[] b){
+		int[] all = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		return Distinct(all);
+	}
+
+	private static int[] Intersection(int[] a, int[] b){
+		int[] common = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		for(int x : a){
+			if(Arrays.binarySearch(b, x) >= 0)
+				common[n++] = x;
+		}
+		return Arrays.copyOf(common, n);
+	}
+
+}
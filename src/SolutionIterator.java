@@ -0,0 +1,150 @@
+/**
+ * SolutionIterator: pull style access to the solutions of a search
+ * 	Runs the solver's search on a background thread, with a sink handing each
+ * 	solution over through a small bounded queue. The search therefore only runs
+ * 	ahead of the consumer by a few solutions, and close() (or closing the Stream)
+ * 	stops it, so callers taking only the first few solutions do not pay for a
+ * 	full enumeration.
+ * 	
+ * 	The solver must not be used by anything else until the iteration ends.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class SolutionIterator implements Iterator<ArrayList<Character>>, AutoCloseable {
+
+	//number of solutions the search may run ahead of the consumer
+	private static final int QUEUE_CAPACITY = 16;
+	//marks the end of the search in the queue
+	private static final ArrayList<Character> END = new ArrayList<Character>();
+
+	//Holds the solutions found but not yet consumed
+	private BlockingQueue<ArrayList<Character>> queue;
+	//Holds the next solution to return, null if it was not taken from the queue yet
+	private ArrayList<Character> next;
+	//true once the end of the search was taken from the queue
+	private boolean finished;
+	//set by close() to stop the search
+	private volatile boolean closed;
+	//Holds an exception thrown by the search, rethrown to the consumer
+	private volatile RuntimeException failure;
+	//Holds the thread running the search
+	private Thread producer;
+
+	/**
+	 * Constructor, starts searching for the solutions extending the initial assignment
+	 * @param csp configured solver
+	 * @param initial assignment to start from, it is modified by the search
+	 */
+	public SolutionIterator(final BacktrackingCSP csp, final Assignment initial){
+		this.queue = new ArrayBlockingQueue<ArrayList<Character>>(QUEUE_CAPACITY);
+		this.finished = false;
+		this.closed = false;
+		this.producer = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				try {
+					csp.setSolutionSink(new SolutionSink(){
+						@Override
+						public boolean Accept(Assignment solution){
+							return Hand(solution.ToCharacterList());
+						}
+					});
+					if(csp.Start(initial))
+						csp.SearchFromCurrentState();
+				} catch (RuntimeException e) {
+					failure = e;
+				} finally {
+					Hand(END);
+				}
+			}
+		}, "SolutionIterator");
+		this.producer.setDaemon(true);
+		this.producer.start();
+	}
+
+	/**
+	 * Hands a solution over to the consumer, waiting while the queue is full
+	 * @param soln
+	 * @return false if the iterator was closed
+	 */
+	private boolean Hand(ArrayList<Character> soln){
+		try {
+			while(!this.closed){
+				if(this.queue.offer(soln, 10, TimeUnit.MILLISECONDS))
+					return !this.closed;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasNext(){
+		if(this.next == null && !this.finished){
+			try {
+				this.next = this.queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				return false;
+			}
+			if(this.next == END){
+				this.next = null;
+				this.finished = true;
+				if(this.failure != null)
+					throw this.failure;
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public ArrayList<Character> next(){
+		if(!hasNext())
+			throw new NoSuchElementException();
+		ArrayList<Character> soln = this.next;
+		this.next = null;
+		return soln;
+	}
+
+	/**
+	 * Stops the search, remaining solutions are discarded
+	 */
+	@Override
+	public void close(){
+		this.closed = true;
+		this.finished = true;
+		this.next = null;
+		this.queue.clear();
+	}
+
+	/**
+	 * @param csp configured solver
+	 * @param initial assignment to start from
+	 * @return a sequential Stream of the solutions, closing it stops the search
+	 */
+	public static Stream<ArrayList<Character>> Stream(BacktrackingCSP csp, Assignment initial){
+		final SolutionIterator iterator = new SolutionIterator(csp, initial);
+		Spliterator<ArrayList<Character>> spliterator = Spliterators.spliteratorUnknownSize(iterator, 
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(new Runnable(){
+			@Override
+			public void run(){
+				iterator.close();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,58 @@
+/**
+ * SolutionKeySet: O(1) duplicate detection for solutions
+ * 	Stores the PackedAssignment of every solution added, so that checking whether
+ * 	a complete assignment was already found is a hash lookup rather than a scan
+ * 	over every stored result.
+ *
+ * @author dcyoung3
+ */
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SolutionKeySet {
+
+	//Holds the keys of the solutions added so far
+	private Set<PackedAssignment> keys;
+
+	/**
+	 * Constructor, for use by a single thread
+	 */
+	public SolutionKeySet(){
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 * @param concurrent true if several threads add solutions
+	 */
+	public SolutionKeySet(boolean concurrent){
+		this.keys = concurrent ? ConcurrentHashMap.<PackedAssignment>newKeySet() : new HashSet<PackedAssignment>();
+	}
+
+	/**
+	 * Adds the current letters of the assignment
+	 * @param solution
+	 * @return true if they were not added before
+	 */
+	public boolean Add(Assignment solution){
+		return this.keys.add(new PackedAssignment(solution));
+	}
+
+	/**
+	 * @param solution
+	 * @return true if the current letters of the assignment were added before
+	 */
+	public boolean Contains(Assignment solution){
+		return this.keys.contains(new PackedAssignment(solution));
+	}
+
+	public int size(){
+		return this.keys.size();
+	}
+
+	public void Clear(){
+		this.keys.clear();
+	}
+
+}
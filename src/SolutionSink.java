@@ -0,0 +1,25 @@
+/**
+ * SolutionSink: receives the solutions of a search as soon as they are found
+ * 	The solvers pass every solution to their sink (see BacktrackingCSP.setSolutionSink)
+ * 	instead of holding them until the search returns. A sink can stop the search
+ * 	early by returning false, eg: once it has enough solutions.
+ * 	
+ * 	Built in sinks:
+ * 		CollectingSink		stores every solution (the default, into the solver's results)
+ * 		FirstSolutionsSink	stores the first N solutions, then stops the search
+ * 		CountingSink		only counts the solutions, optionally stopping at a limit
+ *
+ * @author dcyoung3
+ */
+public interface SolutionSink {
+
+	/**
+	 * Receives a complete assignment. The assignment belongs to the solver and 
+	 * keeps changing once this returns, sinks keeping it must copy it 
+	 * (eg: with ToCharacterList).
+	 * @param solution
+	 * @return true to continue the search, false to stop it
+	 */
+	boolean Accept(Assignment solution);
+
+}
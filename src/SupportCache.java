@@ -0,0 +1,233 @@
+/**
+ * SupportCache: a bounded cache of the answers to support queries, shared by
+ * 	any number of solvers and threads (see LetterBasedCSP.setSupportCache and
+ * 	WordBasedCSP.setSupportCache)
+ *
+ * 	A support query asks how many words of a category match a partial word
+ * 	(see CategoryIndex.CountMatchingWords). The same partial words come back in
+ * 	sibling subtrees, in both solvers and in every puzzle of a batch using the
+ * 	same category, so their answers are kept, keyed on the CategoryIndex
+ * 	(compared by identity) and the partial word packed into a long:
+ * 		bits 0-3		length of the partial word
+ * 		bits 4+5p to 8+5p	letter at position p, 1 for 'A' to 26 for 'Z', 0 if unassigned
+ * 	Partial words longer than MAX_PATTERN_LENGTH are not cached, their queries
+ * 	go to the index.
+ *
+ * 	An answer holds the number of matching words and, when it was asked for
+ * 	through MatchingWords, the bitset of their ids.
+ *
+ * 	The answers are kept in a direct mapped table: a key has a single slot,
+ * 	chosen by its hash, and an answer evicts the one of another key holding its
+ * 	slot. Lookups take no lock: answers are computed from the index alone and
+ * 	never modified (their fields are final), so a thread reads either a whole
+ * 	answer or an older one, and two threads missing the same key only compute
+ * 	it twice.
+ *
+ * 	A lookup costs about as much as a query of a category of a few hundred
+ * 	words, so the cache pays off with large categories (eg: 3000 words per
+ * 	category cut a WordBasedCSP search to a third of its time) and slows down
+ * 	searches over small ones such as words/wordlist.txt.
+ *
+ * @author dcyoung3
+ */
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SupportCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	//the longest partial word which fits a packed key
+	public static final int MAX_PATTERN_LENGTH = 12;
+
+	/**
+	 * Support: the answer to a query and its key, never modified
+	 */
+	private static final class Support {
+		final CategoryIndex index;
+		final long pattern;
+		final int count;
+		//ids of the matching words, null if they were not asked for
+		final long[] words;
+
+		Support(CategoryIndex index, long pattern, int count, long[] words){
+			this.index = index;
+			this.pattern = pattern;
+			this.count = count;
+			this.words = words;
+		}
+	}
+
+	//Holds the answer kept in every slot, null if the slot is empty
+	private final Support[] table;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	//queries of partial words too long to be cached
+	private final LongAdder uncached;
+
+	/**
+	 * Constructor
+	 */
+	public SupportCache(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity the largest number of answers kept, rounded up to a power of 2
+	 */
+	public SupportCache(int capacity){
+		if(capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("The capacity of a support cache must be in [1, 2^30]: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		this.table = new Support[(size < capacity) ? size << 1 : size];
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+		this.uncached = new LongAdder();
+	}
+
+	/**
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return the packed partial word, -1 if it cannot be packed
+	 */
+	public static long Pack(char[] pattern){
+		if(pattern.length > MAX_PATTERN_LENGTH)
+			return -1;
+		long packed = pattern.length;
+		for(int p = 0; p < pattern.length; p++){
+			if(pattern[p] == 0)
+				continue;
+			int letter = pattern[p] - 'A';
+			if(letter < 0 || letter >= CategoryIndex.ALPHABET_SIZE)
+				return -1;
+			packed |= (long) (letter + 1) << (4 + 5 * p);
+		}
+		return packed;
+	}
+
+	/**
+	 * @param index
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return true if some word of the index matches the pattern
+	 */
+	public boolean HasMatchingWord(CategoryIndex index, char[] pattern){
+		Support support = Lookup(index, pattern, false);
+		return (support == null) ? index.HasMatchingWord(pattern) : support.count > 0;
+	}
+
+	/**
+	 * @param index
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return the number of words of the index matching the pattern
+	 */
+	public int CountMatchingWords(CategoryIndex index, char[] pattern){
+		Support support = Lookup(index, pattern, false);
+		return (support == null) ? index.CountMatchingWords(pattern) : support.count;
+	}
+
+	/**
+	 * Collects the ids of the words matching the pattern (see CategoryIndex.MatchingWords),
+	 * keeping the bitset with the answer
+	 * @param index
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @param words bitset of index.getBlockCount() blocks, overwritten with the matching ids
+	 * @return the number of matching words
+	 */
+	public int MatchingWords(CategoryIndex index, char[] pattern, long[] words){
+		Support support = Lookup(index, pattern, true);
+		if(support == null)
+			return index.MatchingWords(pattern, words);
+		System.arraycopy(support.words, 0, words, 0, support.words.length);
+		return support.count;
+	}
+
+	/**
+	 * @param index
+	 * @param pattern
+	 * @param words true if the answer must hold the ids of the matching words
+	 * @return the answer, from the cache or computed and cached, null if the pattern cannot be cached
+	 */
+	private Support Lookup(CategoryIndex index, char[] pattern, boolean words){
+		long packed = Pack(pattern);
+		if(packed == -1){
+			this.uncached.increment();
+			return null;
+		}
+		long h = (packed ^ System.identityHashCode(index)) * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h >>> 32) & (this.table.length - 1);
+		Support support = this.table[slot];
+		if(support != null && support.index == index && support.pattern == packed){
+			if(!words || support.words != null){
+				this.hits.increment();
+				return support;
+			}
+		} else if(support != null){
+			this.evictions.increment();
+		}
+		this.misses.increment();
+		if(words){
+			long[] set = new long[index.getBlockCount()];
+			support = new Support(index, packed, index.MatchingWords(pattern, set), set);
+		} else {
+			support = new Support(index, packed, index.CountMatchingWords(pattern), null);
+		}
+		this.table[slot] = support;
+		return support;
+	}
+
+	/**
+	 * Removes every answer, the counters are kept
+	 */
+	public void Clear(){
+		Arrays.fill(this.table, null);
+	}
+
+	public long getHits(){
+		return this.hits.sum();
+	}
+
+	public long getMisses(){
+		return this.misses.sum();
+	}
+
+	public long getEvictions(){
+		return this.evictions.sum();
+	}
+
+	/**
+	 * @return the number of queries of partial words too long to be cached
+	 */
+	public long getUncached(){
+		return this.uncached.sum();
+	}
+
+	/**
+	 * @return the share of the cacheable queries answered from the cache
+	 */
+	public double getHitRate(){
+		long hits = getHits();
+		long queries = hits + getMisses();
+		return (queries == 0) ? 0 : (double) hits / queries;
+	}
+
+	/**
+	 * @return the number of answers kept
+	 */
+	public int size(){
+		int size = 0;
+		for(Support support : this.table){
+			if(support != null)
+				size++;
+		}
+		return size;
+	}
+
+	@Override
+	public String toString(){
+		return "Support cache: " + size() + " answers, " + getHits() + " hits, " + getMisses() + " misses ("
+				+ String.format("%.1f%%", 100 * getHitRate()) + " hit rate), " + getEvictions() + " evictions, "
+				+ getUncached() + " uncached";
+	}
+
+}
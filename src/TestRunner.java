@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.HashSet;
 
 public class TestRunner {
 	
@@ -49,6 +50,22 @@ public class TestRunner {
 		System.out.println("Completed Test: testReadPuzzleFile( " + file + " )");
 	}
 	
+	public void testArcConsistency(String dbFile, String pFile){
+		this.printSeparator();
+		System.out.println("Beginning Test: testArcConsistency( " + dbFile + ", " + pFile + " )");
+		WordDatabase db = new WordDatabase();
+		WordFileReader fr = new WordFileReader(db);
+		
+		fr.readDatabaseFile(dbFile);
+		
+		Puzzle p = fr.readPuzzleFile(pFile);
+		
+		ReducedProblem reduced = new ArcConsistency(p, db).Reduce();
+		reduced.PrintReducedProblem();
+		
+		System.out.println("Completed Test: testArcConsistency( " + dbFile + ", " + pFile + " )");
+	}
+	
 	public void testLetterBasedCSP(String dbFile, String pFile){
 		this.printSeparator();
 		System.out.println("Beginning Test: testLetterBasedCSP( " + dbFile + ", " + pFile + " )");
@@ -83,12 +100,46 @@ public class TestRunner {
 		WordBasedCSP csp = new WordBasedCSP(p, db);
 		ArrayList<Character> assignment = getBlankAssignment(p);
 		
+		SearchTrace trace = new SearchTrace(TraceMode.TEXT, System.out);
+		csp.setSearchTrace(trace);
 		csp.RecursiveBacktracking(assignment, 0);
+		trace.close();
 		
 		csp.printResults();
 		System.out.println("Completed Test: testWordBasedCSP( " + dbFile + ", " + pFile + " )");
 	}
 	
+	public void testPropagationModes(WordDatabase db, Puzzle p, String name){
+		testPropagationModes(db, p, name, new Assignment(p.getPuzzleSize()));
+	}
+	
+	public void testPropagationModes(WordDatabase db, Puzzle p, String name, Assignment initial){
+		this.printSeparator();
+		System.out.println("Beginning Test: testPropagationModes( " + name + " )");
+		
+		HashSet<ArrayList<Character>> expected = null;
+		for(PropagationMode mode : PropagationMode.values()){
+			LetterBasedCSP lb = new LetterBasedCSP(p, db);
+			lb.setPropagationMode(mode);
+			lb.RecursiveBacktracking(new Assignment(initial));
+			HashSet<ArrayList<Character>> solutions = new HashSet<ArrayList<Character>>(lb.getResults());
+			if(expected == null)
+				expected = solutions;
+			System.out.println("LetterBasedCSP " + mode + ": " + solutions.size() + " solutions"
+					+ (solutions.equals(expected) ? "" : ", MISMATCH"));
+			
+			if(mode == PropagationMode.FORWARD_CHECKING)
+				continue;
+			WordBasedCSP wb = new WordBasedCSP(p, db);
+			wb.setPropagationMode(mode);
+			wb.RecursiveBacktracking(new Assignment(initial), 0);
+			solutions = new HashSet<ArrayList<Character>>(wb.getResults());
+			System.out.println("WordBasedCSP " + mode + ": " + solutions.size() + " solutions"
+					+ (solutions.equals(expected) ? "" : ", MISMATCH"));
+		}
+		System.out.println("Completed Test: testPropagationModes( " + name + " )");
+	}
+	
 	public ArrayList<Character> getBlankAssignment(Puzzle p){
 		ArrayList<Character> assignment = new ArrayList<Character>();
 		for (int i = 0; i < p.getPuzzleSize(); i++){
@@ -97,6 +148,19 @@ public class TestRunner {
 		return assignment;
 	}
 	
+	/**
+	 * @param letters a letter per index, '.' for an unassigned index
+	 * @return the assignment
+	 */
+	public Assignment getAssignment(String letters){
+		Assignment assignment = new Assignment(letters.length());
+		for(int i = 0; i < letters.length(); i++){
+			if(letters.charAt(i) != '.')
+				assignment.Set(i, letters.charAt(i));
+		}
+		return assignment;
+	}
+	
 	private void printSeparator(){
 		System.out.println("\n-----------------------------------------------------"
 				+ "---------------------------------------------------------\n");
@@ -107,6 +171,7 @@ public class TestRunner {
 		tr.testWordDatabase();
 		tr.testReadDatabaseFile(dbFile);
 		tr.testReadPuzzleFile("./words/puzzle1.txt");
+		tr.testArcConsistency(dbFile, "./words/puzzle1.txt");
 		
 		for(int i = 1; i < 6; i++ ){
 			tr.testLetterBasedCSP(dbFile, "./words/puzzle" + i + ".txt");
@@ -114,6 +179,37 @@ public class TestRunner {
 			
 		}
 		
+		WordDatabase db = new WordDatabase();
+		WordFileReader fr = new WordFileReader(db);
+		fr.readDatabaseFile(dbFile);
+		for(int i = 1; i < 6; i++ ){
+			String pFile = "./words/puzzle" + i + ".txt";
+			tr.testPropagationModes(db, fr.readPuzzleFile(pFile), pFile);
+		}
+		
+		//a category whose only index is also in other categories, and which has no word of its length
+		Puzzle p = fr.readPuzzleFile("./words/puzzle1.txt");
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		indices.add(p.getPuzzleSize() - 1);
+		p.getCategoryIndexMap().put("number", indices);
+		p.GenerateInvertedMap();
+		tr.testPropagationModes(db, p, "./words/puzzle1.txt with number: " + p.getPuzzleSize());
+		
+		//letters given before the search, filling a category with a letter sequence which is not a word
+		for(String given : new String[]{"NZJ.A..YE", "N.E.A..Y."}){
+			tr.testPropagationModes(db, fr.readPuzzleFile("./words/puzzle1.txt"), "./words/puzzle1.txt from " + given, 
+					tr.getAssignment(given));
+		}
+		
+		for(PuzzleGenerator.Shape shape : PuzzleGenerator.Shape.values()){
+			PuzzleGenerator generator = new PuzzleGenerator(shape.ordinal());
+			generator.setShape(shape);
+			generator.setWordsPerCategory(60);
+			generator.setSatisfiable(true);
+			WordDatabase generated = generator.GenerateDictionary();
+			tr.testPropagationModes(generated, generator.GeneratePuzzle(generated), "PuzzleGenerator " + shape);
+		}
+		
 	}
 
 }
@@ -0,0 +1,15 @@
+/**
+ * TraceMode: what a SearchTrace does with the events of a search
+ * 	OFF			nothing, the solvers skip the trace calls entirely
+ * 	TEXT		renders the arrow tree (" -> NAE -> NEE ... -> backtrack") to a 
+ * 				buffered stream, eg: a file under results/traces
+ * 	BINARY		writes a compact binary event log, which TraceRenderer turns 
+ * 				into the same arrow tree text offline
+ *
+ * @author dcyoung3
+ */
+public enum TraceMode {
+	OFF,
+	TEXT,
+	BINARY
+}
@@ -0,0 +1,205 @@
+/**
+ * TraceRenderer: renders search trace events as the arrow tree text format
+ * 		root -> NAE -> NEE -> MAN -> DYE(found result: [N, N, E, M, A, N, D, Y, E])
+ * 	                                  -> backtrack
+ * 	Used by SearchTrace in TEXT mode, and offline (see main) to render a log 
+ * 	written in BINARY mode.
+ * 	
+ * 	Binary log layout (big endian, as written by DataOutputStream):
+ * 		int magic, int version, int puzzle size, int category count, then per
+ * 		category: UTF name, int word count, UTF word per word; then the events 
+ * 		as longs until the end of the file. 
+ * 	An event long holds [type:3][depth:13][category + 1:16][value:32]; a category
+ * 	of 0 means the value is a letter (0 = 'A'), otherwise it is a word id of
+ * 	that category. A SOLUTION event is followed by value longs holding the 
+ * 	packed letters of the solution (5 bits per letter, 12 letters per long).
+ *
+ * @author dcyoung3
+ */
+import java.io.*;
+
+public class TraceRenderer {
+
+	public static final int MAGIC = 0x57505452;
+	public static final int VERSION = 1;
+
+	public static final int NODE = 1;
+	public static final int SOLUTION = 2;
+	public static final int BACKTRACK = 3;
+
+	//number of letters packed into one long of a SOLUTION event
+	public static final int LETTERS_PER_LONG = 12;
+
+	//indentation of one level of the tree
+	private static final String INDENT = "       ";
+
+	//number of letters in a solution
+	private int puzzleSize;
+	//Holds the words of every category ordinal, as referred to by the events
+	private String[][] words;
+	//Holds the stream the text is written to
+	private Writer out;
+
+	/**
+	 * Constructor
+	 * @param puzzleSize
+	 * @param words the words of every category ordinal
+	 * @param out
+	 */
+	public TraceRenderer(int puzzleSize, String[][] words, Writer out){
+		this.puzzleSize = puzzleSize;
+		this.words = words;
+		this.out = out;
+	}
+
+	/**
+	 * @param type
+	 * @param depth
+	 * @param category ordinal, or -1 for a letter
+	 * @param value word id or letter
+	 * @return the event long
+	 */
+	public static long Encode(int type, int depth, int category, int value){
+		return ((long) type << 61) | ((long) (depth & 0x1FFF) << 48) 
+				| ((long) ((category + 1) & 0xFFFF) << 32) | (value & 0xFFFFFFFFL);
+	}
+
+	public static int Type(long event){
+		return (int) (event >>> 61);
+	}
+
+	/**
+	 * @param puzzleSize
+	 * @return the number of value longs following a SOLUTION event
+	 */
+	public static int SolutionLongs(int puzzleSize){
+		return (puzzleSize + LETTERS_PER_LONG - 1) / LETTERS_PER_LONG;
+	}
+
+	/**
+	 * Renders one event
+	 * @param event
+	 * @param payload the longs following a SOLUTION event
+	 * @param offset position of the first of them in the payload array
+	 * @throws IOException
+	 */
+	public void Render(long event, long[] payload, int offset) throws IOException{
+		int depth = (int) (event >>> 48) & 0x1FFF;
+		int category = ((int) (event >>> 32) & 0xFFFF) - 1;
+		int value = (int) event;
+		switch(Type(event)){
+		case NODE:
+			this.out.write(" -> ");
+			if(category < 0)
+				this.out.write(LetterDomains.LetterChar(value));
+			else
+				this.out.write(this.words[category][value]);
+			break;
+		case SOLUTION:
+			this.out.write("(found result: [");
+			for(int i = 0; i < this.puzzleSize; i++){
+				int code = (int) (payload[offset + i / LETTERS_PER_LONG] >>> ((i % LETTERS_PER_LONG) * 5)) & 31;
+				if(i > 0)
+					this.out.write(", ");
+				this.out.write(code == 0 ? "null" : String.valueOf((char) ('A' + code - 1)));
+			}
+			this.out.write("])\n");
+			Indent(depth);
+			break;
+		case BACKTRACK:
+			this.out.write(" -> backtrack\n");
+			Indent(depth - 1);
+			break;
+		}
+	}
+
+	private void Indent(int depth) throws IOException{
+		for (int i = 0; i < depth; i++) {
+			this.out.write(INDENT);
+		}
+	}
+
+	/**
+	 * Writes the header of a binary log
+	 * @param out
+	 * @param puzzleSize
+	 * @param categories
+	 * @param words the words of every category ordinal
+	 * @throws IOException
+	 */
+	public static void WriteHeader(DataOutputStream out, int puzzleSize, String[] categories, String[][] words) throws IOException{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(puzzleSize);
+		out.writeInt(categories.length);
+		for(int c = 0; c < categories.length; c++){
+			out.writeUTF(categories[c]);
+			out.writeInt(words[c].length);
+			for(String w : words[c]){
+				out.writeUTF(w);
+			}
+		}
+	}
+
+	/**
+	 * Renders a whole binary log as text
+	 * @param in the binary log
+	 * @param out receives the text
+	 * @throws IOException
+	 */
+	public static void RenderBinaryLog(InputStream in, Writer out) throws IOException{
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if(data.readInt() != MAGIC || data.readInt() != VERSION)
+			throw new IOException("Not a search trace log");
+		int puzzleSize = data.readInt();
+		String[][] words = new String[data.readInt()][];
+		for(int c = 0; c < words.length; c++){
+			data.readUTF();
+			words[c] = new String[data.readInt()];
+			for(int w = 0; w < words[c].length; w++){
+				words[c][w] = data.readUTF();
+			}
+		}
+		TraceRenderer renderer = new TraceRenderer(puzzleSize, words, out);
+		long[] payload = new long[SolutionLongs(puzzleSize)];
+		while(true){
+			long event;
+			try {
+				event = data.readLong();
+			} catch (EOFException e) {
+				break;
+			}
+			if(Type(event) == SOLUTION){
+				for(int i = 0; i < payload.length; i++){
+					payload[i] = data.readLong();
+				}
+			}
+			renderer.Render(event, payload, 0);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Renders a binary log to the console or a text file
+	 * @param args binary log file [, text file]
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1){
+			System.out.println("Usage: TraceRenderer <binary log> [<text file>]");
+			return;
+		}
+		try {
+			InputStream in = new FileInputStream(args[0]);
+			Writer out = (args.length > 1) ? new BufferedWriter(new FileWriter(args[1])) 
+					: new BufferedWriter(new OutputStreamWriter(System.out));
+			RenderBinaryLog(in, out);
+			in.close();
+			if(args.length > 1)
+				out.close();
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + args[0] + "\"\t could not be rendered.");
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * TreeDecomposition: a tree decomposition of the constraint graph of a puzzle
+ * 	The vertices of the graph are the indices of the puzzle, two indices being
+ * 	adjacent if some category holds both (see Puzzle.getCategoryIndexMap), so
+ * 	the indices of every category form a clique.
+ *
+ * 	The decomposition is built from an elimination ordering chosen greedily,
+ * 	eliminating first the index whose neighbours need the fewest fill edges to
+ * 	become a clique (ties to the fewest neighbours, then the lowest index). The
+ * 	bag of an index is the index with its neighbours eliminated after it, and the
+ * 	parent of the bag is the bag of the first of those neighbours to be
+ * 	eliminated; indices without such neighbours are roots (one per connected
+ * 	component). Every category lies in the bag of its first eliminated index.
+ * 	The width (size of the largest bag - 1) bounds the work of SolutionCounter.
+ *
+ * @author dcyoung3
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class TreeDecomposition {
+
+	//Holds the indices in elimination order, every bag comes before its parent
+	private int[] order;
+	//Holds the position of every index in the elimination order
+	private int[] position;
+	//Holds the bag of every index, in increasing index order
+	private int[][] bags;
+	//Holds the index whose bag is the parent of the bag of every index, -1 for a root
+	private int[] parents;
+	//Holds the index whose bag holds each category ordinal (see Puzzle.getCategories)
+	private int[] categoryBags;
+	private int width;
+
+	/**
+	 * Constructor
+	 * @param puzzle
+	 */
+	public TreeDecomposition(Puzzle puzzle){
+		int size = puzzle.getPuzzleSize();
+		int[][] categoryIndices = puzzle.getCategoryIndexArrays();
+		BitSet[] adjacent = new BitSet[size];
+		for(int i = 0; i < size; i++){
+			adjacent[i] = new BitSet(size);
+		}
+		for(int[] indices : categoryIndices){
+			for(int a : indices){
+				for(int b : indices){
+					if(a != b)
+						adjacent[a].set(b);
+				}
+			}
+		}
+
+		this.order = new int[size];
+		this.position = new int[size];
+		this.bags = new int[size][];
+		this.parents = new int[size];
+		boolean[] eliminated = new boolean[size];
+		this.width = 0;
+		for(int step = 0; step < size; step++){
+			int best = -1;
+			long bestFill = 0;
+			for(int v = 0; v < size; v++){
+				if(eliminated[v])
+					continue;
+				long fill = FillEdges(adjacent, v);
+				long rank = fill * (size + 1) + adjacent[v].cardinality();
+				if(best == -1 || rank < bestFill){
+					best = v;
+					bestFill = rank;
+				}
+			}
+			//the bag is the index and its neighbours left, which become a clique
+			BitSet neighbours = adjacent[best];
+			int[] bag = new int[neighbours.cardinality() + 1];
+			int k = 0;
+			for(int u = neighbours.nextSetBit(0); u >= 0; u = neighbours.nextSetBit(u + 1)){
+				bag[k++] = u;
+				adjacent[u].or(neighbours);
+				adjacent[u].clear(u);
+				adjacent[u].clear(best);
+			}
+			bag[k] = best;
+			Arrays.sort(bag);
+			this.bags[best] = bag;
+			this.width = Math.max(this.width, bag.length - 1);
+			this.order[step] = best;
+			this.position[best] = step;
+			eliminated[best] = true;
+		}
+
+		//the parent is the neighbour eliminated first
+		for(int v = 0; v < size; v++){
+			this.parents[v] = -1;
+			for(int u : this.bags[v]){
+				if(u != v && (this.parents[v] == -1 || this.position[u] < this.position[this.parents[v]]))
+					this.parents[v] = u;
+			}
+		}
+		this.categoryBags = new int[categoryIndices.length];
+		for(int c = 0; c < categoryIndices.length; c++){
+			this.categoryBags[c] = -1;
+			for(int index : categoryIndices[c]){
+				if(this.categoryBags[c] == -1 || this.position[index] < this.position[this.categoryBags[c]])
+					this.categoryBags[c] = index;
+			}
+		}
+	}
+
+	/**
+	 * @param adjacent
+	 * @param v
+	 * @return the number of edges missing between the neighbours of v
+	 */
+	private static long FillEdges(BitSet[] adjacent, int v){
+		long fill = 0;
+		BitSet neighbours = adjacent[v];
+		for(int a = neighbours.nextSetBit(0); a >= 0; a = neighbours.nextSetBit(a + 1)){
+			for(int b = neighbours.nextSetBit(a + 1); b >= 0; b = neighbours.nextSetBit(b + 1)){
+				if(!adjacent[a].get(b))
+					fill++;
+			}
+		}
+		return fill;
+	}
+
+	/**
+	 * @return the indices in elimination order, every bag coming before its parent
+	 */
+	public int[] getEliminationOrder(){
+		return this.order;
+	}
+
+	/**
+	 * @param index
+	 * @return the bag of the index: the index and its neighbours eliminated after it, in increasing order
+	 */
+	public int[] getBag(int index){
+		return this.bags[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the index whose bag is the parent of the bag of the index, -1 for a root
+	 */
+	public int getParent(int index){
+		return this.parents[index];
+	}
+
+	/**
+	 * @param category ordinal of the category (see Puzzle.getCategories)
+	 * @return the index whose bag holds every index of the category, -1 if it has none
+	 */
+	public int getCategoryBag(int category){
+		return this.categoryBags[category];
+	}
+
+	/**
+	 * @return the indices whose bags are roots, one per connected component
+	 */
+	public int[] getRoots(){
+		ArrayList<Integer> roots = new ArrayList<Integer>();
+		for(int v : this.order){
+			if(this.parents[v] == -1)
+				roots.add(v);
+		}
+		int[] result = new int[roots.size()];
+		for(int i = 0; i < result.length; i++){
+			result[i] = roots.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the size of the largest bag minus one
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+}
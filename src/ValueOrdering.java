@@ -0,0 +1,14 @@
+/**
+ * ValueOrdering: the order in which WordBasedCSP tries the words of a category
+ * 	DATABASE_ORDER		the order of the word list in the database file
+ * 	LEAST_CONSTRAINING	the words leaving the most options for the neighbouring
+ * 						categories (those sharing an index with the category) first.
+ * 						Words which leave some neighbour without any option go last,
+ * 						ties keep the database order.
+ *
+ * @author dcyoung3
+ */
+public enum ValueOrdering {
+	DATABASE_ORDER,
+	LEAST_CONSTRAINING
+}
@@ -0,0 +1,25 @@
+/**
+ * VariableOrdering: how a solver selects the next variable to assign
+ * 	FIRST_UNASSIGNED	the naive order: the first index without a letter 
+ * 						(or, word based, the first category of that index)
+ * 	MRV					minimum remaining values: the variable with the fewest
+ * 						values left in its live domain (letters permitted at an
+ * 						index, or words of a category matching its partial word)
+ * 	DEGREE				the variable involved in the most constraints: the index
+ * 						with the most categories (see Puzzle.getIndexCategoryMap), 
+ * 						or the category sharing indices with the most categories
+ * 	DOM_WDEG			the variable with the smallest ratio of live domain size 
+ * 						to the summed weights of its categories, where a category's
+ * 						weight grows every time it causes a dead end in the search
+ * 	Ties are broken in favour of the lowest index (LetterBasedCSP) or the lowest
+ * 	category ordinal (WordBasedCSP), which for WordBasedCSP is not always the
+ * 	category FIRST_UNASSIGNED would pick.
+ *
+ * @author dcyoung3
+ */
+public enum VariableOrdering {
+	FIRST_UNASSIGNED,
+	MRV,
+	DEGREE,
+	DOM_WDEG
+}
@@ -1,27 +1,118 @@
 /**
  * WordBasedCSP: 
- *  A wordVar is a the three indices linked to a category (as defined by the puzzle definition)
+ *  A wordVar is the indices linked to a category (as defined by the puzzle definition),
+ *  any number of them: the domain only holds the words of the category with that
+ *  many letters (see CategoryIndex.getLengthIndex)
  *	A wordVal is the assigned letters at the indices linked to a category 
  *
  *  Variables X: a wordVar
  *  Domain D: all potential wordVals from the linked category
  *  Constraints: for every wordVar, the wordVal assigned to that wordVar 
  *  must exist in the wordVal's category
+ *
+ *  By default a wordVal overwrites the letters already at its indices, so the same
+ *  complete assignment can be reached through different category orders and
+ *  duplicates are dropped through a hash set of packed solutions. In canonical
+ *  search (setCanonicalSearch) a category only offers the words agreeing with the
+ *  letters already at its indices, so every complete assignment is reached by 
+ *  exactly one path and no duplicate is ever generated.
+ *
+ *  With the LEAST_CONSTRAINING value ordering (see ValueOrdering) the words of
+ *  the selected category are ranked by the number of words they leave to the
+ *  neighbouring categories. The words of each neighbour matching its partial word
+ *  are collected once per node as a bitset, which is ANDed with the index masks
+ *  of a candidate's shared letters. The count only depends on those letters, so
+ *  it is computed once per tuple of shared letters at each node.
+ *
+ *  In COMPACT_TABLE mode (see PropagationMode) a CompactTablePropagator keeps the
+ *  words of every category consistent with the letter domains of its indices,
+ *  replacing CheckIfConsistent: a category only offers the words left in its
+ *  table, so the search is canonical and fails as soon as any table is empty.
  *  
  * @author dcyoung3, nprince2, cwan3
  */
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.regex.Pattern;
+import java.util.HashMap;
 
-public class WordBasedCSP {
+public class WordBasedCSP implements BacktrackingCSP {
+	
+	//neighbours sharing at most this many letters keep their counts in a table 
+	//of 26^MEMO_TABLE_LETTERS entries, the others in a hash map
+	private static final int MEMO_TABLE_LETTERS = 3;
+	//tuples of shared letters longer than this are not packed, their counts are not kept
+	private static final int MEMO_MAX_LETTERS = 12;
 	
 	//Holds the puzzle defining the current CSP
 	private Puzzle puzzle;
 	//Holds the database of possible words for lookup by category
 	private WordDatabase db;
+	//Holds the categories of the puzzle, the solver refers to them by ordinal
+	private String[] categories;
+	//Holds the indices belonging to each category ordinal
+	private int[][] categoryIndices;
+	//Holds the category ordinals connected to each index
+	private int[][] indexCategories;
+	//Holds the ordinals of the categories sharing an index with each category ordinal
+	private int[][] categoryNeighbours;
+	//Holds the word index of each category ordinal
+	private CategoryIndex[] categoryWords;
+	//Holds a reusable partial word buffer for each category, so checks do not build strings
+	private char[][] patternBuffers;
 	//Holds the final set of solutions. Each solution is an array of characters
 	private ArrayList<ArrayList<Character>> results;
+	//Holds the sink receiving the solutions, by default collecting into results
+	private SolutionSink sink;
+	//Holds the keys of the solutions passed to the sink, to drop duplicates
+	private SolutionKeySet solutionKeys;
+	//true if words must agree with the letters already assigned (no duplicates are generated)
+	private boolean canonicalSearch;
+	//true once the sink or the search limit asked to stop the search
+	private boolean stopped;
+	//Holds the limits of the current search, null if there are none
+	private SearchBudget.Limit limit;
+	//false if preprocessing proved that the puzzle has no solution
+	private boolean solvable;
+	//Holds the propagation done after each assignment, CHECK_ONLY or COMPACT_TABLE
+	private PropagationMode propagationMode;
+	//Holds the Compact-Table propagator, maintained in COMPACT_TABLE mode
+	private CompactTablePropagator compactTable;
+	//Holds the cache answering the support queries, null if there is none
+	private SupportCache supportCache;
+	//Holds the strategy used to select the next category
+	private VariableOrdering variableOrdering;
+	//Holds the learned weight of each category ordinal (DOM_WDEG), incremented on every dead end it causes
+	private int[] categoryWeights;
+	//Holds the order in which the words of a category are tried
+	private ValueOrdering valueOrdering;
+	//Holds, for each category ordinal and each of its neighbours, the positions 
+	//in the neighbour of the shared indices and the positions of the same indices in the category
+	private int[][][] sharedNeighbourPositions;
+	private int[][][] sharedOwnPositions;
+	//Holds a reusable pattern per category ordinal, with letters only at shared positions
+	private char[][] sharedPatternBuffers;
+	//Holds a reusable bitset of matching word ids per category ordinal
+	private long[][] matchingWordBuffers;
+	//Holds a reusable buffer of sort keys used when ranking words
+	private long[] rankingKeys;
+	//Holds the number of words a neighbour keeps for each tuple of shared letters,
+	//valid where the stamp is the current one, allocated by the first ranking
+	private int[] sharedLetterCounts;
+	private int[] sharedLetterStamps;
+	private int sharedLetterStamp;
+	//Holds the same counts for neighbours sharing more than MEMO_TABLE_LETTERS letters
+	private HashMap<Long, Integer> sharedLetterCountMap;
+	//Holds the ordered word ids of every depth of the search
+	private ArrayList<int[]> valueBuffers;
+	//Holds the assignment being searched, set by Start
+	private Assignment current;
+	//Holds the trace recording the search tree, OFF unless set by setSearchTrace
+	private SearchTrace trace;
+	//true if the trace is enabled, checked before every trace call
+	private boolean tracing;
+	//Holds the counters of the work done by the search
+	private SearchStats stats;
 	
 	
 	
@@ -34,111 +125,562 @@ public class WordBasedCSP {
 		this.puzzle = puzzle;
 		this.db = db;
 		this.results = new ArrayList<ArrayList<Character>>();
+		this.sink = new CollectingSink(this.results);
+		this.solutionKeys = new SolutionKeySet();
+		this.canonicalSearch = false;
+		this.stopped = false;
+		if(!db.IsIndexed()){
+			db.BuildIndex();
+		}
+		this.categories = puzzle.getCategories();
+		this.categoryIndices = puzzle.getCategoryIndexArrays();
+		this.indexCategories = puzzle.getIndexCategoryArrays();
+		this.categoryNeighbours = puzzle.getCategoryNeighbourArrays();
+		this.categoryWords = new CategoryIndex[this.categories.length];
+		this.patternBuffers = new char[this.categories.length][];
+		for(int c = 0; c < this.categories.length; c++){
+			this.categoryWords[c] = db.getCategoryIndex(this.categories[c], this.categoryIndices[c].length);
+			this.patternBuffers[c] = new char[this.categoryIndices[c].length];
+		}
+		this.solvable = true;
+		this.propagationMode = PropagationMode.CHECK_ONLY;
+		this.variableOrdering = VariableOrdering.FIRST_UNASSIGNED;
+		this.categoryWeights = new int[this.categories.length];
+		Arrays.fill(this.categoryWeights, 1);
+		this.valueOrdering = ValueOrdering.DATABASE_ORDER;
+		this.valueBuffers = new ArrayList<int[]>();
+		this.trace = SearchTrace.OFF;
+		this.tracing = false;
+		this.stats = new SearchStats();
+		//the time spent loading the database, which the solver was built on
+		this.stats.AddPhaseTime(SearchStats.Phase.PARSE, db.getParseNanos());
+		this.stats.AddPhaseTime(SearchStats.Phase.INDEX, db.getIndexNanos());
+		DefineSharedPositions();
+	}
+	
+	/**
+	 * Builds the shared position tables and the buffers used by the
+	 * LEAST_CONSTRAINING value ordering
+	 */
+	private void DefineSharedPositions(){
+		int maxWords = 0;
+		this.sharedNeighbourPositions = new int[this.categories.length][][];
+		this.sharedOwnPositions = new int[this.categories.length][][];
+		this.sharedPatternBuffers = new char[this.categories.length][];
+		this.matchingWordBuffers = new long[this.categories.length][];
+		for(int c = 0; c < this.categories.length; c++){
+			int[] neighbours = this.categoryNeighbours[c];
+			this.sharedNeighbourPositions[c] = new int[neighbours.length][];
+			this.sharedOwnPositions[c] = new int[neighbours.length][];
+			for(int k = 0; k < neighbours.length; k++){
+				int[] neighbourIndices = this.categoryIndices[neighbours[k]];
+				ArrayList<Integer> theirs = new ArrayList<Integer>();
+				ArrayList<Integer> ours = new ArrayList<Integer>();
+				for(int p = 0; p < neighbourIndices.length; p++){
+					for(int q = 0; q < this.categoryIndices[c].length; q++){
+						if(this.categoryIndices[c][q] == neighbourIndices[p]){
+							theirs.add(p);
+							ours.add(q);
+						}
+					}
+				}
+				this.sharedNeighbourPositions[c][k] = new int[theirs.size()];
+				this.sharedOwnPositions[c][k] = new int[ours.size()];
+				for(int i = 0; i < theirs.size(); i++){
+					this.sharedNeighbourPositions[c][k][i] = theirs.get(i);
+					this.sharedOwnPositions[c][k][i] = ours.get(i);
+				}
+			}
+			this.sharedPatternBuffers[c] = new char[this.categoryIndices[c].length];
+			if(this.categoryWords[c] != null){
+				this.matchingWordBuffers[c] = new long[this.categoryWords[c].getBlockCount()];
+				maxWords = Math.max(maxWords, this.categoryWords[c].size());
+			}
+		}
+		this.rankingKeys = new long[maxWords];
 	}
 	
 	/**
-	 * 
+	 * Selects canonical search, where a category only offers the words agreeing 
+	 * with the letters already assigned at its indices. The search then never 
+	 * reaches the same complete assignment twice, so no duplicate check is needed.
+	 * Off by default.
+	 * @param canonical
+	 */
+	public void setCanonicalSearch(boolean canonical){
+		this.canonicalSearch = canonical;
+	}
+	
+	/**
+	 * Selects the propagation done after each assignment, CHECK_ONLY by default
+	 * @param mode CHECK_ONLY or COMPACT_TABLE
+	 */
+	public void setPropagationMode(PropagationMode mode){
+		if(mode == PropagationMode.FORWARD_CHECKING)
+			throw new IllegalArgumentException("WordBasedCSP does not support " + mode);
+		this.propagationMode = mode;
+	}
+	
+	/**
+	 * Selects the order in which the words of a category are tried, DATABASE_ORDER by default
+	 * @param ordering
+	 */
+	public void setValueOrdering(ValueOrdering ordering){
+		this.valueOrdering = ordering;
+	}
+	
+	/**
+	 * Answers the support queries (checks, live domain sizes and least constraining
+	 * value counts) from a cache, which may be shared with other solvers and 
+	 * threads (off by default)
+	 * @param cache the cache, null to query the category indices directly
+	 */
+	@Override
+	public void setSupportCache(SupportCache cache){
+		this.supportCache = cache;
+	}
+	
+	/**
+	 * Records the search tree into the given trace, SearchTrace.OFF by default.
+	 * The caller closes the trace once the search is over.
+	 * @param trace
+	 */
+	public void setSearchTrace(SearchTrace trace){
+		this.trace = (trace == null) ? SearchTrace.OFF : trace;
+		this.trace.Attach(this.puzzle.getPuzzleSize(), this.categories, this.categoryWords);
+		this.tracing = this.trace.IsEnabled();
+	}
+	
+	/**
+	 * Constructor, searches the space left by preprocessing (see ArcConsistency):
+	 * every category only offers its reduced word list as domain
+	 * @param reduced
+	 */
+	public WordBasedCSP(ReducedProblem reduced){
+		this(reduced.getPuzzle(), reduced.getWordDatabase());
+		this.solvable = reduced.IsSolvable();
+	}
+	
+	/**
+	 * Selects the strategy used to pick the next category, FIRST_UNASSIGNED by default
+	 * @param ordering
+	 */
+	public void setVariableOrdering(VariableOrdering ordering){
+		this.variableOrdering = ordering;
+	}
+	
+	/**
+	 * Selects a category according to the variable ordering (see VariableOrdering).
+	 * The naive implementation takes the first category of the first undefined index.
 	 * @param assignment
-	 * @return a category with any unassigned characters
+	 * @return the ordinal of a category with any unassigned characters
 	 */
-	private String SelectUnassignedVariable(ArrayList<Character> assignment){
+	private int SelectUnassignedVariable(Assignment assignment){
+		if(this.variableOrdering != VariableOrdering.FIRST_UNASSIGNED)
+			return SelectMostConstrainedVariable(assignment);
 		//should return a category
 		int index = 0;
 		for(int i = 0; i <assignment.size(); i++){
-			if (assignment.get(i) == null){
+			if (!assignment.IsAssigned(i)){
 				index = i;
 				break;
 			}
 		}
-		return this.puzzle.getIndexCategoryMap().get(index).get(0);
+		return this.indexCategories[index][0];
 	}
 	
 	/**
-	 * 
-	 * @param category
-	 * @return a domain of possible values for the variable
+	 * Selects the category with unassigned characters ranked best by the MRV, 
+	 * DEGREE or DOM_WDEG ordering, ties going to the lowest ordinal.
+	 * @param assignment
+	 * @return the ordinal of a category with any unassigned characters
 	 */
-	private ArrayList<String> OrderDomainValues(String category){
-		return this.db.getWordMap().get(category);
+	private int SelectMostConstrainedVariable(Assignment assignment){
+		int best = -1;
+		//the ranking of the best category is bestNum / bestDen, lower is better
+		long bestNum = 0;
+		long bestDen = 1;
+		for(int category = 0; category < this.categories.length; category++){
+			if(IsCategoryAssigned(category, assignment))
+				continue;
+			long num;
+			long den = 1;
+			switch(this.variableOrdering){
+			case DEGREE:
+				num = -this.categoryNeighbours[category].length;
+				break;
+			case DOM_WDEG:
+				num = LiveDomainSize(category, assignment);
+				den = WeightedDegree(category, assignment);
+				break;
+			default:
+				num = LiveDomainSize(category, assignment);
+				break;
+			}
+			if(best == -1 || num * bestDen < bestNum * den){
+				best = category;
+				bestNum = num;
+				bestDen = den;
+			}
+		}
+		return best;
 	}
 	
 	/**
-	 * Considers all the indices of the assignment connected to the given category
-	 * and creates a regular expression using the already assigned characters and
-	 * wildcard flags for unassigned characters.  
-	 * @param category
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @return true if every index of the category holds a letter
+	 */
+	private boolean IsCategoryAssigned(int category, Assignment assignment){
+		for(int index : this.categoryIndices[category]){
+			if(!assignment.IsAssigned(index))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @return the number of words of the category matching its partial word
+	 */
+	private int LiveDomainSize(int category, Assignment assignment){
+		if(this.categoryWords[category] == null)
+			return 0;
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE)
+			return this.compactTable.Size(category);
+		char[] partialWord = GetWordPattern(category, assignment);
+		if(this.supportCache == null)
+			return this.categoryWords[category].CountMatchingWords(partialWord);
+		return this.supportCache.CountMatchingWords(this.categoryWords[category], partialWord);
+	}
+	
+	/**
+	 * The weight of the category plus the weights of the neighbouring categories
+	 * which still have unassigned characters.
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @return
+	 */
+	private long WeightedDegree(int category, Assignment assignment){
+		long wdeg = this.categoryWeights[category];
+		for(int other : this.categoryNeighbours[category]){
+			if(!IsCategoryAssigned(other, assignment))
+				wdeg += this.categoryWeights[other];
+		}
+		return wdeg;
+	}
+	
+	/**
+	 * Fills the buffer with the ids of the words of the category in the order
+	 * they should be tried (see ValueOrdering)
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @param values buffer receiving the word ids
+	 * @return the number of word ids in the domain of possible values for the variable
+	 */
+	private int OrderDomainValues(int category, Assignment assignment, int[] values){
+		CategoryIndex words = this.categoryWords[category];
+		if(words == null)
+			return 0;
+		int count;
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE){
+			if(this.valueOrdering != ValueOrdering.LEAST_CONSTRAINING)
+				return this.compactTable.CollectWords(category, values);
+			count = OrderLeastConstrainingValues(category, assignment, values, true);
+			return KeepTableValues(category, values, count);
+		}
+		if(this.valueOrdering == ValueOrdering.LEAST_CONSTRAINING)
+			return OrderLeastConstrainingValues(category, assignment, values, this.canonicalSearch);
+		for(int id = 0; id < words.size(); id++){
+			values[id] = id;
+		}
+		count = words.size();
+		if(this.canonicalSearch)
+			count = KeepAgreeingValues(category, assignment, values, count);
+		return count;
+	}
+	
+	/**
+	 * Canonical search: keeps only the words which agree with the letters already 
+	 * assigned at the category's indices, dropping repeated words of the list
+	 * @param category ordinal of the category
 	 * @param assignment
-	 * @return a regular expression to compare against words in a category
-	 */
-	private String GetWordRegEx(String category, ArrayList<Character> assignment){
-		//"A.A"
-		String partialWord = "";
-		for(int index : this.puzzle.getCategoryIndexMap().get(category)){
-			if (assignment.get(index) == null) {
-				partialWord+= ".";
+	 * @param values ordered word ids, compacted in place
+	 * @param count number of word ids
+	 * @return the number of word ids kept
+	 */
+	private int KeepAgreeingValues(int category, Assignment assignment, int[] values, int count){
+		CategoryIndex words = this.categoryWords[category];
+		long[] matching = this.matchingWordBuffers[category];
+		words.MatchingWords(GetWordPattern(category, assignment), matching);
+		int kept = 0;
+		for(int i = 0; i < count; i++){
+			int id = values[i];
+			if((matching[id >>> 6] & (1L << (id & 63))) != 0 && !words.IsRepeatedWord(id))
+				values[kept++] = id;
+		}
+		return kept;
+	}
+	
+	/**
+	 * Compact-Table: keeps only the words left in the table of the category
+	 * @param category ordinal of the category
+	 * @param values ordered word ids, compacted in place
+	 * @param count number of word ids
+	 * @return the number of word ids kept
+	 */
+	private int KeepTableValues(int category, int[] values, int count){
+		int kept = 0;
+		for(int i = 0; i < count; i++){
+			if(this.compactTable.Contains(category, values[i]))
+				values[kept++] = values[i];
+		}
+		return kept;
+	}
+	
+	/**
+	 * Ranks the words of the category by the number of words they leave to its
+	 * neighbours. The words of each neighbour matching its partial word (ignoring
+	 * the indices shared with the category, which the candidate overwrites) are 
+	 * collected once, then each candidate counts how many of those agree with its
+	 * letters at the shared indices. Candidates with the same shared letters leave
+	 * the same words, so each neighbour counts every tuple of shared letters once.
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @param values buffer receiving the word ids
+	 * @param agreeing true to rank only the words agreeing with the letters already
+	 * assigned at the category's indices, dropping repeated words of the list (the
+	 * others would be discarded by the search anyway)
+	 * @return the number of word ids
+	 */
+	private int OrderLeastConstrainingValues(int category, Assignment assignment, int[] values, boolean agreeing){
+		CategoryIndex words = this.categoryWords[category];
+		int count = 0;
+		if(agreeing){
+			long[] matching = this.matchingWordBuffers[category];
+			if(this.supportCache == null)
+				words.MatchingWords(GetWordPattern(category, assignment), matching);
+			else
+				this.supportCache.MatchingWords(words, GetWordPattern(category, assignment), matching);
+			for(int block = 0; block < matching.length; block++){
+				for(long bits = matching[block]; bits != 0; bits &= bits - 1){
+					int id = (block << 6) | Long.numberOfTrailingZeros(bits);
+					if(!words.IsRepeatedWord(id))
+						values[count++] = id;
+				}
 			}
-			else{
-				partialWord+= assignment.get(index);
+		} else {
+			for(int id = 0; id < words.size(); id++){
+				values[count++] = id;
 			}
 		}
+		if(this.sharedLetterCounts == null){
+			this.sharedLetterCounts = new int[(int) Math.pow(CategoryIndex.ALPHABET_SIZE, MEMO_TABLE_LETTERS)];
+			this.sharedLetterStamps = new int[this.sharedLetterCounts.length];
+			this.sharedLetterCountMap = new HashMap<Long, Integer>();
+		}
+		//words left to the neighbours so far by each candidate, -1 once one has none left
+		long[] options = this.rankingKeys;
+		Arrays.fill(options, 0, count, 0);
+		
+		int[] neighbours = this.categoryNeighbours[category];
+		for(int k = 0; k < neighbours.length; k++){
+			int n = neighbours[k];
+			if(this.categoryWords[n] == null)
+				continue;
+			char[] partialWord = GetWordPattern(n, assignment);
+			int[] theirs = this.sharedNeighbourPositions[category][k];
+			int[] ours = this.sharedOwnPositions[category][k];
+			for(int p : theirs){
+				partialWord[p] = Assignment.UNASSIGNED;
+			}
+			if(this.supportCache == null)
+				this.categoryWords[n].MatchingWords(partialWord, this.matchingWordBuffers[n]);
+			else
+				this.supportCache.MatchingWords(this.categoryWords[n], partialWord, this.matchingWordBuffers[n]);
+			
+			if(++this.sharedLetterStamp == 0){
+				Arrays.fill(this.sharedLetterStamps, 0);
+				this.sharedLetterStamp = 1;
+			}
+			this.sharedLetterCountMap.clear();
+			for(int i = 0; i < count; i++){
+				if(options[i] < 0)
+					continue;
+				String wordVal = words.getWord(values[i]);
+				long key = SharedLetterKey(wordVal, ours);
+				int left;
+				if(key >= 0 && ours.length <= MEMO_TABLE_LETTERS){
+					int slot = (int) key;
+					if(this.sharedLetterStamps[slot] != this.sharedLetterStamp){
+						this.sharedLetterCounts[slot] = CountSharedMatches(n, theirs, ours, wordVal);
+						this.sharedLetterStamps[slot] = this.sharedLetterStamp;
+					}
+					left = this.sharedLetterCounts[slot];
+				} else if(key >= 0){
+					Integer kept = this.sharedLetterCountMap.get(key);
+					if(kept == null){
+						kept = CountSharedMatches(n, theirs, ours, wordVal);
+						this.sharedLetterCountMap.put(key, kept);
+					}
+					left = kept;
+				} else {
+					left = CountSharedMatches(n, theirs, ours, wordVal);
+				}
+				//a word leaving a neighbour without options goes last
+				options[i] = (left == 0) ? -1 : options[i] + left;
+			}
+		}
+		
+		for(int i = 0; i < count; i++){
+			//most options first, then database order
+			long rank = (options[i] < 0) ? Integer.MAX_VALUE : Integer.MAX_VALUE - 1 - Math.min(options[i], Integer.MAX_VALUE - 1);
+			this.rankingKeys[i] = (rank << 32) | values[i];
+		}
+		Arrays.sort(this.rankingKeys, 0, count);
+		for(int i = 0; i < count; i++){
+			values[i] = (int) this.rankingKeys[i];
+		}
+		return count;
+	}
+	
+	/**
+	 * @param wordVal candidate word
+	 * @param ours positions of the letters shared with a neighbour
+	 * @return the shared letters of the word as a number in base 26, -1 if they 
+	 * are too many or not all in A-Z
+	 */
+	private long SharedLetterKey(String wordVal, int[] ours){
+		if(ours.length > MEMO_MAX_LETTERS)
+			return -1;
+		long key = 0;
+		for(int q : ours){
+			int letter = wordVal.charAt(q) - 'A';
+			if(letter < 0 || letter >= CategoryIndex.ALPHABET_SIZE)
+				return -1;
+			key = key * CategoryIndex.ALPHABET_SIZE + letter;
+		}
+		return key;
+	}
+	
+	/**
+	 * @param neighbour ordinal of the neighbouring category, its matching word buffer filled
+	 * @param theirs positions in the neighbour of the shared indices
+	 * @param ours positions of the same indices in the candidate
+	 * @param wordVal candidate word
+	 * @return the number of matching words of the neighbour agreeing with the candidate's shared letters
+	 */
+	private int CountSharedMatches(int neighbour, int[] theirs, int[] ours, String wordVal){
+		char[] sharedPattern = this.sharedPatternBuffers[neighbour];
+		for(int i = 0; i < theirs.length; i++){
+			sharedPattern[theirs[i]] = wordVal.charAt(ours[i]);
+		}
+		int left = this.categoryWords[neighbour].CountMatchingWords(this.matchingWordBuffers[neighbour], sharedPattern);
+		for(int i = 0; i < theirs.length; i++){
+			sharedPattern[theirs[i]] = Assignment.UNASSIGNED;
+		}
+		return left;
+	}
+	
+	/**
+	 * @param depth
+	 * @return the reusable buffer of word ids for the given depth of the search
+	 */
+	private int[] ValueBuffer(int depth){
+		while(this.valueBuffers.size() <= depth){
+			this.valueBuffers.add(new int[this.rankingKeys.length]);
+		}
+		return this.valueBuffers.get(depth);
+	}
+	
+	/**
+	 * Considers all the indices of the assignment connected to the given category
+	 * and fills the category's pattern buffer with the already assigned characters,
+	 * using 0 for unassigned characters.
+	 * @param category ordinal of the category
+	 * @param assignment
+	 * @return the partial word to query against the words in a category
+	 */
+	private char[] GetWordPattern(int category, Assignment assignment){
+		//"A.A" is stored as {'A', 0, 'A'}
+		char[] partialWord = this.patternBuffers[category];
+		int[] indices = this.categoryIndices[category];
+		for(int position = 0; position < indices.length; position++){
+			partialWord[position] = assignment.get(indices[position]);
+		}
 		return partialWord;
 	}
 	
 	/**
 	 * Checks that the wordVal proposed for the specified category is does
 	 * not violate any constraints at indices shared with other categories 
-	 * @param augmentedCategory
+	 * @param augmentedCategory ordinal of the category
 	 * @param assignment
 	 * @return
 	 */
-	private boolean CheckIfConsistent(String augmentedCategory, ArrayList<Character> assignment){
+	private boolean CheckIfConsistent(int augmentedCategory, Assignment assignment){
 		//Eventually an efficient solution would check
 		//each category linked to any index of the augmented category
 		
 		//naive, check every category		
-		for(String category: this.puzzle.getCategoryIndexMap().keySet()){
-			String partialWord = GetWordRegEx(category, assignment);
-			boolean WordExistsInCategory = false;
-			//for each word in that category
-			for(String word : db.getWordMap().get(category)){
-				//could the partial word construct word
-				if(Pattern.matches(partialWord,word)){
-					WordExistsInCategory = true;
-					break;
-				}
-			}
-			if(!WordExistsInCategory)
+		for(int category = 0; category < this.categories.length; category++){
+			char[] partialWord = GetWordPattern(category, assignment);
+			//could the partial word construct any word in that category
+			if(this.categoryWords[category] == null || !HasMatchingWord(category, partialWord)){
+				this.categoryWeights[category]++;
 				return false;
+			}
 		}
 		return true;
 	}
 	
 	/**
-	 * Deep copies the input array
-	 * @param inputArray
-	 * @return a copy of the input array which can be saved without 
-	 * 			being affected by changes in the input array
+	 * @param category ordinal of the category
+	 * @param partialWord
+	 * @return true if some word of the category matches the partial word
 	 */
-	private ArrayList<Character> DeepCopyCharArrayList(ArrayList<Character> inputArray){
-		ArrayList<Character> newArrayList = new ArrayList<Character>();
-		for(int i = 0 ; i < inputArray.size(); i++){
-			newArrayList.add(inputArray.get(i));
-		}
-		return newArrayList;
+	private boolean HasMatchingWord(int category, char[] partialWord){
+		if(this.supportCache == null)
+			return this.categoryWords[category].HasMatchingWord(partialWord);
+		return this.supportCache.HasMatchingWord(this.categoryWords[category], partialWord);
 	}
 	
 	/**
-	 * Adds the 3 character from wordVal to the assignment at the 3 indices linked the category
+	 * Propagates the word just added to the category according to the propagation mode
+	 * @param category ordinal of the category
+	 * @param id id of the word
 	 * @param assignment
-	 * @param category
+	 * @return false if a constraint is violated
+	 */
+	private boolean Propagate(int category, int id, Assignment assignment){
+		if(this.propagationMode != PropagationMode.COMPACT_TABLE)
+			return CheckIfConsistent(category, assignment);
+		if(this.compactTable.AssignWord(category, id))
+			return true;
+		if(this.compactTable.getFailedCategory() >= 0)
+			this.categoryWeights[this.compactTable.getFailedCategory()]++;
+		return false;
+	}
+	
+	/**
+	 * @return a mark of the tables of the propagator, 0 if there are none
+	 */
+	private int TableMark(){
+		return (this.compactTable == null) ? 0 : this.compactTable.Mark();
+	}
+	
+	/**
+	 * Adds the characters of wordVal to the assignment at the indices linked the category
+	 * (the word has one letter per index, see CategoryIndex.getLengthIndex)
+	 * @param assignment
+	 * @param category ordinal of the category
 	 * @param wordVal
 	 */
-	private void AddToAssignment(ArrayList<Character> assignment, String category, String wordVal){
-		ArrayList<Integer> indices = this.puzzle.getCategoryIndexMap().get(category);
-		int counter = 0;
-		for (int i : indices){
-			assignment.set(i, wordVal.charAt(counter));
-			counter++;
+	private void AddToAssignment(Assignment assignment, int category, String wordVal){
+		int[] indices = this.categoryIndices[category];
+		for (int counter = 0; counter < indices.length; counter++){
+			assignment.Set(indices[counter], wordVal.charAt(counter));
 		}
 	}
 	
@@ -146,62 +688,219 @@ public class WordBasedCSP {
 	 * Main constraint satisfaction solver. 
 	 * Effectively conducts depth first search on the state space of possible
 	 * assignments for a CSP, halting any dive when a constraint is violated.
+	 * The boxed assignment is converted once to the primitive representation,
+	 * the search itself allocates nothing but the solutions it stores.
 	 * @param assignment
 	 * @return nothing, any found solutions are stored in the instance variable "results"
 	 */
 	public void RecursiveBacktracking(ArrayList<Character> assignment, int depth){
-		//wordVar here logically refers to 3 indices, but will be a category
-		String category = SelectUnassignedVariable(assignment);
+		RecursiveBacktracking(new Assignment(assignment), depth);
+	}
+	
+	/**
+	 * Main constraint satisfaction solver, on the primitive assignment.
+	 * @param assignment
+	 * @return nothing, any found solutions are stored in the instance variable "results"
+	 */
+	public void RecursiveBacktracking(Assignment assignment, int depth){
+		long start = System.nanoTime();
+		if(Start(assignment))
+			Backtrack(assignment, depth);
+		this.stats.AddPhaseTime(SearchStats.Phase.SEARCH, System.nanoTime() - start);
+	}
+	
+	/**
+	 * The recursive depth first search behind RecursiveBacktracking
+	 * @param assignment
+	 * @param depth
+	 */
+	private void Backtrack(Assignment assignment, int depth){
+		if(this.limit != null && this.limit.Node()){
+			this.stopped = true;
+			return;
+		}
+		//wordVar here logically refers to the indices of a category, but will be a category
+		int category = SelectUnassignedVariable(assignment);
+		this.stats.Node(depth);
 		
-		for(String wordVal : this.OrderDomainValues(category)){
+		int[] domain = ValueBuffer(depth);
+		int domainSize = this.OrderDomainValues(category, assignment, domain);
+		for(int w = 0; w < domainSize; w++){
+			String wordVal = this.categoryWords[category].getWord(domain[w]);
 			//Remember the current assignment for later
-			ArrayList<Character> old_assignment = DeepCopyCharArrayList(assignment);
+			int mark = assignment.Mark();
+			int tableMark = TableMark();
 			// Add it to the assignment
 			AddToAssignment(assignment, category, wordVal);
 			
 			//if wordVal is consistent with assignment given constraints
-			if(CheckIfConsistent(category, assignment)){
-				System.out.print(" -> " + wordVal );
+			boolean consistent = Propagate(category, domain[w], assignment);
+			this.stats.Check(depth, consistent);
+			if(consistent){
+				if(this.tracing)
+					this.trace.Node(depth, category, domain[w]);
 				
-				if (!assignment.contains(null)) {
+				if (assignment.IsComplete()) {
 					//add it to solution set
-					if(!DuplicateResultCheck(assignment)){
-						this.results.add(DeepCopyCharArrayList(assignment));
-						System.out.print("(found result: " + assignment.toString() + ")\n");
-						for (int i = 0; i < depth; i++) {
-							System.out.print("       ");
-						}
-					}
+					if(RecordSolution() && this.tracing)
+						this.trace.Solution(depth, assignment);
 				} else {
 					//dive deeper into the tree (the passed in assignment here contains the wordVal)
-					RecursiveBacktracking(assignment, depth+1);
+					Backtrack(assignment, depth+1);
 				}
 			}
 			// Remove from assignment, keeping the tree at the current depth
-			assignment = old_assignment;
+			assignment.UndoTo(mark);
+			if(this.compactTable != null)
+				this.compactTable.UndoTo(tableMark);
+			if(this.stopped)
+				return;
 			// removing the word ensures the next loop iteration is searching breadth
 		}
 		
-		System.out.print(" -> backtrack\n");
-		for (int i = 0; i < depth-1; i++) {
-			System.out.print("       ");
+		this.stats.Backtrack();
+		if(this.tracing)
+			this.trace.Backtrack(depth);
+	}
+	
+	@Override
+	public boolean Start(Assignment assignment){
+		this.current = assignment;
+		this.stopped = false;
+		if(!this.solvable)
+			return false;
+		if(this.propagationMode == PropagationMode.COMPACT_TABLE){
+			if(this.compactTable == null)
+				this.compactTable = new CompactTablePropagator(assignment.size(), this.categoryIndices, 
+						this.indexCategories, this.categoryWords);
+			return this.compactTable.Start(null, assignment);
 		}
+		this.compactTable = null;
+		return true;
+	}
+	
+	@Override
+	public void SearchFromCurrentState(){
+		if(this.current.IsComplete())
+			RecordSolution();
+		else
+			Backtrack(this.current, 0);
+		if(this.limit != null)
+			this.limit.Flush();
+	}
+	
+	/**
+	 * The fork is not traced, since forks are meant to run concurrently
+	 */
+	@Override
+	public WordBasedCSP Fork(){
+		WordBasedCSP fork = new WordBasedCSP(this.puzzle, this.db);
+		//the stats of this solver already hold the time spent loading the database
+		fork.stats = new SearchStats();
+		fork.solvable = this.solvable;
+		fork.propagationMode = this.propagationMode;
+		fork.variableOrdering = this.variableOrdering;
+		fork.valueOrdering = this.valueOrdering;
+		fork.canonicalSearch = this.canonicalSearch;
+		fork.categoryWeights = this.categoryWeights.clone();
+		fork.limit = (this.limit == null) ? null : this.limit.Fork();
+		fork.supportCache = this.supportCache;
+		return fork;
+	}
+	
+	@Override
+	public int SelectVariable(){
+		return this.current.IsComplete() ? -1 : SelectUnassignedVariable(this.current);
+	}
+	
+	@Override
+	public int OrderValues(int variable, int[] values){
+		return OrderDomainValues(variable, this.current, values);
+	}
+	
+	@Override
+	public int getMaxValueCount(){
+		return this.rankingKeys.length;
+	}
+	
+	@Override
+	public boolean Assign(int variable, int value){
+		AddToAssignment(this.current, variable, this.categoryWords[variable].getWord(value));
+		return Propagate(variable, value, this.current);
+	}
+	
+	@Override
+	public long Mark(){
+		return ((long) this.current.Mark() << 32) | TableMark();
+	}
+	
+	@Override
+	public void UndoTo(long mark){
+		this.current.UndoTo((int) (mark >>> 32));
+		if(this.compactTable != null)
+			this.compactTable.UndoTo((int) mark);
+	}
+	
+	@Override
+	public boolean IsComplete(){
+		return this.current.IsComplete();
 	}
 	
 	/**
-	 * Return true if the completed assignment already exists in results
+	 * Passes the current assignment to the sink unless it was passed before
+	 * (the same assignment can be reached through different category orders,
+	 * except in canonical search and COMPACT_TABLE mode)
+	 */
+	@Override
+	public boolean RecordSolution(){
+		if(ProducesDuplicates() && DuplicateResultCheck(this.current))
+			return false;
+		this.stats.Solution();
+		if(!this.sink.Accept(this.current))
+			this.stopped = true;
+		return true;
+	}
+	
+	/**
+	 * Return true if the completed assignment was already passed to the sink,
+	 * otherwise remember it. A hash lookup on the packed assignment.
 	 * @param assignment
 	 * @return
 	 */
-	private boolean DuplicateResultCheck(ArrayList<Character> assignment) {
-		for(ArrayList<Character> r : this.results){
-			if(r.equals(assignment)){
-				return true;
-			}
-		}
-		return false;
+	private boolean DuplicateResultCheck(Assignment assignment) {
+		return !this.solutionKeys.Add(assignment);
 	}
 
+	@Override
+	public boolean ProducesDuplicates(){
+		return !this.canonicalSearch && this.propagationMode != PropagationMode.COMPACT_TABLE;
+	}
+	
+	@Override
+	public void setSolutionSink(SolutionSink sink){
+		this.sink = (sink == null) ? new CollectingSink(this.results) : sink;
+	}
+	
+	@Override
+	public boolean IsStopped(){
+		return this.stopped;
+	}
+	
+	@Override
+	public void setSearchLimit(SearchBudget.Limit limit){
+		this.limit = limit;
+	}
+	
+	@Override
+	public ArrayList<ArrayList<Character>> getResults(){
+		return this.results;
+	}
+	
+	@Override
+	public SearchStats getStats(){
+		return this.stats;
+	}
+	
 	/**
 	 * Print the solution results
 	 */
@@ -233,6 +932,7 @@ public class WordBasedCSP {
 	}
 	
 	public boolean[] testResults(){
+		long start = System.nanoTime();
 		boolean[] testResults = new boolean[this.results.size()];
 		int solnCount = 0;
 		boolean bSolnValid;
@@ -252,6 +952,7 @@ public class WordBasedCSP {
 			testResults[solnCount] = bSolnValid;
 			solnCount++;
 		}
+		this.stats.AddPhaseTime(SearchStats.Phase.VALIDATE, System.nanoTime() - start);
 		return testResults;
 	}
 	
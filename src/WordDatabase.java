@@ -1,22 +1,38 @@
 /**
  * WordDatabase: holds all of the words as hashmap with categories as keys
+ * 	Once the words are read, BuildIndex() creates a positional bitset index
+ * 	(see CategoryIndex) for every category, which the solvers query through
+ * 	HasMatchingWord() instead of matching every word against a regular expression.
+ * 	Words may have any length; the index of a category is partitioned by length
+ * 	(see getCategoryIndex(category, length)) so a slot only sees words of its length.
  * 
  * @author dcyoung3
  */
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class WordDatabase {
 
 	//Map between word category and a list of all words belonging to that category
-	private Map<String, ArrayList<String>> wordMap;
+	private Map<String, List<String>> wordMap;
+	//Map between word category and the bitset index over the words of that category
+	private Map<String, CategoryIndex> indexMap;
+	//total time spent building indices
+	private long indexNanos;
+	//total time spent reading the words from files (see WordFileReader)
+	private long parseNanos;
+	//true if the database can no longer be modified (see Freeze)
+	private boolean frozen;
 		
 	/**
 	 * Constructor
 	 */
 	public WordDatabase(){
-		wordMap = new HashMap<String, ArrayList<String>>();
+		wordMap = new HashMap<String, List<String>>();
+		indexMap = new HashMap<String, CategoryIndex>();
 	}
 	
 	/**
@@ -34,11 +50,137 @@ public class WordDatabase {
 	}
 	
 	
+	/**
+	 * Builds the bitset index for every category currently in the database.
+	 * Must be called again if the word lists are modified afterwards.
+	 */
+	public void BuildIndex(){
+		if(this.frozen)
+			throw new IllegalStateException("A frozen database is already indexed");
+		long start = System.nanoTime();
+		Map<String, CategoryIndex> newIndexMap = new HashMap<String, CategoryIndex>();
+		for(String category : this.wordMap.keySet()){
+			newIndexMap.put(category, new CategoryIndex(this.wordMap.get(category)));
+		}
+		this.indexMap = newIndexMap;
+		this.indexNanos += System.nanoTime() - start;
+	}
+	
+	/**
+	 * @return the total time spent in BuildIndex(), in nanoseconds
+	 */
+	public long getIndexNanos(){
+		return this.indexNanos;
+	}
+	
+	/**
+	 * Adds time spent reading words into the database
+	 * @param nanos
+	 */
+	public void AddParseTime(long nanos){
+		this.parseNanos += nanos;
+	}
+	
+	/**
+	 * @return the total time spent reading the words from files, in nanoseconds
+	 */
+	public long getParseNanos(){
+		return this.parseNanos;
+	}
+	
+	/**
+	 * Adds a category together with an index built before (see CompiledDictionary)
+	 * @param category
+	 * @param words
+	 * @param index index over the words
+	 */
+	public void AddIndexedCategory(String category, List<String> words, CategoryIndex index){
+		if(this.frozen)
+			throw new IllegalStateException("A frozen database cannot be modified");
+		this.wordMap.put(category, words);
+		this.indexMap.put(category, index);
+	}
+	
+	/**
+	 * Creates an immutable, indexed copy of the database, which any number of 
+	 * solvers can share across threads. The word lists are copied (except the
+	 * read only lists of a compiled dictionary), so later changes to this 
+	 * database do not reach the copy.
+	 * @return the frozen copy
+	 */
+	public WordDatabase Freeze(){
+		if(this.frozen)
+			return this;
+		if(!IsIndexed())
+			BuildIndex();
+		WordDatabase copy = new WordDatabase();
+		for(String category : this.wordMap.keySet()){
+			List<String> words = this.wordMap.get(category);
+			CategoryIndex index = this.indexMap.get(category);
+			if(!(words instanceof MappedWordList)){
+				words = new ArrayList<String>(words);
+				index = new CategoryIndex(words);
+			}
+			copy.wordMap.put(category, Collections.unmodifiableList(words));
+			copy.indexMap.put(category, index);
+		}
+		copy.wordMap = Collections.unmodifiableMap(copy.wordMap);
+		copy.indexMap = Collections.unmodifiableMap(copy.indexMap);
+		copy.indexNanos = this.indexNanos;
+		copy.parseNanos = this.parseNanos;
+		copy.frozen = true;
+		return copy;
+	}
+	
+	/**
+	 * @return true if the database was created by Freeze()
+	 */
+	public boolean IsFrozen(){
+		return this.frozen;
+	}
+	
+	/**
+	 * @return true if BuildIndex() has been called for the current categories
+	 */
+	public boolean IsIndexed(){
+		return this.indexMap.keySet().equals(this.wordMap.keySet());
+	}
+	
+	/**
+	 * Checks whether the category holds a word matching the partial word.
+	 * @param category
+	 * @param pattern letters of the partial word, 0 for unassigned positions
+	 * @return true if some word from the category matches the pattern
+	 */
+	public boolean HasMatchingWord(String category, char[] pattern){
+		CategoryIndex index = getCategoryIndex(category, pattern.length);
+		return index != null && index.HasMatchingWord(pattern);
+	}
+	
+	/**
+	 * @param category
+	 * @return the bitset index of the category, or null if it was not indexed
+	 */
+	public CategoryIndex getCategoryIndex(String category){
+		return this.indexMap.get(category);
+	}
+	
+	/**
+	 * @param category
+	 * @param length length of the slot
+	 * @return the bitset index of the words of the category with the given length,
+	 * 	or null if the category was not indexed
+	 */
+	public CategoryIndex getCategoryIndex(String category, int length){
+		CategoryIndex index = this.indexMap.get(category);
+		return (index == null) ? null : index.getLengthIndex(length);
+	}
+	
 	/**
 	 * 
 	 * @return the hashmap containing the database
 	 */
-	public Map<String, ArrayList<String>> getWordMap() {
+	public Map<String, List<String>> getWordMap() {
 		return wordMap;
 	}
 	
@@ -11,12 +11,22 @@ public class WordFileReader {
 	
 	//Map between word category and a list of all words belonging to that category
 	private WordDatabase dataBase;
+	//total time spent reading files, excluding the index build (see WordDatabase.getIndexNanos)
+	private long parseNanos;
 	
 	/**
 	 * Constructor
 	 */
 	public WordFileReader(WordDatabase db){
 		this.dataBase = db;
+		this.parseNanos = 0;
+	}
+	
+	/**
+	 * @return the total time spent reading database and puzzle files, in nanoseconds
+	 */
+	public long getParseNanos(){
+		return this.parseNanos;
 	}
 	
 	/**
@@ -25,6 +35,7 @@ public class WordFileReader {
 	 * @param filename
 	 */
 	public void readDatabaseFile(String filename){
+		long start = System.nanoTime();
 		try {
 			Scanner sc = new Scanner(new File(filename));
 			String tempLine;
@@ -40,6 +51,11 @@ public class WordFileReader {
             	}
             	this.dataBase.getWordMap().put(tempCategory, tempWords);
 			}
+			long nanos = System.nanoTime() - start;
+			this.parseNanos += nanos;
+			this.dataBase.AddParseTime(nanos);
+			//index the words so the solvers can query them without regular expressions
+			this.dataBase.BuildIndex();
 		} catch (FileNotFoundException e) {
 			System.out.println("Filename: \"" + filename + "\"\t could not be found.");
 			e.printStackTrace();
@@ -47,6 +63,25 @@ public class WordFileReader {
 	}
 	
 	
+	/**
+	 * Loads a dictionary compiled by CompiledDictionary into the database, 
+	 * by mapping the file into memory (the index is part of the file)
+	 * @param filename
+	 */
+	public void readCompiledDatabaseFile(String filename){
+		long start = System.nanoTime();
+		try {
+			CompiledDictionary.Load(filename, this.dataBase);
+		} catch (IOException e) {
+			System.out.println("Filename: \"" + filename + "\"\t could not be loaded.");
+			e.printStackTrace();
+		} finally {
+			long nanos = System.nanoTime() - start;
+			this.parseNanos += nanos;
+			this.dataBase.AddParseTime(nanos);
+		}
+	}
+	
 	/**
 	 * Creates a puzzle object by reading the puzzle information contained in the specified file.
 	 * Also converts the index from the file (1 base) to index for the database arraylists vals (0 base)
@@ -54,14 +89,13 @@ public class WordFileReader {
 	 * @return a puzzle containing the data held in the specified file
 	 */
 	public Puzzle readPuzzleFile(String filename){
-		
+		long start = System.nanoTime();
 		try {
 			Scanner sc = new Scanner(new File(filename));
 			int puzzleSize = sc.nextInt();
 			Puzzle p = new Puzzle(puzzleSize);
 			
 			String tempLine;
-			String tempCategory;
 			
 			while(sc.hasNextLine()){
             	tempLine = sc.nextLine();
@@ -71,14 +105,7 @@ public class WordFileReader {
             		else
             			return p;
             	}
-            	tempCategory = tempLine.split(":")[0].trim();
-            	ArrayList<Integer> tempIndices = new ArrayList<Integer>();
-            	for(String s : tempLine.split(":")[1].split(",")){
-            		tempIndices.add(Integer.parseInt(s.trim())-1);
-            	}
-            	Collections.sort(tempIndices);
-            	//generate the normal map (ie: mapping categories as keys to indices as values)
-            	p.getCategoryIndexMap().put(tempCategory, tempIndices);
+            	readCategoryLine(p, tempLine);
 			}
 			//Generate the inverted map (ie: mapping indices as keys to categories as values)
 			p.GenerateInvertedMap();
@@ -86,11 +113,29 @@ public class WordFileReader {
 		} catch (FileNotFoundException e) {
 			System.out.println("Filename: \"" + filename + "\"\t could not be found.");
 			e.printStackTrace();
-		}		
+		} finally {
+			this.parseNanos += System.nanoTime() - start;
+		}
 		return null;
 	}
 	
 	
+	/**
+	 * Adds the category of a line of a puzzle file ("category: 1, 5, 7") to the puzzle
+	 * @param p
+	 * @param line
+	 */
+	public static void readCategoryLine(Puzzle p, String line){
+		String tempCategory = line.split(":")[0].trim();
+		ArrayList<Integer> tempIndices = new ArrayList<Integer>();
+		for(String s : line.split(":")[1].split(",")){
+			tempIndices.add(Integer.parseInt(s.trim())-1);
+		}
+		Collections.sort(tempIndices);
+		//generate the normal map (ie: mapping categories as keys to indices as values)
+		p.getCategoryIndexMap().put(tempCategory, tempIndices);
+	}
+	
 	/**
 	 * Main, used temporarily to test the functionality
 	 * @param args